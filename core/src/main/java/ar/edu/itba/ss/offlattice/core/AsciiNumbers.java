@@ -0,0 +1,295 @@
+package ar.edu.itba.ss.offlattice.core;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes numbers as ASCII text straight into {@link ByteBuffer}s, exactly as {@link StringBuilder#append(long)}
+ * and {@link StringBuilder#append(double)} would write them, but without creating any object.
+ * <p>
+ * Doubles are written with the shortest decimal that rounds back to them, using Giulietti's Schubfach
+ * algorithm ("The Schubfach way to render doubles", 2020), and laid out as {@link Double#toString(double)} does:
+ * plain for magnitudes between 10^-3 (inclusive) and 10^7 (exclusive), and computerized scientific notation
+ * otherwise. {@link Double#toString(double)} up to Java 18 does not always give the shortest decimal:
+ * it may differ from it for magnitudes of 2^53 and above, and for powers of two. Those doubles, as well as
+ * the ones below 2^-80, NaNs and infinities, are written with {@link Double#toString(double)} itself.
+ */
+final class AsciiNumbers {
+    /**
+     * Max amount of bytes that {@link #putLong(ByteBuffer, long)} writes
+     */
+    static final int MAX_LONG_LENGTH = 20;
+
+    /**
+     * Max amount of bytes that {@link #putDouble(ByteBuffer, double)} writes
+     */
+    static final int MAX_DOUBLE_LENGTH = 25;
+
+    /* bits of a double */
+    private static final int P = 53;
+    private static final long C_MIN = 1L << (P - 1);
+    private static final long T_MASK = C_MIN - 1;
+    private static final int BQ_MASK = 0x7ff;
+    private static final int Q_MIN = -1074;
+
+    /* doubles written with the shortest decimal are the ones with a binary exponent between these ones */
+    private static final int FAST_MIN_EXPONENT = -80;
+    private static final int FAST_MAX_EXPONENT = 52;
+
+    /* 126 bits approximations of 10^-k, each one as 2 longs of 63 bits, for k between K_MIN and K_MAX;
+     * enough for every double written with the shortest decimal */
+    private static final int K_MIN = flog10pow2(FAST_MIN_EXPONENT - (P - 1)) - 1;
+    private static final int K_MAX = 0;
+    private static final long[] G = new long[2 * (K_MAX - K_MIN + 1)];
+
+    private static final long MASK_63 = (1L << 63) - 1;
+
+    /* powers of ten that fit on a long */
+    private static final long[] POW10 = new long[19];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1 ; i < POW10.length ; i++) {
+            POW10[i] = 10 * POW10[i - 1];
+        }
+
+        // g = floor(10^-k * 2^(125 - floor(log2(10^-k)))) + 1, which lies between 2^125 and 2^126
+        for (int k = K_MIN ; k <= K_MAX ; k++) {
+            final int shift = 125 - flog2pow10(-k);
+            final BigInteger pow10 = BigInteger.TEN.pow(-k);
+            final BigInteger g = (shift >= 0 ? pow10.shiftLeft(shift) : pow10.shiftRight(-shift)).add(BigInteger.ONE);
+            G[2 * (k - K_MIN)] = g.shiftRight(63).longValue();
+            G[2 * (k - K_MIN) + 1] = g.longValue() & MASK_63;
+        }
+    }
+
+    private AsciiNumbers() {
+    }
+
+    /**
+     * Writes the given value at the buffer's position, advancing it
+     *
+     * @throws java.nio.BufferOverflowException if there is not enough room left on the buffer
+     */
+    static void putLong(final ByteBuffer buffer, final long value) {
+        if (value == Long.MIN_VALUE) {
+            putAscii(buffer, Long.toString(value));
+            return;
+        }
+        long v = value;
+        if (v < 0) {
+            buffer.put((byte) '-');
+            v = -v;
+        }
+        putDigits(buffer, v, digitsOf(v));
+    }
+
+    /**
+     * Writes the given value at the buffer's position, advancing it
+     *
+     * @throws java.nio.BufferOverflowException if there is not enough room left on the buffer
+     */
+    static void putDouble(final ByteBuffer buffer, final double value) {
+        final long bits = Double.doubleToRawLongBits(value);
+        final long t = bits & T_MASK;
+        final int bq = (int) (bits >>> (P - 1)) & BQ_MASK;
+        final int exponent = bq - 1023;
+
+        if (bq == 0 && t == 0) {
+            putAscii(buffer, bits < 0 ? "-0.0" : "0.0");
+            return;
+        }
+        if (exponent < FAST_MIN_EXPONENT || exponent > FAST_MAX_EXPONENT) {
+            putAscii(buffer, Double.toString(value));
+            return;
+        }
+
+        // value = c * 2^q
+        final int mq = -Q_MIN + 1 - bq;
+        final long c = C_MIN | t;
+        if (0 < mq && mq < P) {
+            final long f = c >> mq;
+            if (f << mq == c) {
+                // integers are written as they are
+                if (bits < 0) {
+                    buffer.put((byte) '-');
+                }
+                putDecimal(buffer, f, 0);
+                return;
+            }
+        }
+        if (t == 0) {
+            // powers of two are not always written with the shortest decimal by Double.toString
+            putAscii(buffer, Double.toString(value));
+            return;
+        }
+
+        if (bits < 0) {
+            buffer.put((byte) '-');
+        }
+        putShortest(buffer, -mq, c);
+    }
+
+    /**
+     * Writes the shortest decimal that rounds to c * 2^q, assuming c is not a power of two
+     * (Schubfach's core, as in {@code DoubleToDecimal.toDecimal(int, long, int)}, without its subnormal case)
+     */
+    private static void putShortest(final ByteBuffer buffer, final int q, final long c) {
+        final long out = c & 0x1;
+        final long cb = c << 2;
+        final long cbr = cb + 2;
+        final long cbl = cb - 2;
+        final int k = flog10pow2(q);
+        final int h = q + flog2pow10(-k) + 2;
+
+        final long g1 = G[2 * (k - K_MIN)];
+        final long g0 = G[2 * (k - K_MIN) + 1];
+
+        final long vb = rop(g1, g0, cb << h);
+        final long vbl = rop(g1, g0, cbl << h);
+        final long vbr = rop(g1, g0, cbr << h);
+
+        final long s = vb >> 2;
+        if (s >= 100) {
+            // s / 10 * 10, as a multiplication
+            final long sp10 = 10 * multiplyHigh(s, 115_292_150_460_684_698L << 4);
+            final long tp10 = sp10 + 10;
+            final boolean upin = vbl + out <= sp10 << 2;
+            final boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin) {
+                putDecimal(buffer, upin ? sp10 : tp10, k);
+                return;
+            }
+        }
+        final long t = s + 1;
+        final boolean uin = vbl + out <= s << 2;
+        final boolean win = (t << 2) + out <= vbr;
+        if (uin != win) {
+            putDecimal(buffer, uin ? s : t, k);
+            return;
+        }
+        final long cmp = vb - (s + t << 1);
+        putDecimal(buffer, cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : t, k);
+    }
+
+    /**
+     * Writes f * 10^e, with f > 0, as {@link Double#toString(double)} lays it out
+     */
+    private static void putDecimal(final ByteBuffer buffer, final long f, final int e) {
+        long digits = f;
+        int exponent = e;
+        while (digits % 10 == 0) {
+            digits /= 10;
+            exponent ++;
+        }
+        final int length = digitsOf(digits);
+        // value = 0.d1d2...dn * 10^point
+        final int point = exponent + length;
+
+        if (0 < point && point <= 7) {
+            if (length <= point) {
+                // ddd000.0
+                putDigits(buffer, digits, length);
+                for (int i = length ; i < point ; i++) {
+                    buffer.put((byte) '0');
+                }
+                buffer.put((byte) '.').put((byte) '0');
+            } else {
+                // ddd.ddd
+                putDigits(buffer, digits / POW10[length - point], point);
+                buffer.put((byte) '.');
+                putDigits(buffer, digits % POW10[length - point], length - point);
+            }
+        } else if (-3 < point && point <= 0) {
+            // 0.00ddd
+            buffer.put((byte) '0').put((byte) '.');
+            for (int i = point ; i < 0 ; i++) {
+                buffer.put((byte) '0');
+            }
+            putDigits(buffer, digits, length);
+        } else {
+            // d.dddEn
+            putDigits(buffer, digits / POW10[length - 1], 1);
+            buffer.put((byte) '.');
+            if (length > 1) {
+                putDigits(buffer, digits % POW10[length - 1], length - 1);
+            } else {
+                buffer.put((byte) '0');
+            }
+            buffer.put((byte) 'E');
+            putLong(buffer, point - 1);
+        }
+    }
+
+    /**
+     * Writes the last length digits of the given non negative value, including leading zeros
+     */
+    private static void putDigits(final ByteBuffer buffer, final long value, final int length) {
+        final int start = buffer.position();
+        long v = value;
+        for (int i = start + length - 1 ; i >= start ; i--) {
+            buffer.put(i, (byte) ('0' + v % 10));
+            v /= 10;
+        }
+        buffer.position(start + length);
+    }
+
+    /**
+     * @return amount of decimal digits of the given non negative value; 1 for 0
+     */
+    private static int digitsOf(final long value) {
+        int length = 1;
+        while (length < POW10.length && value >= POW10[length]) {
+            length ++;
+        }
+        return length;
+    }
+
+    private static void putAscii(final ByteBuffer buffer, final String text) {
+        for (int i = 0 ; i < text.length() ; i++) {
+            buffer.put((byte) text.charAt(i));
+        }
+    }
+
+    /**
+     * Rounds to odd the 126 bits product of g = g1 * 2^63 + g0 and cp, shifted 127 bits to the right
+     */
+    private static long rop(final long g1, final long g0, final long cp) {
+        final long x1 = multiplyHigh(g0, cp);
+        final long y0 = g1 * cp;
+        final long y1 = multiplyHigh(g1, cp);
+        final long z = (y0 >>> 1) + x1;
+        final long vbp = y1 + (z >>> 63);
+        return vbp | (z & MASK_63) + MASK_63 >>> 63;
+    }
+
+    /**
+     * @return floor(q * log10(2))
+     */
+    private static int flog10pow2(final int q) {
+        return (int) (q * 661_971_961_083L >> 41);
+    }
+
+    /**
+     * @return floor(e * log2(10))
+     */
+    private static int flog2pow10(final int e) {
+        return (int) (e * 913_124_641_741L >> 38);
+    }
+
+    /**
+     * Same as Math.multiplyHigh, which is not available on Java 8
+     */
+    private static long multiplyHigh(final long x, final long y) {
+        final long x1 = x >> 32;
+        final long x2 = x & 0xFFFFFFFFL;
+        final long y1 = y >> 32;
+        final long y2 = y & 0xFFFFFFFFL;
+        final long z2 = x2 * y2;
+        final long t = x1 * y2 + (z2 >>> 32);
+        long z1 = t & 0xFFFFFFFFL;
+        final long z0 = t >> 32;
+        z1 += x2 * y1;
+        return x1 * y1 + z0 + (z1 >> 32);
+    }
+}
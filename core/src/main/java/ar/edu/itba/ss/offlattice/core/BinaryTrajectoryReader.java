@@ -0,0 +1,237 @@
+package ar.edu.itba.ss.offlattice.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Reads a binary trajectory, as written by {@link BinaryTrajectoryWriter}, through a memory-mapped
+ * {@link FileChannel}.
+ * <p>
+ * Any value of any frame is read in O(1): the frame's record is found with the file's index of frames (or, if the
+ * file has no index, with the records' fixed size), and read straight from the mapped file. As a single mapping
+ * can not be bigger than 2GB, records are mapped on segments of consecutive frames, the first time each segment
+ * is needed.
+ * <p>
+ * Notice that an instance of this class must not be used by more than one thread at a time.
+ */
+public class BinaryTrajectoryReader implements Closeable {
+    private final FileChannel channel;
+    private final int N;
+    private final boolean singlePrecision;
+    private final double Lx;
+    private final double Ly;
+    private final double speed;
+    private final double[] radios;
+
+    private final long headerSize;
+    private final long recordSize;
+    private final int particleSize;
+    private final int frames;
+
+    /* offset of each frame's record; null if the file has no index */
+    private final MappedByteBuffer index;
+
+    private final int framesPerSegment;
+    private final MappedByteBuffer[] segments;
+
+    /**
+     * @param file file containing the trajectory
+     *
+     * @throws IOException if the file can not be read, or if it is not a binary trajectory
+     */
+    public BinaryTrajectoryReader(final Path file) throws IOException {
+        this(file, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param file file containing the trajectory
+     * @param maxSegmentSize max size, in bytes, of each mapped segment of records; a segment always holds at
+     *                       least one record, even if it is bigger
+     *
+     * @throws IOException if the file can not be read, or if it is not a binary trajectory
+     */
+    BinaryTrajectoryReader(final Path file, final int maxSegmentSize) throws IOException {
+        this.channel = FileChannel.open(file, READ);
+        try {
+            final long size = channel.size();
+            if (size < BinaryTrajectoryWriter.FIXED_HEADER_SIZE) {
+                throw new IOException("'" + file + "' is not a binary trajectory");
+            }
+            final ByteBuffer fixedHeader = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    BinaryTrajectoryWriter.FIXED_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (!BinaryTrajectoryWriter.MAGIC.equals(ascii(fixedHeader, 8))) {
+                throw new IOException("'" + file + "' is not a binary trajectory");
+            }
+            final int version = fixedHeader.getInt();
+            if (version != BinaryTrajectoryWriter.VERSION) {
+                throw new IOException("Unsupported binary trajectory version: " + version);
+            }
+            this.singlePrecision = fixedHeader.getInt() == 4;
+            this.N = fixedHeader.getInt();
+            fixedHeader.getInt(); // padding
+            this.Lx = fixedHeader.getDouble();
+            this.Ly = fixedHeader.getDouble();
+            this.speed = fixedHeader.getDouble();
+
+            this.headerSize = BinaryTrajectoryWriter.FIXED_HEADER_SIZE + 8L * N;
+            this.radios = new double[N];
+            channel.map(FileChannel.MapMode.READ_ONLY, BinaryTrajectoryWriter.FIXED_HEADER_SIZE, 8L * N)
+                    .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(radios);
+
+            this.recordSize = BinaryTrajectoryWriter.recordSize(N, singlePrecision);
+            this.particleSize = 8 + 3 * (singlePrecision ? 4 : 8);
+            if (recordSize > Integer.MAX_VALUE) {
+                throw new IOException("Frames of more than 2GB are not supported");
+            }
+
+            // the index, if any, is at the end of the file
+            final ByteBuffer tail = size - headerSize >= 16 ?
+                    channel.map(FileChannel.MapMode.READ_ONLY, size - 16, 16).order(ByteOrder.LITTLE_ENDIAN) : null;
+            if (tail != null) {
+                tail.position(8);
+            }
+            if (tail != null && BinaryTrajectoryWriter.INDEX_MAGIC.equals(ascii(tail, 8))) {
+                this.frames = (int) tail.getLong(0);
+                this.index = channel.map(FileChannel.MapMode.READ_ONLY, size - 16 - 8L * frames, 8L * frames);
+                this.index.order(ByteOrder.LITTLE_ENDIAN);
+            } else {
+                // only complete records are read
+                this.frames = (int) ((size - headerSize) / recordSize);
+                this.index = null;
+            }
+
+            this.framesPerSegment = (int) Math.max(1, maxSegmentSize / recordSize);
+            this.segments = new MappedByteBuffer[(frames + framesPerSegment - 1) / framesPerSegment];
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return true if the given file starts as a binary trajectory does
+     * @throws IOException if the file can not be read
+     */
+    public static boolean isBinaryTrajectory(final Path file) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file, READ)) {
+            final ByteBuffer magic = ByteBuffer.allocate(8);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // keep reading until the magic is complete or the file ends
+            }
+            magic.flip();
+            return magic.remaining() == 8 && BinaryTrajectoryWriter.MAGIC.equals(ascii(magic, 8));
+        }
+    }
+
+    public int N() {
+        return N;
+    }
+
+    public double Lx() {
+        return Lx;
+    }
+
+    public double Ly() {
+        return Ly;
+    }
+
+    public double speed() {
+        return speed;
+    }
+
+    /**
+     * @return if positions and orientations were written as floats
+     */
+    public boolean singlePrecision() {
+        return singlePrecision;
+    }
+
+    /**
+     * @param i index of a particle, on their initial order
+     */
+    public double radio(final int i) {
+        return radios[i];
+    }
+
+    /**
+     * @return amount of frames of the trajectory
+     */
+    public int frames() {
+        return frames;
+    }
+
+    public long iteration(final int frame) {
+        return record(frame).getLong(offsetOf(frame));
+    }
+
+    public long id(final int frame, final int i) {
+        return record(frame).getLong(offsetOf(frame) + 8 + i * particleSize);
+    }
+
+    public double x(final int frame, final int i) {
+        return coordinate(frame, i, 0);
+    }
+
+    public double y(final int frame, final int i) {
+        return coordinate(frame, i, 1);
+    }
+
+    public double orientation(final int frame, final int i) {
+        return coordinate(frame, i, 2);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private double coordinate(final int frame, final int i, final int coordinate) {
+        final MappedByteBuffer segment = record(frame);
+        final int position = offsetOf(frame) + 8 + i * particleSize + 8;
+        return singlePrecision ?
+                segment.getFloat(position + 4 * coordinate) : segment.getDouble(position + 8 * coordinate);
+    }
+
+    /**
+     * @return segment containing the given frame's record, mapping it if it was not mapped yet
+     */
+    private MappedByteBuffer record(final int frame) {
+        if (frame < 0 || frame >= frames) {
+            throw new IndexOutOfBoundsException("Frame " + frame + " of " + frames);
+        }
+        final int s = frame / framesPerSegment;
+        if (segments[s] == null) {
+            final long start = headerSize + (long) s * framesPerSegment * recordSize;
+            final long length = Math.min(framesPerSegment, frames - (long) s * framesPerSegment) * recordSize;
+            try {
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not map frames of the trajectory", e);
+            }
+            segments[s].order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return segments[s];
+    }
+
+    /**
+     * @return position of the given frame's record inside its segment
+     */
+    private int offsetOf(final int frame) {
+        final long offset = index != null ? index.getLong(8 * frame) : headerSize + frame * recordSize;
+        return (int) (offset - headerSize - (long) (frame / framesPerSegment) * framesPerSegment * recordSize);
+    }
+
+    private static String ascii(final ByteBuffer buffer, final int length) {
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
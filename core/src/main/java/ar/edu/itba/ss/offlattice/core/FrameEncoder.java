@@ -0,0 +1,186 @@
+package ar.edu.itba.ss.offlattice.core;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Encodes frames with the output.dat text format straight into direct {@link ByteBuffer}s, that are kept from
+ * frame to frame.
+ * <p>
+ * Particles are split on chunks of {@link #CHUNK_SIZE} consecutive particles, each one with its own buffer,
+ * big enough for the longest possible text of its particles, allocated the first time it is encoded.
+ * Given a pool, each chunk is encoded by a different task; otherwise, they are all encoded on the calling
+ * thread. Either way, the bytes of the frame are the ones of {@link #buffers()}, on order, so they can be
+ * written with a single gathering write; and they are exactly the same as the ones {@link StringBuilder}
+ * would give (see {@link AsciiNumbers}).
+ * <p>
+ * Notice that an instance of this class must not be used by more than one thread at a time.
+ */
+class FrameEncoder {
+    /**
+     * Amount of particles of each chunk
+     */
+    static final int CHUNK_SIZE = 4096;
+
+    /* id, 7 doubles and their separators */
+    private static final int MAX_PARTICLE_LENGTH =
+            AsciiNumbers.MAX_LONG_LENGTH + 7 * AsciiNumbers.MAX_DOUBLE_LENGTH + 8;
+
+    private final ForkJoinPool pool;
+    private final int N;
+    private final ByteBuffer[] buffers;
+    private final ByteBuffer va = ByteBuffer.allocateDirect(AsciiNumbers.MAX_DOUBLE_LENGTH + 1);
+
+    /* velocity of each particle, saved by the chunks so va is summed on the same order as always */
+    private final double[] vx;
+    private final double[] vy;
+
+    /**
+     * @param N amount of particles of each frame
+     * @param pool pool where the chunks will be encoded; null to encode them on the calling thread
+     */
+    FrameEncoder(final int N, final ForkJoinPool pool) {
+        this.pool = pool;
+        this.N = N;
+        this.vx = new double[N];
+        this.vy = new double[N];
+
+        final int chunks = (N + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        // the first buffer holds the frame's iteration
+        this.buffers = new ByteBuffer[chunks + 1];
+        this.buffers[0] = ByteBuffer.allocateDirect(AsciiNumbers.MAX_LONG_LENGTH + 1);
+    }
+
+    /**
+     * Encodes the given frame on {@link #buffers()}, and its va on {@link #va()}, leaving all of them ready
+     * to be read
+     */
+    void encode(final OutputPipeline.Frame frame) {
+        final ByteBuffer header = buffers[0];
+        header.clear();
+        AsciiNumbers.putLong(header, frame.iteration);
+        header.put((byte) '\n');
+        header.flip();
+
+        final int chunks = buffers.length - 1;
+        if (pool == null || chunks <= 1) {
+            for (int c = 0 ; c < chunks ; c++) {
+                encodeChunk(frame, c);
+            }
+        } else {
+            pool.invoke(new ChunksTask(frame, 0, chunks));
+        }
+
+        encodeVaLine(frame);
+    }
+
+    /**
+     * Encodes only the va of the given frame on {@link #va()}, leaving it ready to be read
+     */
+    void encodeVa(final OutputPipeline.Frame frame) {
+        for (int i = 0 ; i < N ; i++) {
+            vx[i] = frame.speed[i] * Math.cos(frame.orientation[i]);
+            vy[i] = frame.speed[i] * Math.sin(frame.orientation[i]);
+        }
+        encodeVaLine(frame);
+    }
+
+    /**
+     * @return buffers holding the text of the last encoded frame, on order
+     */
+    ByteBuffer[] buffers() {
+        return buffers;
+    }
+
+    /**
+     * @return buffer holding the va line of the last encoded frame
+     */
+    ByteBuffer va() {
+        return va;
+    }
+
+    /**
+     * Encodes the va of the given frame, from the velocities already saved
+     */
+    private void encodeVaLine(final OutputPipeline.Frame frame) {
+        // calculate the current va, assuming the average of all point's speeds (works for the current case)
+        // 1/(N * v/N) = 1/v for this case, assuming the above is valid
+        double vax = 0;
+        double vay = 0;
+        double v = 0;
+        for (int i = 0 ; i < N ; i++) {
+            vax += vx[i];
+            vay += vy[i];
+            v += frame.speed[i];
+        }
+        final double frameVa = N > 0 ? (1/v) * (Math.sqrt(Math.pow(vax,2) + Math.pow(vay,2))) : -1;
+
+        va.clear();
+        AsciiNumbers.putDouble(va, frameVa);
+        va.put((byte) '\n');
+        va.flip();
+    }
+
+    private void encodeChunk(final OutputPipeline.Frame frame, final int chunk) {
+        if (buffers[chunk + 1] == null) {
+            // chunks' buffers are only needed if frames are encoded as text
+            final int size = Math.min(CHUNK_SIZE, N - chunk * CHUNK_SIZE);
+            buffers[chunk + 1] = ByteBuffer.allocateDirect(size * MAX_PARTICLE_LENGTH);
+        }
+        final ByteBuffer buffer = buffers[chunk + 1];
+        buffer.clear();
+        final int end = Math.min(N, (chunk + 1) * CHUNK_SIZE);
+        double cos, sin;
+        for (int i = chunk * CHUNK_SIZE ; i < end ; i++) {
+            cos = Math.cos(frame.orientation[i]);
+            sin = Math.sin(frame.orientation[i]);
+            vx[i] = frame.speed[i] * cos;
+            vy[i] = frame.speed[i] * sin;
+
+            AsciiNumbers.putLong(buffer, frame.id[i]);
+            buffer.put((byte) '\t');
+            // position
+            AsciiNumbers.putDouble(buffer, frame.x[i]);
+            buffer.put((byte) '\t');
+            AsciiNumbers.putDouble(buffer, frame.y[i]);
+            buffer.put((byte) '\t');
+            // velocity
+            AsciiNumbers.putDouble(buffer, vx[i]);
+            buffer.put((byte) '\t');
+            AsciiNumbers.putDouble(buffer, vy[i]);
+            buffer.put((byte) '\t');
+            // R G B colors
+            AsciiNumbers.putDouble(buffer, cos);
+            buffer.put((byte) '\t');
+            AsciiNumbers.putDouble(buffer, sin);
+            buffer.put((byte) '\t');
+            AsciiNumbers.putDouble(buffer, cos * sin);
+            buffer.put((byte) '\n');
+        }
+        buffer.flip();
+    }
+
+    private class ChunksTask extends RecursiveAction {
+        private final OutputPipeline.Frame frame;
+        private final int fromChunk;
+        private final int toChunk;
+
+        private ChunksTask(final OutputPipeline.Frame frame, final int fromChunk, final int toChunk) {
+            this.frame = frame;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (toChunk - fromChunk == 1) {
+                encodeChunk(frame, fromChunk);
+                return;
+            }
+
+            final int middle = (fromChunk + toChunk) >>> 1;
+            invokeAll(new ChunksTask(frame, fromChunk, middle), new ChunksTask(frame, middle, toChunk));
+        }
+    }
+}
@@ -1,7 +1,15 @@
 package ar.edu.itba.ss.offlattice.core;
 
+import ar.edu.itba.ss.offlattice.interfaces.NeighbourSearch;
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
 import ar.edu.itba.ss.offlattice.models.Point;
+import ar.edu.itba.ss.offlattice.services.CellIndexMethodImpl;
+import ar.edu.itba.ss.offlattice.services.CellIndexMethods;
+import ar.edu.itba.ss.offlattice.services.NeighbourSearchTuner;
+import ar.edu.itba.ss.offlattice.services.ParallelCellIndexMethodImpl;
 import ar.edu.itba.ss.offlattice.services.PointFactory;
+import ar.edu.itba.ss.offlattice.services.SeededRandom;
+import ar.edu.itba.ss.offlattice.services.VerletListMethod;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,6 +21,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
 
 import static ar.edu.itba.ss.offlattice.core.Main.EXIT_CODE.*;
@@ -25,24 +34,54 @@ public class Main {
     private static final String STATIC_FILE = "static.dat";
     private static final String DYNAMIC_FILE = "dynamic.dat";
     private static final String OUTPUT_FILE = "output.dat";
+    private static final String BINARY_OUTPUT_FILE = "output.bin";
     private static final String VA_FILE = "t_va.csv";
     private static final String OVITO_FILE = "graphics.xyz";
+    /* consecutive tries to place each particle at random before giving up; each try costs O(1) */
+    private static final int MAX_PLACEMENT_TRIES = 1_000_000;
     private static final String HELP_TEXT =
             "Off Lattice Automaton Implementation.\n" +
                     "Arguments: \n" +
                     "* gen staticdat <N> <L> <v> <r> : \n" +
                     "\t generates an output/static.dat file of N particles of radio r\n" +
                     "\t that will be contained on a square of side L. All particles will move at a speed of v\n" +
-                    "* gen dynamicdat <path/to/static.dat> : \n" +
+                    "\t The second line of the file can be edited to \"Lx Ly\" to use a rectangle of Lx x Ly instead\n" +
+                    "* gen dynamicdat <path/to/static.dat> [--seed=<seed>] [--placement=<placement>] [--threads=<n>] : \n" +
                     "\t generates an output/dynamic.dat file of N particles, \n" +
                     "\t each of the specified radio, that have x & y coordinates\n" +
-                    "\t between 0 (inclusive) and L (exclusive). Particles will also have an orientation between 0 and 2*PI\n" +
-                    "* lattice <path/to/static.dat> <path/to/dynamic.dat> <rc> <maxTime> <disturbance>\n" +
+                    "\t between 0 (inclusive) and L (or Lx and Ly) (exclusive). Particles will also have an orientation between 0 and 2*PI\n" +
+                    "\t If a seed is given, the same particles are generated each time; otherwise, a random one is used\n" +
+                    "\t Placements: random (default; each particle at a random non colliding position), " +
+                    "square or hex (jittered square or hexagonal lattice, for dense packings where random placement " +
+                    "stalls), poisson (Poisson-disk sampling; evenly spread particles with no lattice pattern)\n" +
+                    "\t Random placement fills regions of the area on n threads (default: 1); " +
+                    "the same seed gives the same particles with any amount of threads\n" +
+                    "* lattice <path/to/static.dat> <path/to/dynamic.dat> <rc> <maxTime> <disturbance> [options]\n" +
                     "\t runs the off-lattice automaton. Uses the disturbance value to randomly change the " +
                     "orientation of particles each iteration. The simulation lasts maxTime iterations.\n" +
+                    "\t Options:\n" +
+                    "\t --verlet=<skin> : use Verlet neighbour lists built with rc + skin, " +
+                    "rebuilt only when a particle moved more than skin/2\n" +
+                    "\t --subdivision=<k> : use cells of side rc/k, comparing each cell with the ones up to k cells " +
+                    "away that may hold a neighbour. k = 2 or 3 usually saves distance checks on dense systems " +
+                    "(default: 1)\n" +
+                    "\t --tune=<steps> : pick the neighbour search (brute force, cell index method, Verlet lists...) " +
+                    "and its parameters from N, density, radios and threads, confirming the choice by running the " +
+                    "best candidates for <steps> steps (0 to skip it). The choice is written to the logs. " +
+                    "Overrides --verlet and --subdivision\n" +
+                    "\t --threads=<n> : run the neighbour search and the particles' update on n threads (default: 1)\n" +
+                    "\t --reorder=<K> : reorder particles in memory by their position every K iterations, " +
+                    "keeping the output's order (default: 0, never)\n" +
+                    "\t --seed=<seed> : seed of the noise; runs with the same seed give the same output, with any amount of threads " +
+                    "(default: random, written to the logs)\n" +
+                    "\t --output=<format> : text (default) writes output/output.dat; binary or binary32 write " +
+                    "output/output.bin instead, a binary trajectory with positions and orientations as doubles or " +
+                    "floats, several times smaller and with an index to read any frame directly. The output " +
+                    "file of the other format, if any, is deleted\n" +
                     "* gen ovito <path/to/static.dat> <path/to/output.dat> : \n"+
                     "\t generates an output/graphics.xyz file (for Ovito) with the result of the off lattice\n " +
-                    "\t automaton(<output.dat>) generated with the other two files.\n";
+                    "\t automaton(<output.dat>) generated with the other two files.\n" +
+                    "\t A binary trajectory (output.bin) can be given instead of output.dat\n";
 
     // Exit Codes
     enum EXIT_CODE {
@@ -95,7 +134,7 @@ public class Main {
     }
 
     private static void offLattice(final String[] args) {
-        if (args.length != 6) {
+        if (args.length < 6) {
             System.out.println("[FAIL] - Bad number of arguments. Try 'help' for more information.");
             exit(BAD_N_ARGUMENTS);
         }
@@ -103,7 +142,7 @@ public class Main {
         // create points' set with static and dynamic files
         final StaticData staticData = loadStaticFile(args[1]);
 
-        final Set<Point> points = loadDynamicFile(args[2], staticData);
+        final ParticleStore particles = ParticleStore.fromPoints(loadDynamicFile(args[2], staticData));
 
         // parse rc, maxTime, range
         double rc = 0;
@@ -133,92 +172,239 @@ public class Main {
             exit(BAD_ARGUMENT);
         }
 
-        if ( rc<0 || maxTime<1 || disturbance < 0 || staticData.L <= 0 ) {
-            System.out.println("[FAIL] - The following must not happen: rc < 0 or maxTime <1 or or " +
-                    "disturbance < 0 or L <= 0.\nPlease check the input files.");
-            exit(BAD_ARGUMENT);
+        final Map<String, String> options = parseOptions(args, 6);
+
+        double skin = -1;
+        if (options.containsKey("verlet")) {
+            try {
+                skin = Double.parseDouble(options.get("verlet"));
+            } catch (NumberFormatException e) {
+                LOGGER.warn("[FAIL] - <skin> must be a number. Caused by: ", e);
+                System.out.println("[FAIL] - <skin> option must be a number. Try 'help' for more information.");
+                exit(BAD_ARGUMENT);
+            }
+            if (skin < 0) {
+                System.out.println("[FAIL] - <skin> option must not be negative. Try 'help' for more information.");
+                exit(BAD_ARGUMENT);
+            }
         }
 
-        // calculate optimus M
-        int M = (int) Math.floor(staticData.L/rc);
+        final int threads = parseThreads(options);
 
-        // Create file for first iteration
-        final File dataFolder = new File(DESTINATION_FOLDER);
-        dataFolder.mkdirs(); // tries to make directories for the .dat files
+        int subdivision = 1;
+        if (options.containsKey("subdivision")) {
+            try {
+                subdivision = Integer.parseInt(options.get("subdivision"));
+            } catch (NumberFormatException e) {
+                LOGGER.warn("[FAIL] - <k> must be a positive integer. Caused by: ", e);
+                System.out.println("[FAIL] - <k> option must be a positive integer. Try 'help' for more information.");
+                exit(BAD_ARGUMENT);
+            }
+            if (subdivision < 1) {
+                System.out.println("[FAIL] - <k> option must be a positive integer. Try 'help' for more information.");
+                exit(BAD_ARGUMENT);
+            }
+        }
 
-    /* delete previous dynamic.dat file, if any */
-        final Path pathToDatFile = Paths.get(DESTINATION_FOLDER, OUTPUT_FILE);
-        final Path pathToVaFile = Paths.get(DESTINATION_FOLDER, VA_FILE);
+        if ( rc<0 || maxTime<1 || disturbance < 0 || staticData.Lx <= 0 || staticData.Ly <= 0 ) {
+            System.out.println("[FAIL] - The following must not happen: rc < 0 or maxTime <1 or or " +
+                    "disturbance < 0 or Lx <= 0 or Ly <= 0.\nPlease check the input files.");
+            exit(BAD_ARGUMENT);
+        }
 
-        if(!deleteIfExists(pathToDatFile)) {
-            return;
+        // calculate optimus M, on each axis; with subdivided cells, rc is covered by that amount of cells
+        final double Lx = staticData.Lx;
+        final double Ly = staticData.Ly;
+        final int Mx = (int) Math.floor(subdivision * Lx/rc);
+        final int My = (int) Math.floor(subdivision * Ly/rc);
+        final double interactionRadius = rc;
+        if (!CellIndexMethods.mConditionIsMet(subdivision * Lx, Mx, rc, particles)
+                || !CellIndexMethods.mConditionIsMet(subdivision * Ly, My, rc, particles)) {
+            LOGGER.warn("L/M > (rc + r1 + r2) / k is not met for Mx = {}, My = {}, k = {} and the two biggest radios; " +
+                    "some neighbours may be missed", Mx, My, subdivision);
         }
-        if(!deleteIfExists(pathToVaFile)) {
-            return;
+        if ((Mx < 2 || My < 2) && !options.containsKey("tune")) {
+            System.out.println("[FAIL] - rc is too big for the given L; " +
+                    "there must be at least 2 cells on each side. Try 'help' for more information.");
+            exit(BAD_ARGUMENT);
+        }
+        if (subdivision > 1 && (Mx < 2 * subdivision + 1 || My < 2 * subdivision + 1) && !options.containsKey("tune")) {
+            System.out.println("[FAIL] - <k> option is too big for the given L and rc; " +
+                    "there must be at least 2 * k + 1 cells on each side. Try 'help' for more information.");
+            exit(BAD_ARGUMENT);
+        }
+        LOGGER.info("Using a grid of {} x {} cells, with {} cell(s) per rc", Mx, My, subdivision);
+
+        int reorderInterval = 0;
+        if (options.containsKey("reorder")) {
+            try {
+                reorderInterval = Integer.parseInt(options.get("reorder"));
+            } catch (NumberFormatException e) {
+                LOGGER.warn("[FAIL] - <K> must be a non negative integer. Caused by: ", e);
+                System.out.println("[FAIL] - <K> option must be a non negative integer. Try 'help' for more information.");
+                exit(BAD_ARGUMENT);
+            }
+            if (reorderInterval < 0) {
+                System.out.println("[FAIL] - <K> option must be a non negative integer. Try 'help' for more information.");
+                exit(BAD_ARGUMENT);
+            }
         }
-        generateOutputDatFile(points, 0);
 
-        // run offLattice automaton
-        Set<Point> updatedParticles = points;
+        final String outputFormat = options.getOrDefault("output", "text");
+        if (!outputFormat.equals("text") && !outputFormat.equals("binary") && !outputFormat.equals("binary32")) {
+            System.out.println("[FAIL] - <format> option must be one of text, binary or binary32. " +
+                    "Try 'help' for more information.");
+            exit(BAD_ARGUMENT);
+        }
 
-        for(long i=1; i<=maxTime; i++){
-            updatedParticles = OffLattices.run(updatedParticles, staticData.L, M, rc, disturbance);
+        final SeededRandom random = parseSeed(options);
+        LOGGER.info("Running with seed {} on {} thread(s)", random.seed(), threads);
 
-            // write updatedParticles to a file called "output.dat"
-            generateOutputDatFile(updatedParticles, i);
+        int calibrationSteps = -1;
+        if (options.containsKey("tune")) {
+            try {
+                calibrationSteps = Integer.parseInt(options.get("tune"));
+            } catch (NumberFormatException e) {
+                LOGGER.warn("[FAIL] - <steps> must be a non negative integer. Caused by: ", e);
+                System.out.println("[FAIL] - <steps> option must be a non negative integer. Try 'help' for more information.");
+                exit(BAD_ARGUMENT);
+            }
+            if (calibrationSteps < 0) {
+                System.out.println("[FAIL] - <steps> option must be a non negative integer. Try 'help' for more information.");
+                exit(BAD_ARGUMENT);
+            }
+            if (skin >= 0 || options.containsKey("subdivision")) {
+                LOGGER.warn("--verlet and --subdivision are ignored, as the neighbour search is tuned automatically");
+            }
         }
-    }
 
-    private static void generateOutputDatFile(final Set<Point> updatedParticles, final long iteration) {
-        // save data to a new file
+        final ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        try {
+            final CellIndexMethodImpl cim = pool != null ?
+                    new ParallelCellIndexMethodImpl(pool, subdivision) : new CellIndexMethodImpl(subdivision);
+            // each chunk of particles gets its own random stream, regardless of the amount of threads
+            final ParticleUpdater updater = new ParticleUpdater(random, pool);
+
+            final NeighbourSearch neighbourSearch;
+            if (calibrationSteps >= 0) {
+                neighbourSearch = new NeighbourSearchTuner(Lx, Ly, rc, true, pool, calibrationSteps).tune(particles);
+            } else if (skin >= 0) {
+                neighbourSearch = new VerletListMethod(Lx, Ly, rc, skin, true, cim);
+            } else {
+                neighbourSearch = (p, consumer) ->
+                        cim.forEachPair(p, Lx, Ly, Mx, My, interactionRadius, true, consumer);
+            }
 
-//        final File dataFolder = new File(DESTINATION_FOLDER);
-//        dataFolder.mkdirs(); // tries to make directories for the .dat files
-//
-//		/* delete previous dynamic.dat file, if any */
-        final Path pathToDatFile = Paths.get(DESTINATION_FOLDER, OUTPUT_FILE);
-        final Path pathToVaFile = Paths.get(DESTINATION_FOLDER, VA_FILE);
-//
-//        if(!deleteIfExists(pathToDatFile)) {
-//            return;
-//        }
+            // Create file for first iteration
+            final File dataFolder = new File(DESTINATION_FOLDER);
+            dataFolder.mkdirs(); // tries to make directories for the .dat files
 
-    /* write the new output.dat file */
-        final String[] data = pointsToString(updatedParticles, iteration);
+            final boolean binaryOutput = !outputFormat.equals("text");
+            final Path pathToDatFile = Paths.get(DESTINATION_FOLDER, binaryOutput ? BINARY_OUTPUT_FILE : OUTPUT_FILE);
+            final Path pathToVaFile = Paths.get(DESTINATION_FOLDER, VA_FILE);
 
-        BufferedWriter writer = null;
-        BufferedWriter va_writer = null;
-        try {
-            writer = new BufferedWriter(new FileWriter(pathToDatFile.toFile(), true));
-//            writer.write(String.valueOf(updatedParticles.size()));
-//            writer.write("\n");
-            writer.write(data[0]);
+            // so the output of the other format of a previous run is not taken as this run's one
+            if (!deleteIfExists(Paths.get(DESTINATION_FOLDER, binaryOutput ? OUTPUT_FILE : BINARY_OUTPUT_FILE))) {
+                return;
+            }
 
-            va_writer = new BufferedWriter(new FileWriter(pathToVaFile.toFile(), true));
-//            va_writer.write(String.valueOf(iteration));
-//            va_writer.write(",");
-            va_writer.write(data[1]); // write va data
-            va_writer.write("\n");
+            // run offLattice automaton; the simulation reuses its stores, so no particle is created on each iteration
+            final Simulation simulation = new Simulation(particles, neighbourSearch, updater, Lx, Ly, disturbance,
+                    reorderInterval);
+
+            // previous output files, if any, are overwritten; frames are written on another thread while the
+            // simulation goes on, encoding them on the pool, if any
+            try (final OutputPipeline output = binaryOutput ?
+                    new OutputPipeline(new BinaryTrajectoryWriter(pathToDatFile, particles, Lx, Ly, staticData.speed,
+                            outputFormat.equals("binary32")), pathToVaFile, particles.size(),
+                            OutputPipeline.DEFAULT_CAPACITY) :
+                    new OutputPipeline(pathToDatFile, pathToVaFile, particles.size(),
+                            OutputPipeline.DEFAULT_CAPACITY, pool)) {
+                output.submit(simulation, 0);
+
+                for(long i=1; i<=maxTime; i++){
+                    simulation.step();
+
+                    // write the simulation's particles to a file called "output.dat" (or "output.bin")
+                    output.submit(simulation, i);
+                }
+            } catch (IOException e) {
+                LOGGER.warn("An unexpected IO Exception occurred while writing the file {}. Caused by: ", pathToDatFile, e);
+                System.out.println("[FAIL] - An unexpected error occurred while writing the file '" + pathToDatFile + "'. \n" +
+                        "Check the logs for more info.\n" +
+                        "Aborting...");
+                exit(UNEXPECTED_ERROR);
+            }
 
-        } catch (IOException e) {
-            LOGGER.warn("An unexpected IO Exception occurred while writing the file {}. Caused by: ", pathToDatFile, e);
-            System.out.println("[FAIL] - An unexpected error occurred while writing the file '" + pathToDatFile + "'. \n" +
-                    "Check the logs for more info.\n" +
-                    "Aborting...");
-            exit(UNEXPECTED_ERROR);
+            if (neighbourSearch instanceof VerletListMethod) {
+                LOGGER.info("Verlet list built {} times for {} iterations",
+                        ((VerletListMethod) neighbourSearch).builds(), maxTime);
+            }
         } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * @param options parsed options
+     * @return a generator with the seed given by the --seed option, if any; or with a random seed otherwise
+     */
+    private static SeededRandom parseSeed(final Map<String, String> options) {
+        if (!options.containsKey("seed")) {
+            return SeededRandom.withRandomSeed();
+        }
+        long seed = 0;
+        try {
+            seed = Long.parseLong(options.get("seed"));
+        } catch (NumberFormatException e) {
+            LOGGER.warn("[FAIL] - <seed> must be an integer. Caused by: ", e);
+            System.out.println("[FAIL] - <seed> option must be an integer. Try 'help' for more information.");
+            exit(BAD_ARGUMENT);
+        }
+        return new SeededRandom(seed);
+    }
+
+    /**
+     * @param options parsed options
+     * @return the amount of threads given by the --threads option, if any; or 1 otherwise
+     */
+    private static int parseThreads(final Map<String, String> options) {
+        int threads = 1;
+        if (options.containsKey("threads")) {
             try {
-                // close the writer regardless of what happens...
-                if (writer != null) {
-                    writer.close();
-                }
-                if (va_writer != null) {
-                    va_writer.close();
-                }
-            } catch (Exception ignored) {
+                threads = Integer.parseInt(options.get("threads"));
+            } catch (NumberFormatException e) {
+                LOGGER.warn("[FAIL] - <threads> must be a positive integer. Caused by: ", e);
+                System.out.println("[FAIL] - <threads> option must be a positive integer. Try 'help' for more information.");
+                exit(BAD_ARGUMENT);
+            }
+            if (threads < 1) {
+                System.out.println("[FAIL] - <threads> option must be a positive integer. Try 'help' for more information.");
+                exit(BAD_ARGUMENT);
+            }
+        }
+        return threads;
+    }
 
+    /**
+     * Parses the options given after the required arguments, each with the form --name=value
+     * @param args all the arguments
+     * @param from index of the first option
+     * @return a map containing the value of each given option, by its name
+     */
+    private static Map<String, String> parseOptions(final String[] args, final int from) {
+        final Map<String, String> options = new HashMap<>();
+        for (int i = from ; i < args.length ; i++) {
+            final int separator = args[i].indexOf('=');
+            if (!args[i].startsWith("--") || separator < 0) {
+                System.out.println("[FAIL] - Invalid option '" + args[i] + "'. Try 'help' for more information.");
+                exit(BAD_ARGUMENT);
             }
+            options.put(args[i].substring(2, separator), args[i].substring(separator + 1));
         }
+        return options;
     }
 
     private static void generateCase(final String[] args) {
@@ -276,7 +462,7 @@ public class Main {
 
                 break;
             case "dynamicdat":
-                if (args.length != 3) {
+                if (args.length < 3) {
                     System.out.println("[FAIL] - Bad number of arguments. Try 'help' for more information.");
                     exit(BAD_N_ARGUMENTS);
                 }
@@ -284,8 +470,14 @@ public class Main {
                 // read N, L and rs from an input file
                 final StaticData staticData = loadStaticFile(args[2]);
 
+                final Map<String, String> dynamicOptions = parseOptions(args, 3);
+                final SeededRandom random = parseSeed(dynamicOptions);
+                final String placement = dynamicOptions.getOrDefault("placement", "random");
+                final int threads = parseThreads(dynamicOptions);
+                LOGGER.info("Generating dynamic file with seed {} and {} placement", random.seed(), placement);
+
                 // create the points position, given the static.dat file
-                generateDynamicDatFile(staticData);
+                generateDynamicDatFile(staticData, placement, random, threads);
                 break;
 
             case "ovito":
@@ -355,19 +547,44 @@ public class Main {
         }
     }
 
-    private static void generateDynamicDatFile(final StaticData staticData) {
+    private static void generateDynamicDatFile(final StaticData staticData, final String placement,
+                                               final SeededRandom random, final int threads) {
         final PointFactory pF = PointFactory.getInstance();
 
         final Point leftBottomPoint = Point.builder(0, 0).speed(0).orientation(0).build();
-        final Point rightTopPoint = Point.builder(staticData.L, staticData.L).speed(0).orientation(0).build();
-
-        final Set<Point> pointsSet = pF.randomPoints(leftBottomPoint, rightTopPoint,
-                staticData.radios, false, Integer.MAX_VALUE, staticData.speed);
+        final Point rightTopPoint = Point.builder(staticData.Lx, staticData.Ly).speed(0).orientation(0).build();
+
+        final Set<Point> pointsSet;
+        switch (placement) {
+            case "random":
+                // regions do not depend on the amount of threads, so neither do the points
+                final ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+                pointsSet = pF.randomPointsByRegions(leftBottomPoint, rightTopPoint,
+                        staticData.radios, false, MAX_PLACEMENT_TRIES, staticData.speed, random, pool);
+                if (pool != null) {
+                    pool.shutdown();
+                }
+                break;
+            case "square":
+            case "hex":
+                pointsSet = pF.latticePoints(leftBottomPoint, rightTopPoint,
+                        staticData.radios, placement.equals("hex"), staticData.speed, random);
+                break;
+            case "poisson":
+                pointsSet = pF.poissonDiskPoints(leftBottomPoint, rightTopPoint,
+                        staticData.radios, staticData.speed, random);
+                break;
+            default:
+                System.out.println("[FAIL] - <placement> option must be one of random, square, hex or poisson. " +
+                        "Try 'help' for more information.");
+                exit(BAD_ARGUMENT);
+                return;
+        }
 
         if (pointsSet.size() < staticData.radios.length) {
             System.out.println("[FAIL] - Could not generate all the particles from the static file.\n" +
                     "They where crashing each other when trying to create them at different positions.\n" +
-                    "Check that N is not that big for the given L.\n" +
+                    "Check that N is not that big for the given L, or try --placement=hex for dense packings.\n" +
                     "Aborting...");
             exit(UNEXPECTED_ERROR);
         }
@@ -412,55 +629,12 @@ public class Main {
     private static String pointsToString(final Set<Point> pointsSet) {
         final StringBuffer sb = new StringBuffer();
         sb.append(0).append('\n');
-        pointsSet.forEach(point -> sb.append(point.x()).append('\t').append(point.y()).append('\t')
-                .append(point.orientation()).append('\n'));
+        // each line is read with the radio on the same line of static.dat, and ids follow the order of the radios
+        pointsSet.stream().sorted(Comparator.comparingLong(Point::id)).forEachOrdered(point ->
+                sb.append(point.x()).append('\t').append(point.y()).append('\t')
+                        .append(point.orientation()).append('\n'));
         return sb.toString();
     }
-    // Used for building output.dat
-    private static String[] pointsToString(final Set<Point> pointsSet, long iteration) {
-        final StringBuilder sb = new StringBuilder();
-        sb.append(iteration).append('\n');
-        double vx, vy, r, g, b;
-        double vax = 0;
-        double vay = 0;
-        double v = 0;
-        for (Point point : pointsSet) {
-            vx = point.speed() * Math.cos(point.orientation());
-            vy = point.speed() * Math.sin(point.orientation());
-            vax += vx;
-            vay += vy;
-            v += point.speed();
-            r = Math.cos(point.orientation());
-            g = Math.sin(point.orientation());
-            b = Math.cos(point.orientation()) * Math.sin(point.orientation());
-            sb.append(point.id()).append('\t')
-                    // position
-                    .append(point.x()).append('\t').append(point.y()).append('\t')
-                    // velocity
-                    .append(vx).append('\t').append(vy).append('\t')
-                    // R G B colors
-                    .append(r).append('\t')
-                    .append(g).append('\t')
-                    .append(b).append('\n');
-        }
-
-        // calculate the current va, assuming the average of all point's speeds (works for the current case)
-        // 1/(N * v/N) = 1/v for this case, assuming the above is valid
-
-        final double va;
-        if (!pointsSet.isEmpty()) {
-            va = (1/v) * (Math.sqrt(Math.pow(vax,2) + Math.pow(vay,2)));
-        } else {
-            va = -1;
-        }
-
-        final String[] answer = new String[2];
-        answer[0] = sb.toString();
-        answer[1] = String.valueOf(va);
-
-        return answer;
-    }
-
     /**
      *  Generate a .XYZ file which contains the following information about a particle:
      *  - id
@@ -492,10 +666,15 @@ public class Main {
 
         Stream<String> staticDatStream = null;
         Stream<String> outputDatStream = null;
+        BinaryTrajectoryReader trajectory = null;
 
         try {
             staticDatStream = Files.lines(pathToStaticDatFile);
-            outputDatStream = Files.lines(pathToOutputDatFile);
+            if (BinaryTrajectoryReader.isBinaryTrajectory(pathToOutputDatFile)) {
+                trajectory = new BinaryTrajectoryReader(pathToOutputDatFile);
+            } else {
+                outputDatStream = Files.lines(pathToOutputDatFile);
+            }
         } catch (IOException e) {
             LOGGER.warn("Could not read a file. Details: ", e);
             System.out.println("Could not read one of these files: '" + pathToStaticDatFile + "' or '"
@@ -511,19 +690,21 @@ public class Main {
             String stringN; // N as string
             String iterationNum, borderParticles;
             int N;
-            final double L;
+            final double[] sides;
             final Iterator<String> staticDatIterator;
             final Iterator<String> outputDatIterator;
             final StringBuilder sb = new StringBuilder();
 
             writer = new BufferedWriter(new FileWriter(pathToGraphicsFile.toFile()));
             staticDatIterator = staticDatStream.iterator();
-            outputDatIterator = outputDatStream.iterator();
+            outputDatIterator = outputDatStream != null ? outputDatStream.iterator() : null;
 
             // Write number of particles
             stringN = staticDatIterator.next();
             N = Integer.valueOf(stringN);
-            L = Double.valueOf(staticDatIterator.next());
+            sides = parseSides(staticDatIterator.next());
+            final double Lx = sides[0];
+            final double Ly = sides[1];
 
             // Create virtual particles in the borders, in order for Ovito to show the whole board
             sb.append(N+1).append('\t').append(0).append('\t').append(0).append('\t').append(0)
@@ -531,17 +712,17 @@ public class Main {
                     // color: black
                     .append(0).append('\t').append(0).append('\t').append(0)
                     .append('\n');
-            sb.append(N+2).append('\t').append(0).append('\t').append(L).append('\t').append(0)
+            sb.append(N+2).append('\t').append(0).append('\t').append(Ly).append('\t').append(0)
                     .append('\t').append(0).append('\t')
                     // color: black
                     .append(0).append('\t').append(0).append('\t').append(0)
                     .append('\n');
-            sb.append(N+3).append('\t').append(L).append('\t').append(0).append('\t').append(0)
+            sb.append(N+3).append('\t').append(Lx).append('\t').append(0).append('\t').append(0)
                     .append('\t').append(0).append('\t')
                     // color: black
                     .append(0).append('\t').append(0).append('\t').append(0)
                     .append('\n');
-            sb.append(N+4).append('\t').append(L).append('\t').append(L).append('\t').append(0)
+            sb.append(N+4).append('\t').append(Lx).append('\t').append(Ly).append('\t').append(0)
                     .append('\t').append(0).append('\t')
                     // color: black
                     .append(0).append('\t').append(0).append('\t').append(0)
@@ -551,7 +732,11 @@ public class Main {
 
             borderParticles = sb.toString();
 
-            while(outputDatIterator.hasNext()){
+            if (trajectory != null) {
+                writeOvitoFrames(trajectory, writer, stringN, borderParticles);
+            }
+
+            while(outputDatIterator != null && outputDatIterator.hasNext()){
                 // Write ammount of particles (N)
                 writer.write(stringN);
                 writer.newLine();
@@ -586,13 +771,48 @@ public class Main {
                     writer.close();
                 }
                 staticDatStream.close();
-                outputDatStream.close();
+                if (outputDatStream != null) {
+                    outputDatStream.close();
+                }
+                if (trajectory != null) {
+                    trajectory.close();
+                }
             } catch (final IOException ignored) {
 
             }
         }
     }
 
+    /**
+     * Writes each frame of the given binary trajectory as {@link #generateOvitoFile(String, String)} does with
+     * the ones of output.dat, calculating velocities and colors as the simulation does
+     */
+    private static void writeOvitoFrames(final BinaryTrajectoryReader trajectory, final BufferedWriter writer,
+                                         final String stringN, final String borderParticles) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        double orientation;
+        for (int frame = 0 ; frame < trajectory.frames() ; frame++) {
+            sb.setLength(0);
+            sb.append(stringN).append('\n');
+            sb.append(trajectory.iteration(frame)).append('\n');
+            for (int i = 0 ; i < trajectory.N() ; i++) {
+                orientation = trajectory.orientation(frame, i);
+                sb.append(trajectory.id(frame, i)).append('\t')
+                        // position
+                        .append(trajectory.x(frame, i)).append('\t').append(trajectory.y(frame, i)).append('\t')
+                        // velocity
+                        .append(trajectory.speed() * Math.cos(orientation)).append('\t')
+                        .append(trajectory.speed() * Math.sin(orientation)).append('\t')
+                        // R G B colors
+                        .append(Math.cos(orientation)).append('\t')
+                        .append(Math.sin(orientation)).append('\t')
+                        .append(Math.cos(orientation) * Math.sin(orientation)).append('\n');
+            }
+            writer.write(sb.toString());
+            writer.write(borderParticles);
+        }
+    }
+
     /**
      * Try to delete a file, whether it exists or not
      * @param pathToFile the file path that refers to the file that will be deleted
@@ -613,11 +833,29 @@ public class Main {
     /* ------------------------------- */
     private static class StaticData {
         private int N;
-        private double L;
+        private double Lx;
+        private double Ly;
         private double speed;
         private double[] radios;
     }
 
+    /**
+     * Parses the second line of a static.dat file, which is either "L", for a square,
+     * or "Lx Ly", for a rectangle
+     * @param line line to be parsed
+     * @return Lx and Ly, in that order
+     * @throws NumberFormatException if the line does not have one or two numbers
+     */
+    private static double[] parseSides(final String line) {
+        final String[] values = line.trim().split("\\s+");
+        if (values.length > 2) {
+            throw new NumberFormatException("Expected L or Lx Ly, but found: " + line);
+        }
+        final double Lx = Double.valueOf(values[0]);
+        final double Ly = values.length == 2 ? Double.valueOf(values[1]) : Lx;
+        return new double[] { Lx, Ly };
+    }
+
     private static StaticData loadStaticFile(final String filePath) {
         final StaticData staticData = new StaticData();
 
@@ -633,8 +871,10 @@ public class Main {
             // get N
             staticData.N = Integer.valueOf(staticFileLines.next());
 
-            // get L
-            staticData.L = Double.valueOf(staticFileLines.next());
+            // get L, or Lx and Ly
+            final double[] sides = parseSides(staticFileLines.next());
+            staticData.Lx = sides[0];
+            staticData.Ly = sides[1];
 
             // get speed
             staticData.speed = Double.valueOf(staticFileLines.next());
@@ -681,7 +921,7 @@ public class Main {
         }
 
 
-        final Set<Point> points = new HashSet<>(staticData.radios.length);
+        final Set<Point> points = new LinkedHashSet<>(staticData.radios.length);
 
         try (final Stream<String> dynamicStream = Files.lines(dynamicFile.toPath())) {
             final Iterator<String> dynamicFileLines = dynamicStream.iterator();
@@ -1,62 +1,82 @@
 package ar.edu.itba.ss.offlattice.core;
 
-import ar.edu.itba.ss.offlattice.models.Point;
-import ar.edu.itba.ss.offlattice.services.CellIndexMethodImpl;
-import ar.edu.itba.ss.offlattice.services.RandomInRanges;
-
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import ar.edu.itba.ss.offlattice.interfaces.NeighbourSearch;
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
 
 @SuppressWarnings("WeakerAccess")
 public class OffLattices {
 
-    public static Set<Point> run(final Set<Point> points, final double L, final int M,
-                          final double rc, final double noiseAmplitude) {
-        final CellIndexMethodImpl cim = new CellIndexMethodImpl();
-        final Map<Point,Set<Point>> neighbours = cim.run(points, L, M, rc, true);
-
-        return updateParticles(neighbours, noiseAmplitude, L);
+    /**
+     * Runs one step of the off lattice automaton, fusing the orientation average with the given neighbour search,
+     * and updating the particles with the given updater.
+     * <p>
+     * The particles' next state is saved at the given next store, which must have the same size as
+     * the particles' one, so no particle is created on each step.
+     * <p>
+     * Each neighbour's orientation is accumulated on the given sums while the neighbour search is running,
+     * so the neighbours are never saved and sines and cosines are calculated once per particle.
+     * <p>
+     * The neighbour search should be the same one on every step, so it can reuse work from previous steps
+     * (as a {@link ar.edu.itba.ss.offlattice.services.VerletListMethod} does).
+     * @param particles current state of the particles
+     * @param next store where the next state of the particles will be saved
+     * @param sums sums used to accumulate each particle's neighbours' orientations; their content is overwritten
+     * @param neighbourSearch search that gives each pair of neighbours, considering a periodic limit
+     * @param updater updater of the particles' positions and orientations
+     * @param L length of the side of the square containing all the particles
+     * @param noiseAmplitude amplitude of the noise applied to each new orientation
+     */
+    public static void run(final ParticleStore particles, final ParticleStore next, final OrientationSums sums,
+                           final NeighbourSearch neighbourSearch, final ParticleUpdater updater,
+                           final double L, final double noiseAmplitude) {
+        run(particles, next, sums, neighbourSearch, updater, L, L, noiseAmplitude);
     }
 
-    private static Set<Point> updateParticles(final Map<Point, Set<Point>> neighboursMap,
-                                       final double noiseAmplitude, double L) {
-        final Set<Point> movedParticles = new HashSet<>(neighboursMap.size());
-
-        for(final Map.Entry<Point, Set<Point>> pointEntry: neighboursMap.entrySet()) {
-            final Point currentPoint = pointEntry.getKey();
-            final Set<Point> neighbours = pointEntry.getValue();
-
-            final double[] newPosition = updatePosition(currentPoint, L);
-            final double newOrientation = updateOrientation(currentPoint, neighbours, noiseAmplitude);
+    /**
+     * Same as {@link #run(ParticleStore, ParticleStore, OrientationSums, NeighbourSearch, ParticleUpdater,
+     * double, double)}, but for a rectangle of Lx x Ly. The given neighbour search must have been created
+     * for that same rectangle.
+     * @param Lx length of the side of the rectangle containing all the particles, along the x axis
+     * @param Ly length of the side of the rectangle containing all the particles, along the y axis
+     */
+    public static void run(final ParticleStore particles, final ParticleStore next, final OrientationSums sums,
+                           final NeighbourSearch neighbourSearch, final ParticleUpdater updater,
+                           final double Lx, final double Ly, final double noiseAmplitude) {
+        run(particles, next, sums, neighbourSearch, updater, Lx, Ly, noiseAmplitude, null);
+    }
 
-            final Point nextPoint = Point.builder(newPosition[0], newPosition[1])
-                    .id(currentPoint.id())
-                    .radio(currentPoint.radio())
-                    .speed(currentPoint.speed())
-                    .orientation(newOrientation)
-                    .build();
-            movedParticles.add(nextPoint);
-        }
+    /**
+     * Same as {@link #run(ParticleStore, ParticleStore, OrientationSums, NeighbourSearch, ParticleUpdater,
+     * double, double, double)}, but for particles that may not be at the slot of their initial index, so each
+     * particle gets its own noise wherever it is
+     * @param particleAt initial index of the particle at each slot; null if each particle is at the slot of
+     *                   its initial index
+     */
+    public static void run(final ParticleStore particles, final ParticleStore next, final OrientationSums sums,
+                           final NeighbourSearch neighbourSearch, final ParticleUpdater updater,
+                           final double Lx, final double Ly, final double noiseAmplitude, final int[] particleAt) {
+        sums.reset(particles);
+        neighbourSearch.forEachPair(particles, sums);
 
-        return movedParticles;
+        updater.update(particles, next, sums, Lx, Ly, noiseAmplitude, particleAt);
     }
 
-    private static double[] updatePosition(final Point point, double L) {
-        final double[] positions = new double[2];
-
-        positions[0] = point.x() + ( Math.cos(point.orientation()) * point.speed() );
-        positions[1] = point.y() + ( Math.sin(point.orientation()) * point.speed() );
+    static void updatePosition(final ParticleStore particles, final ParticleStore next,
+                               final int i, final double cos, final double sin,
+                               final double Lx, final double Ly) {
+        double x = particles.x(i) + ( cos * particles.speed(i) );
+        double y = particles.y(i) + ( sin * particles.speed(i) );
 
         // Check particle didn't go out of range
         double positionCorrection;
-        for (int i = 0 ; i < positions.length ; i++) {
-            while ((positionCorrection = outOfBounds(positions[i], 0, L)) != 0) {
-                positions[i] += positionCorrection;
-            }
+        while ((positionCorrection = outOfBounds(x, 0, Lx)) != 0) {
+            x += positionCorrection;
+        }
+        while ((positionCorrection = outOfBounds(y, 0, Ly)) != 0) {
+            y += positionCorrection;
         }
 
-        return positions;
+        next.setPosition(i, x, y);
     }
 
     /**
@@ -77,25 +97,4 @@ public class OffLattices {
         }
         return 0;
     }
-
-    private static double updateOrientation(final Point point, final Set<Point> neighbours, final double noiseAmplitude) {
-        final double noise = RandomInRanges.randomDouble(-noiseAmplitude/2, noiseAmplitude/2);
-        final double orientationAvg = orientationAverage(point, neighbours);
-
-        return orientationAvg + noise;
-    }
-
-    private static double orientationAverage(final Point point, final Set<Point> neighbours) {
-        double sinAvg = Math.sin(point.orientation());
-        double cosAvg = Math.cos(point.orientation());
-
-        for(final Point neighbour: neighbours){
-            sinAvg += Math.sin(neighbour.orientation());
-            cosAvg += Math.cos(neighbour.orientation());
-        }
-        sinAvg /= (neighbours.size()+1);
-        cosAvg /= (neighbours.size()+1);
-
-        return Math.atan2(sinAvg, cosAvg);
-    }
 }
@@ -0,0 +1,84 @@
+package ar.edu.itba.ss.offlattice.core;
+
+import ar.edu.itba.ss.offlattice.interfaces.PairConsumer;
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
+
+/**
+ * Accumulates, for each particle, the sum of the sines and cosines of its own orientation and the ones
+ * of its neighbours, while the neighbour search is running.
+ * <p>
+ * Sines and cosines are calculated once per particle on {@link #reset(ParticleStore)}, and each pair given
+ * to {@link #accept(int, int, double)} updates both of its particles, so the neighbours are never saved.
+ * Arrays are kept between resets and only grow when needed.
+ */
+public class OrientationSums implements PairConsumer {
+    private double[] sin = new double[0];
+    private double[] cos = new double[0];
+    private double[] sinSum = new double[0];
+    private double[] cosSum = new double[0];
+    private int[] count = new int[0];
+
+    /**
+     * Starts the sums of each particle with its own orientation
+     * @param particles particles whose orientations will be averaged
+     */
+    public void reset(final ParticleStore particles) {
+        final int N = particles.size();
+        if (sin.length < N) {
+            sin = new double[N];
+            cos = new double[N];
+            sinSum = new double[N];
+            cosSum = new double[N];
+            count = new int[N];
+        }
+
+        for (int i = 0 ; i < N ; i++) {
+            sin[i] = sinSum[i] = Math.sin(particles.orientation(i));
+            cos[i] = cosSum[i] = Math.cos(particles.orientation(i));
+            count[i] = 0;
+        }
+    }
+
+    @Override
+    public void accept(final int i, final int j, final double squaredDistance) {
+        sinSum[i] += sin[j];
+        cosSum[i] += cos[j];
+        count[i] ++;
+
+        sinSum[j] += sin[i];
+        cosSum[j] += cos[i];
+        count[j] ++;
+    }
+
+    /**
+     * @param i slot of the particle
+     * @return the average orientation of the particle and all its neighbours
+     */
+    public double average(final int i) {
+        return Math.atan2(sinSum[i] / (count[i] + 1), cosSum[i] / (count[i] + 1));
+    }
+
+    /**
+     * @param i slot of the particle
+     * @return the sine of the particle's orientation, as it was on the last reset
+     */
+    public double sin(final int i) {
+        return sin[i];
+    }
+
+    /**
+     * @param i slot of the particle
+     * @return the cosine of the particle's orientation, as it was on the last reset
+     */
+    public double cos(final int i) {
+        return cos[i];
+    }
+
+    /**
+     * @param i slot of the particle
+     * @return the amount of neighbours the particle has
+     */
+    public int count(final int i) {
+        return count[i];
+    }
+}
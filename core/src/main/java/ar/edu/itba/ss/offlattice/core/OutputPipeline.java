@@ -0,0 +1,274 @@
+package ar.edu.itba.ss.offlattice.core;
+
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Writes the frames of a simulation to the output.dat (or to a binary trajectory, see
+ * {@link BinaryTrajectoryWriter}) and t_va.csv files on a dedicated thread.
+ * <p>
+ * Both files are opened once, when the pipeline is created, and written through {@link FileChannel}s until it is
+ * closed. Frames go from the simulation thread to the writer thread through a ring of frame slots, allocated
+ * when the pipeline is created: {@link #submit(Simulation, long)} only copies the particles' state to a free
+ * slot, so the simulation can go on with its next step while the writer formats and writes the frame. If the
+ * writer falls behind and there is no free slot, {@link #submit(Simulation, long)} waits for one.
+ * <p>
+ * Frames are written on the same order they are submitted, and with the same format as they always were,
+ * byte by byte. The writer encodes each frame with a {@link FrameEncoder}, splitting it on chunks that are encoded
+ * on the given pool, if any, and writes all of them with a single gathering write.
+ * <p>
+ * Notice that an instance of this class must not be used by more than one thread at a time.
+ */
+public class OutputPipeline implements Closeable {
+    /**
+     * Default amount of frames that can wait to be written
+     */
+    public static final int DEFAULT_CAPACITY = 4;
+
+    /* marks the end of the frames for the writer thread */
+    private static final long END = -1;
+
+    /* only one of them is used */
+    private final FileChannel outputChannel;
+    private final BinaryTrajectoryWriter trajectory;
+    private final FileChannel vaChannel;
+
+    /* slots ready to be filled, and slots ready to be written; together, they make the ring */
+    private final BlockingQueue<Frame> free;
+    private final BlockingQueue<Frame> filled;
+
+    private final FrameEncoder encoder;
+    private final Thread writer;
+    private volatile Throwable failure;
+    private boolean closed;
+
+    /**
+     * Creates a pipeline that encodes each frame on its writer thread
+     * @see #OutputPipeline(Path, Path, int, int, ForkJoinPool)
+     */
+    public OutputPipeline(final Path outputFile, final Path vaFile, final int N, final int capacity)
+            throws IOException {
+        this(outputFile, vaFile, N, capacity, null);
+    }
+
+    /**
+     * @param outputFile file where the frames will be written; it is created or truncated
+     * @param vaFile file where the va of each frame will be written; it is created or truncated
+     * @param N amount of particles of each frame
+     * @param capacity amount of frames that can wait to be written. Must be positive.
+     * @param pool pool where the chunks of each frame will be encoded; null to encode them on the writer thread
+     *
+     * @throws IOException if any of the files can not be opened
+     * @throws IllegalArgumentException if capacity <= 0
+     */
+    public OutputPipeline(final Path outputFile, final Path vaFile, final int N, final int capacity,
+                          final ForkJoinPool pool) throws IOException {
+        this(FileChannel.open(outputFile, CREATE, WRITE, TRUNCATE_EXISTING), null, vaFile, N, capacity, pool);
+    }
+
+    /**
+     * Creates a pipeline that writes the frames with the given binary trajectory writer, instead of as text.
+     * It is closed when this pipeline is closed.
+     * @param trajectory writer of the frames
+     * @param vaFile file where the va of each frame will be written; it is created or truncated
+     * @param N amount of particles of each frame
+     * @param capacity amount of frames that can wait to be written. Must be positive.
+     *
+     * @throws IOException if the va file can not be opened
+     * @throws IllegalArgumentException if capacity <= 0
+     */
+    public OutputPipeline(final BinaryTrajectoryWriter trajectory, final Path vaFile, final int N,
+                          final int capacity) throws IOException {
+        this(null, trajectory, vaFile, N, capacity, null);
+    }
+
+    private OutputPipeline(final FileChannel outputChannel, final BinaryTrajectoryWriter trajectory,
+                           final Path vaFile, final int N, final int capacity, final ForkJoinPool pool)
+            throws IOException {
+        this.outputChannel = outputChannel;
+        this.trajectory = trajectory;
+        try {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("Check that this is happening, but must not: capacity <= 0");
+            }
+            this.vaChannel = FileChannel.open(vaFile, CREATE, WRITE, TRUNCATE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            closeOutput();
+            throw e;
+        }
+
+        // one more slot than the capacity, for the end mark
+        this.free = new ArrayBlockingQueue<>(capacity + 1);
+        this.filled = new ArrayBlockingQueue<>(capacity + 1);
+        for (int k = 0 ; k < capacity ; k++) {
+            free.add(new Frame(N));
+        }
+
+        this.encoder = new FrameEncoder(N, pool);
+        this.writer = new Thread(this::write, "output-writer");
+        this.writer.start();
+    }
+
+    /**
+     * Copies the current state of the given simulation to a free slot, to be written as the frame of the given
+     * iteration, waiting for a slot if there is none.
+     * <p>
+     * Particles are written on their initial order, regardless of where the simulation keeps them.
+     *
+     * @throws IOException if writing any of the previous frames failed, or if the thread is interrupted
+     * while waiting for a slot
+     */
+    public void submit(final Simulation simulation, final long iteration) throws IOException {
+        checkFailure();
+        final Frame frame;
+        try {
+            frame = free.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a free frame slot");
+        }
+
+        final ParticleStore particles = simulation.particles();
+        int i;
+        for (int particle = 0 ; particle < frame.size ; particle++) {
+            i = simulation.slotOf(particle);
+            frame.id[particle] = particles.id(i);
+            frame.x[particle] = particles.x(i);
+            frame.y[particle] = particles.y(i);
+            frame.speed[particle] = particles.speed(i);
+            frame.orientation[particle] = particles.orientation(i);
+        }
+        frame.iteration = iteration;
+
+        filled.add(frame);
+    }
+
+    /**
+     * Waits for all the submitted frames to be written, and closes both files
+     *
+     * @throws IOException if writing any frame, or closing any file, failed
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        final Frame end = new Frame(0);
+        end.iteration = END;
+        filled.add(end);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the frames to be written");
+        } finally {
+            try {
+                closeOutput();
+            } finally {
+                vaChannel.close();
+            }
+        }
+        checkFailure();
+    }
+
+    private void closeOutput() throws IOException {
+        if (outputChannel != null) {
+            outputChannel.close();
+        }
+        if (trajectory != null) {
+            trajectory.close();
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Could not write the output files", failure);
+        }
+    }
+
+    /**
+     * Writer thread's loop: writes each filled slot and gives it back, until the end mark is found.
+     * Once encoding or writing fails, for whatever reason, slots are given back without writing them, so the
+     * simulation thread never waits forever, and the failure is reported by the next submit or by close.
+     */
+    private void write() {
+        Frame frame;
+        while (true) {
+            try {
+                frame = filled.take();
+            } catch (InterruptedException e) {
+                failure = new InterruptedIOException("Writer interrupted");
+                return;
+            }
+            if (frame.iteration == END) {
+                return;
+            }
+
+            if (failure == null) {
+                try {
+                    if (trajectory != null) {
+                        trajectory.write(frame);
+                        encoder.encodeVa(frame);
+                    } else {
+                        encoder.encode(frame);
+                        writeFully(outputChannel, encoder.buffers());
+                    }
+                    writeFully(vaChannel, encoder.va());
+                } catch (Throwable e) {
+                    failure = e;
+                }
+            }
+            free.add(frame);
+        }
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer[] buffers) throws IOException {
+        final ByteBuffer last = buffers[buffers.length - 1];
+        while (last.hasRemaining()) {
+            channel.write(buffers);
+        }
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * State of the particles at one iteration, on their initial order
+     */
+    static class Frame {
+        final int size;
+        final long[] id;
+        final double[] x;
+        final double[] y;
+        final double[] speed;
+        final double[] orientation;
+        long iteration;
+
+        Frame(final int size) {
+            this.size = size;
+            this.id = new long[size];
+            this.x = new double[size];
+            this.y = new double[size];
+            this.speed = new double[size];
+            this.orientation = new double[size];
+        }
+    }
+}
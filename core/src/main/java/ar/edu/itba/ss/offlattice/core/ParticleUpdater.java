@@ -0,0 +1,178 @@
+package ar.edu.itba.ss.offlattice.core;
+
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
+import ar.edu.itba.ss.offlattice.services.SeededRandom;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Updates the position and orientation of every particle, once their neighbours' orientations were accumulated.
+ * <p>
+ * The noise of each step is drawn by particle, on their initial order: particles are split on chunks of
+ * {@link #CHUNK_SIZE} consecutive initial indexes, and each chunk draws their noise from its own substream of
+ * the given generator, which is kept from step to step. So, wherever a particle is kept (see
+ * {@link Simulation}), it always gets the same noise. Then, slots are split on chunks of {@link #CHUNK_SIZE}
+ * consecutive slots, and each chunk only writes the slots it owns at the next store. Both kinds of chunks
+ * can be done at the same time on a {@link ForkJoinPool}, without any synchronization. When no pool is given,
+ * chunks are done on the calling thread and, once the first update is done, no object is created.
+ * <p>
+ * As the amount of chunks only depends on the amount of particles, and each chunk always gets the same particles
+ * and the same substream, results only depend on the generator's seed, regardless of the pool (if any), of how
+ * chunks are scheduled between its threads, and of the slot where each particle is.
+ * <p>
+ * Notice that an instance of this class must not be used by more than one thread at a time.
+ */
+public class ParticleUpdater {
+    /**
+     * Amount of particles (or slots) of each chunk
+     */
+    static final int CHUNK_SIZE = 4096;
+
+    private final SeededRandom random;
+    private final ForkJoinPool pool;
+    private SeededRandom[] streams = new SeededRandom[0];
+    private double[] noises = new double[0];
+
+    /* arguments of the current update, kept so chunks only need to know which one they are */
+    private ParticleStore particles;
+    private ParticleStore next;
+    private OrientationSums sums;
+    private double Lx;
+    private double Ly;
+    private double noiseAmplitude;
+    private int[] particleAt;
+
+    /**
+     * Creates an updater that runs on the calling thread
+     * @param random generator from which each chunk's substream is derived
+     */
+    public ParticleUpdater(final SeededRandom random) {
+        this(random, null);
+    }
+
+    /**
+     * @param random generator from which each chunk's substream is derived
+     * @param pool pool where chunks will be done; null to do them on the calling thread
+     */
+    public ParticleUpdater(final SeededRandom random, final ForkJoinPool pool) {
+        this.random = random;
+        this.pool = pool;
+    }
+
+    /**
+     * Saves at the next store the particles' state after moving them and changing their orientation
+     * to the average of their neighbours' orientations, plus a random noise
+     * @param particles current state of the particles, each one at the slot of its initial index
+     * @param next store where the next state of the particles will be saved
+     * @param sums sums with each particle's neighbours' orientations already accumulated
+     * @param L length of the side of the square containing all the particles
+     * @param noiseAmplitude amplitude of the noise applied to each new orientation
+     */
+    public void update(final ParticleStore particles, final ParticleStore next, final OrientationSums sums,
+                       final double L, final double noiseAmplitude) {
+        update(particles, next, sums, L, L, noiseAmplitude, null);
+    }
+
+    /**
+     * Same as {@link #update(ParticleStore, ParticleStore, OrientationSums, double, double)},
+     * but for a rectangle of Lx x Ly, where each axis wraps on its own, and for particles that may not be
+     * at the slot of their initial index
+     * @param Lx length of the side of the rectangle containing all the particles, along the x axis
+     * @param Ly length of the side of the rectangle containing all the particles, along the y axis
+     * @param particleAt initial index of the particle at each slot; null if each particle is at the slot of
+     *                   its initial index
+     */
+    public void update(final ParticleStore particles, final ParticleStore next, final OrientationSums sums,
+                       final double Lx, final double Ly, final double noiseAmplitude, final int[] particleAt) {
+        final int N = particles.size();
+        if (noises.length < N) {
+            noises = new double[N];
+        }
+        final int chunks = (N + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        if (streams.length < chunks) {
+            // substreams only depend on their chunk, so the ones already in use are kept
+            final SeededRandom[] newStreams = new SeededRandom[chunks];
+            System.arraycopy(streams, 0, newStreams, 0, streams.length);
+            for (int c = streams.length ; c < chunks ; c++) {
+                newStreams[c] = random.substream(c);
+            }
+            streams = newStreams;
+        }
+
+        this.particles = particles;
+        this.next = next;
+        this.sums = sums;
+        this.Lx = Lx;
+        this.Ly = Ly;
+        this.noiseAmplitude = noiseAmplitude;
+        this.particleAt = particleAt;
+
+        next.copyStaticFrom(particles);
+
+        // each slot may need the noise of any particle, so all of them are drawn before updating any slot
+        if (pool == null || chunks <= 1) {
+            for (int c = 0 ; c < chunks ; c++) {
+                drawNoises(c);
+            }
+            for (int c = 0 ; c < chunks ; c++) {
+                updateChunk(c);
+            }
+        } else {
+            pool.invoke(new ChunksTask(true, 0, chunks));
+            pool.invoke(new ChunksTask(false, 0, chunks));
+        }
+
+        // do not keep the stores from being collected
+        this.particles = null;
+        this.next = null;
+        this.sums = null;
+        this.particleAt = null;
+    }
+
+    private void drawNoises(final int chunk) {
+        final int from = chunk * CHUNK_SIZE;
+        final int to = Math.min(particles.size(), from + CHUNK_SIZE);
+        streams[chunk].fillUniform(noises, from, to, -noiseAmplitude/2, noiseAmplitude/2);
+    }
+
+    private void updateChunk(final int chunk) {
+        final int from = chunk * CHUNK_SIZE;
+        final int to = Math.min(particles.size(), from + CHUNK_SIZE);
+        for (int i = from ; i < to ; i++) {
+            OffLattices.updatePosition(particles, next, i, sums.cos(i), sums.sin(i), Lx, Ly);
+            next.setOrientation(i, sums.average(i) + noises[particleAt == null ? i : particleAt[i]]);
+        }
+    }
+
+    private class ChunksTask extends RecursiveAction {
+        private final boolean noises;
+        private final int fromChunk;
+        private final int toChunk;
+
+        /**
+         * @param noises if the task draws the noises of its chunks of particles; otherwise, it updates its chunks
+         *               of slots
+         */
+        private ChunksTask(final boolean noises, final int fromChunk, final int toChunk) {
+            this.noises = noises;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (toChunk - fromChunk == 1) {
+                if (noises) {
+                    drawNoises(fromChunk);
+                } else {
+                    updateChunk(fromChunk);
+                }
+                return;
+            }
+
+            final int middle = (fromChunk + toChunk) >>> 1;
+            invokeAll(new ChunksTask(noises, fromChunk, middle), new ChunksTask(noises, middle, toChunk));
+        }
+    }
+}
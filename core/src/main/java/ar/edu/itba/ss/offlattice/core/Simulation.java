@@ -0,0 +1,169 @@
+package ar.edu.itba.ss.offlattice.core;
+
+import ar.edu.itba.ss.offlattice.interfaces.NeighbourSearch;
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
+import ar.edu.itba.ss.offlattice.services.MortonOrder;
+
+/**
+ * Long-lived off lattice automaton, which owns everything needed to run it step after step.
+ * <p>
+ * The particles' state is kept on two stores of the same size: on each {@link #step()}, the next state is
+ * written on the store that is not the current one, and then both stores are swapped. The neighbour search,
+ * the orientation sums and the updater keep their own arrays from step to step, so, once the first step is
+ * done, running a step on the calling thread does not allocate any memory.
+ * <p>
+ * Optionally, particles can be reordered every some steps, following a Z-order curve (see {@link MortonOrder}),
+ * so particles that are close on the square are close in memory too. Ids are kept with their particles, and
+ * {@link #slotOf(int)} keeps track of where each of the initial particles currently is. As the noise is drawn
+ * by initial particle (see {@link ParticleUpdater}), each particle gets the same noise whether particles are
+ * reordered or not.
+ * <p>
+ * Notice that an instance of this class must not be used by more than one thread at a time.
+ */
+public class Simulation {
+    private final NeighbourSearch neighbourSearch;
+    private final ParticleUpdater updater;
+    private final OrientationSums sums = new OrientationSums();
+    private final double Lx;
+    private final double Ly;
+    private final double noiseAmplitude;
+    private final int reorderInterval;
+    private final MortonOrder mortonOrder = new MortonOrder();
+
+    private ParticleStore current;
+    private ParticleStore next;
+    private long steps;
+
+    /* initial index of the particle at each slot, and the other way around */
+    private int[] particleAt;
+    private int[] auxParticleAt;
+    private final int[] slotOf;
+
+    /**
+     * Creates a simulation that never reorders its particles
+     * @see #Simulation(ParticleStore, NeighbourSearch, ParticleUpdater, double, double, int)
+     */
+    public Simulation(final ParticleStore initial, final NeighbourSearch neighbourSearch,
+                      final ParticleUpdater updater, final double L, final double noiseAmplitude) {
+        this(initial, neighbourSearch, updater, L, noiseAmplitude, 0);
+    }
+
+    /**
+     * @param initial initial state of the particles. It is copied, so it is not modified by the simulation.
+     * @param neighbourSearch search that gives each pair of neighbours, considering a periodic limit.
+     *                        It should not be shared with another simulation, as it may reuse work between steps.
+     * @param updater updater of the particles' positions and orientations
+     * @param L length of the side of the square containing all the particles
+     * @param noiseAmplitude amplitude of the noise applied to each new orientation
+     * @param reorderInterval amount of steps between each reordering of the particles; 0 to never reorder them.
+     *                        If positive, particles are also reordered before the first step.
+     *
+     * @throws IllegalArgumentException if reorderInterval < 0
+     */
+    public Simulation(final ParticleStore initial, final NeighbourSearch neighbourSearch,
+                      final ParticleUpdater updater, final double L, final double noiseAmplitude,
+                      final int reorderInterval) {
+        this(initial, neighbourSearch, updater, L, L, noiseAmplitude, reorderInterval);
+    }
+
+    /**
+     * Same as {@link #Simulation(ParticleStore, NeighbourSearch, ParticleUpdater, double, double, int)},
+     * but for a rectangle of Lx x Ly. The given neighbour search must have been created for that same rectangle.
+     * @param Lx length of the side of the rectangle containing all the particles, along the x axis
+     * @param Ly length of the side of the rectangle containing all the particles, along the y axis
+     *
+     * @throws IllegalArgumentException if reorderInterval < 0
+     */
+    public Simulation(final ParticleStore initial, final NeighbourSearch neighbourSearch,
+                      final ParticleUpdater updater, final double Lx, final double Ly, final double noiseAmplitude,
+                      final int reorderInterval) {
+        if (reorderInterval < 0) {
+            throw new IllegalArgumentException("Check that this is happening, but must not: reorderInterval < 0");
+        }
+        this.neighbourSearch = neighbourSearch;
+        this.updater = updater;
+        this.Lx = Lx;
+        this.Ly = Ly;
+        this.noiseAmplitude = noiseAmplitude;
+        this.reorderInterval = reorderInterval;
+
+        final int N = initial.size();
+        this.current = new ParticleStore(N);
+        this.next = new ParticleStore(N);
+        this.particleAt = new int[N];
+        this.auxParticleAt = new int[N];
+        this.slotOf = new int[N];
+        for (int i = 0 ; i < N ; i++) {
+            current.set(i, initial.id(i), initial.x(i), initial.y(i),
+                    initial.radio(i), initial.speed(i), initial.orientation(i));
+            particleAt[i] = i;
+            slotOf[i] = i;
+        }
+
+        if (reorderInterval > 0) {
+            reorder();
+        }
+    }
+
+    /**
+     * Runs one step of the automaton, leaving the new state at {@link #particles()}
+     */
+    public void step() {
+        OffLattices.run(current, next, sums, neighbourSearch, updater, Lx, Ly, noiseAmplitude, particleAt);
+        swap();
+        steps ++;
+
+        if (reorderInterval > 0 && steps % reorderInterval == 0) {
+            reorder();
+        }
+    }
+
+    /**
+     * @return current state of the particles. Notice that the returned store is reused by the simulation,
+     * so it is overwritten two steps later.
+     */
+    public ParticleStore particles() {
+        return current;
+    }
+
+    /**
+     * @param particle slot of a particle at the initial store
+     * @return slot of that same particle at {@link #particles()}
+     */
+    public int slotOf(final int particle) {
+        return slotOf[particle];
+    }
+
+    /**
+     * @return amount of steps run so far
+     */
+    public long steps() {
+        return steps;
+    }
+
+    private void reorder() {
+        final int[] order = mortonOrder.sort(current, Lx, Ly);
+        next.copyFrom(current, order);
+        swap();
+
+        final int N = current.size();
+        for (int k = 0 ; k < N ; k++) {
+            auxParticleAt[k] = particleAt[order[k]];
+        }
+        final int[] aux = particleAt;
+        particleAt = auxParticleAt;
+        auxParticleAt = aux;
+        for (int k = 0 ; k < N ; k++) {
+            slotOf[particleAt[k]] = k;
+        }
+
+        // slots changed, so whatever the search kept from previous steps is no longer valid
+        neighbourSearch.invalidate();
+    }
+
+    private void swap() {
+        final ParticleStore aux = current;
+        current = next;
+        next = aux;
+    }
+}
@@ -0,0 +1,122 @@
+package ar.edu.itba.ss.offlattice.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+public class AsciiNumbersTest {
+    private static final int RANDOM_VALUES = 500_000;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(AsciiNumbers.MAX_DOUBLE_LENGTH);
+
+    @Test
+    public void edgeDoublesTest() {
+        final double[] values = {
+                0.0, -0.0, 1.0, -1.0, 0.1, 0.5, 2.0, 10.0, 100.0, 123456.789,
+                Double.MIN_VALUE, -Double.MIN_VALUE, Double.MIN_NORMAL, Double.MAX_VALUE, -Double.MAX_VALUE,
+                Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                // limits between the plain and the scientific notation
+                1e-3, Math.nextDown(1e-3), Math.nextUp(1e-3), 1e7, Math.nextDown(1e7), Math.nextUp(1e7),
+                // limits of the doubles written with the shortest decimal
+                0x1p52, Math.nextDown(0x1p53), 0x1p53, Math.nextUp(0x1p53), 0x1p-80, Math.nextDown(0x1p-80),
+                Math.nextUp(0x1p-80), 2.0E-3, 4.9E-324, 1.0E23, 9.007199254740993E15,
+                // values that are usual on the output, e.g. sin and cos of some angles
+                Math.PI, Math.E, Math.sqrt(2), Math.cos(Math.PI / 3), Math.sin(Math.PI), 1.0 / 3, 2.0 / 3,
+        };
+        for (final double value : values) {
+            assertDouble(value);
+            assertDouble(-value);
+        }
+    }
+
+    @Test
+    public void powersOfTwoAndTenTest() {
+        for (int e = -1074 ; e <= 1023 ; e++) {
+            assertDouble(Math.scalb(1.0, e));
+            assertDouble(Math.nextUp(Math.scalb(1.0, e)));
+            assertDouble(Math.nextDown(Math.scalb(1.0, e)));
+        }
+        for (int e = -324 ; e <= 308 ; e++) {
+            final double value = Double.parseDouble("1e" + e);
+            assertDouble(value);
+            assertDouble(Math.nextUp(value));
+            assertDouble(Math.nextDown(value));
+        }
+    }
+
+    @Test
+    public void randomBitsDoublesTest() {
+        final Random random = new Random(1);
+        for (int k = 0 ; k < RANDOM_VALUES ; k++) {
+            assertDouble(Double.longBitsToDouble(random.nextLong()));
+        }
+    }
+
+    @Test
+    public void randomOutputLikeDoublesTest() {
+        // positions on a square, velocities and colors, which is what output.dat is made of
+        final Random random = new Random(2);
+        for (int k = 0 ; k < RANDOM_VALUES ; k++) {
+            final double angle = random.nextDouble() * 2 * Math.PI;
+            assertDouble(random.nextDouble() * 1000);
+            assertDouble(0.03 * Math.cos(angle));
+            assertDouble(Math.cos(angle) * Math.sin(angle));
+        }
+    }
+
+    @Test
+    public void integerDoublesTest() {
+        final Random random = new Random(3);
+        for (int k = 0 ; k < RANDOM_VALUES ; k++) {
+            assertDouble((double) (random.nextLong() >> random.nextInt(64)));
+        }
+    }
+
+    @Test
+    public void edgeLongsTest() {
+        final long[] values = {0, 1, -1, 9, 10, 11, 99, 100, Integer.MAX_VALUE, Integer.MIN_VALUE,
+                Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE - 1, Long.MIN_VALUE + 1};
+        for (final long value : values) {
+            assertLong(value);
+        }
+        long pow10 = 1;
+        for (int e = 0 ; e < 19 ; e++) {
+            assertLong(pow10 - 1);
+            assertLong(pow10);
+            assertLong(pow10 + 1);
+            assertLong(-pow10);
+            pow10 *= 10;
+        }
+    }
+
+    @Test
+    public void randomLongsTest() {
+        final Random random = new Random(4);
+        for (int k = 0 ; k < RANDOM_VALUES ; k++) {
+            assertLong(random.nextLong() >> random.nextInt(64));
+        }
+    }
+
+    private void assertDouble(final double value) {
+        buffer.clear();
+        AsciiNumbers.putDouble(buffer, value);
+        Assert.assertEquals("Bits: " + Long.toHexString(Double.doubleToRawLongBits(value)),
+                Double.toString(value), written());
+    }
+
+    private void assertLong(final long value) {
+        buffer.clear();
+        AsciiNumbers.putLong(buffer, value);
+        Assert.assertEquals(Long.toString(value), written());
+    }
+
+    private String written() {
+        buffer.flip();
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
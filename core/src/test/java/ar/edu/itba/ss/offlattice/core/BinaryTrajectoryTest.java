@@ -0,0 +1,187 @@
+package ar.edu.itba.ss.offlattice.core;
+
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static java.nio.file.StandardOpenOption.WRITE;
+
+public class BinaryTrajectoryTest {
+    private static final int N = 50;
+    private static final double LX = 20;
+    private static final double LY = 10;
+    private static final double SPEED = 0.03;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTripTest() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("output.bin");
+        final List<OutputPipeline.Frame> frames = write(file, 10, false);
+
+        Assert.assertTrue(BinaryTrajectoryReader.isBinaryTrajectory(file));
+        try (final BinaryTrajectoryReader reader = new BinaryTrajectoryReader(file)) {
+            assertHeader(reader, false);
+            assertFrames(frames, reader, false);
+        }
+    }
+
+    @Test
+    public void singlePrecisionRoundTripTest() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("output.bin");
+        final List<OutputPipeline.Frame> frames = write(file, 10, true);
+
+        Assert.assertEquals(BinaryTrajectoryWriter.FIXED_HEADER_SIZE + 8 * N
+                + 10 * BinaryTrajectoryWriter.recordSize(N, true) + 8 * 10 + 16, Files.size(file));
+        try (final BinaryTrajectoryReader reader = new BinaryTrajectoryReader(file)) {
+            assertHeader(reader, true);
+            assertFrames(frames, reader, true);
+        }
+    }
+
+    @Test
+    public void multipleSegmentsTest() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("output.bin");
+        final List<OutputPipeline.Frame> frames = write(file, 25, false);
+
+        // 3 records per segment, so frames are read from 9 segments, the last one not full
+        final int segmentSize = (int) (3 * BinaryTrajectoryWriter.recordSize(N, false) + 1);
+        try (final BinaryTrajectoryReader reader = new BinaryTrajectoryReader(file, segmentSize)) {
+            // backwards, so segments are not mapped on order
+            for (int frame = frames.size() - 1 ; frame >= 0 ; frame--) {
+                assertFrame(frames.get(frame), reader, frame, false);
+            }
+        }
+        // a segment smaller than a record still holds one
+        try (final BinaryTrajectoryReader reader = new BinaryTrajectoryReader(file, 1)) {
+            assertFrames(frames, reader, false);
+        }
+    }
+
+    @Test
+    public void withoutIndexTest() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("output.bin");
+        final List<OutputPipeline.Frame> frames = write(file, 6, false);
+
+        // as if the run had stopped while writing the 5th frame, before writing the index
+        final long headerSize = BinaryTrajectoryWriter.FIXED_HEADER_SIZE + 8 * N;
+        try (final FileChannel channel = FileChannel.open(file, WRITE)) {
+            channel.truncate(headerSize + 4 * BinaryTrajectoryWriter.recordSize(N, false) + 100);
+        }
+
+        try (final BinaryTrajectoryReader reader = new BinaryTrajectoryReader(file)) {
+            assertHeader(reader, false);
+            assertFrames(frames.subList(0, 4), reader, false);
+        }
+    }
+
+    @Test
+    public void withoutFramesTest() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("output.bin");
+        write(file, 0, false);
+
+        try (final BinaryTrajectoryReader reader = new BinaryTrajectoryReader(file)) {
+            assertHeader(reader, false);
+            Assert.assertEquals(0, reader.frames());
+        }
+    }
+
+    @Test
+    public void notABinaryTrajectoryTest() throws IOException {
+        final Path file = folder.newFile("output.dat").toPath();
+        Files.write(file, "0\n1\t0.5\t0.5\t0.0\t0.0\t1.0\t0.0\t0.0\n".getBytes());
+
+        Assert.assertFalse(BinaryTrajectoryReader.isBinaryTrajectory(file));
+        try {
+            new BinaryTrajectoryReader(file).close();
+            Assert.fail("A text file must not be read as a binary trajectory");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void frameOutOfBoundsTest() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("output.bin");
+        write(file, 2, false);
+
+        try (final BinaryTrajectoryReader reader = new BinaryTrajectoryReader(file)) {
+            reader.x(2, 0);
+        }
+    }
+
+    /**
+     * Writes the given amount of random frames to the given file
+     * @return written frames
+     */
+    private static List<OutputPipeline.Frame> write(final Path file, final int frames, final boolean singlePrecision)
+            throws IOException {
+        final Random random = new Random(frames);
+        final ParticleStore initial = new ParticleStore(N);
+        for (int i = 0 ; i < N ; i++) {
+            initial.set(i, i + 1, 0, 0, 0.1 * i, SPEED, 0);
+        }
+
+        final List<OutputPipeline.Frame> written = new ArrayList<>();
+        try (final BinaryTrajectoryWriter writer =
+                     new BinaryTrajectoryWriter(file, initial, LX, LY, SPEED, singlePrecision)) {
+            for (int k = 0 ; k < frames ; k++) {
+                final OutputPipeline.Frame frame = new OutputPipeline.Frame(N);
+                frame.iteration = 10 * k;
+                for (int i = 0 ; i < N ; i++) {
+                    frame.id[i] = N - i;
+                    frame.x[i] = random.nextDouble() * LX;
+                    frame.y[i] = random.nextDouble() * LY;
+                    frame.speed[i] = SPEED;
+                    frame.orientation[i] = random.nextDouble() * 2 * Math.PI;
+                }
+                writer.write(frame);
+                written.add(frame);
+            }
+        }
+        return written;
+    }
+
+    private static void assertHeader(final BinaryTrajectoryReader reader, final boolean singlePrecision) {
+        Assert.assertEquals(N, reader.N());
+        Assert.assertEquals(LX, reader.Lx(), 0);
+        Assert.assertEquals(LY, reader.Ly(), 0);
+        Assert.assertEquals(SPEED, reader.speed(), 0);
+        Assert.assertEquals(singlePrecision, reader.singlePrecision());
+        for (int i = 0 ; i < N ; i++) {
+            Assert.assertEquals(0.1 * i, reader.radio(i), 0);
+        }
+    }
+
+    private static void assertFrames(final List<OutputPipeline.Frame> frames, final BinaryTrajectoryReader reader,
+                                     final boolean singlePrecision) {
+        Assert.assertEquals(frames.size(), reader.frames());
+        for (int frame = 0 ; frame < frames.size() ; frame++) {
+            assertFrame(frames.get(frame), reader, frame, singlePrecision);
+        }
+    }
+
+    private static void assertFrame(final OutputPipeline.Frame expected, final BinaryTrajectoryReader reader,
+                                    final int frame, final boolean singlePrecision) {
+        Assert.assertEquals(expected.iteration, reader.iteration(frame));
+        for (int i = 0 ; i < N ; i++) {
+            Assert.assertEquals(expected.id[i], reader.id(frame, i));
+            // values are read back exactly as they were written, as doubles or as floats
+            Assert.assertEquals(singlePrecision ? (float) expected.x[i] : expected.x[i], reader.x(frame, i), 0);
+            Assert.assertEquals(singlePrecision ? (float) expected.y[i] : expected.y[i], reader.y(frame, i), 0);
+            Assert.assertEquals(singlePrecision ? (float) expected.orientation[i] : expected.orientation[i],
+                    reader.orientation(frame, i), 0);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package ar.edu.itba.ss.offlattice.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class FrameEncoderTest {
+
+    @Test
+    public void sameTextAsStringBuilderTest() {
+        // a few chunks, the last one not full
+        final int N = 2 * FrameEncoder.CHUNK_SIZE + 100;
+        final Random random = new Random(1);
+        final FrameEncoder encoder = new FrameEncoder(N, null);
+
+        // buffers are reused between frames
+        for (long iteration = 0 ; iteration < 3 ; iteration++) {
+            final OutputPipeline.Frame frame = randomFrame(N, iteration, random);
+            encoder.encode(frame);
+            Assert.assertEquals(stringBuilderText(frame), text(encoder.buffers()));
+            Assert.assertEquals(stringBuilderVa(frame), text(encoder.va()));
+        }
+    }
+
+    @Test
+    public void sameTextWithPoolTest() {
+        final int N = 5 * FrameEncoder.CHUNK_SIZE + 1;
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final FrameEncoder encoder = new FrameEncoder(N, pool);
+            final OutputPipeline.Frame frame = randomFrame(N, 7, new Random(2));
+            encoder.encode(frame);
+            Assert.assertEquals(stringBuilderText(frame), text(encoder.buffers()));
+            Assert.assertEquals(stringBuilderVa(frame), text(encoder.va()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void onlyVaTest() {
+        final int N = 1000;
+        final FrameEncoder encoder = new FrameEncoder(N, null);
+        final OutputPipeline.Frame frame = randomFrame(N, 0, new Random(3));
+        encoder.encodeVa(frame);
+        Assert.assertEquals(stringBuilderVa(frame), text(encoder.va()));
+    }
+
+    @Test
+    public void noParticlesTest() {
+        final FrameEncoder encoder = new FrameEncoder(0, null);
+        final OutputPipeline.Frame frame = randomFrame(0, 12, new Random(4));
+        encoder.encode(frame);
+        Assert.assertEquals("12\n", text(encoder.buffers()));
+        Assert.assertEquals("-1.0\n", text(encoder.va()));
+    }
+
+    private static OutputPipeline.Frame randomFrame(final int N, final long iteration, final Random random) {
+        final OutputPipeline.Frame frame = new OutputPipeline.Frame(N);
+        frame.iteration = iteration;
+        for (int i = 0 ; i < N ; i++) {
+            frame.id[i] = i + 1;
+            frame.x[i] = random.nextDouble() * 100;
+            frame.y[i] = random.nextDouble() * 100;
+            frame.speed[i] = 0.03;
+            frame.orientation[i] = random.nextDouble() * 2 * Math.PI;
+        }
+        // a few values written with Double.toString
+        if (N > 0) {
+            frame.x[0] = 0;
+            frame.orientation[0] = 0;
+            frame.y[N - 1] = 1e-5;
+        }
+        return frame;
+    }
+
+    /**
+     * @return the given frame's text, as output.dat was written with a StringBuilder
+     */
+    private static String stringBuilderText(final OutputPipeline.Frame frame) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(frame.iteration).append('\n');
+        double vx, vy;
+        for (int i = 0 ; i < frame.size ; i++) {
+            vx = frame.speed[i] * Math.cos(frame.orientation[i]);
+            vy = frame.speed[i] * Math.sin(frame.orientation[i]);
+            sb.append(frame.id[i]).append('\t')
+                    .append(frame.x[i]).append('\t').append(frame.y[i]).append('\t')
+                    .append(vx).append('\t').append(vy).append('\t')
+                    .append(Math.cos(frame.orientation[i])).append('\t')
+                    .append(Math.sin(frame.orientation[i])).append('\t')
+                    .append(Math.cos(frame.orientation[i]) * Math.sin(frame.orientation[i])).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the given frame's va line, as t_va.csv was written with a StringBuilder
+     */
+    private static String stringBuilderVa(final OutputPipeline.Frame frame) {
+        double vax = 0;
+        double vay = 0;
+        double v = 0;
+        for (int i = 0 ; i < frame.size ; i++) {
+            vax += frame.speed[i] * Math.cos(frame.orientation[i]);
+            vay += frame.speed[i] * Math.sin(frame.orientation[i]);
+            v += frame.speed[i];
+        }
+        return String.valueOf((1/v) * (Math.sqrt(Math.pow(vax,2) + Math.pow(vay,2)))) + '\n';
+    }
+
+    private static String text(final ByteBuffer... buffers) {
+        final StringBuilder sb = new StringBuilder();
+        for (final ByteBuffer buffer : buffers) {
+            final byte[] bytes = new byte[buffer.remaining()];
+            buffer.duplicate().get(bytes);
+            sb.append(new String(bytes, StandardCharsets.US_ASCII));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,86 @@
+package ar.edu.itba.ss.offlattice.core;
+
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
+import ar.edu.itba.ss.offlattice.services.CellIndexMethodImpl;
+import ar.edu.itba.ss.offlattice.services.SeededRandom;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class OffLatticesTest {
+    private static final double L = 10;
+    private static final int M = 5;
+    private static final double RC = 1;
+    private static final double RADIO = 0.2;
+    private static final double SPEED = 0.03;
+
+    @Test
+    public void fusedStepSameAsNeighboursAverageTest() {
+        final ParticleStore particles = new ParticleStore(200);
+        // pairs of neighbours across each border and across a corner, only seen with the periodic limit
+        final double[][] positions = {
+                { 0.2, 5 }, { 9.7, 5.3 },
+                { 3, 0.1 }, { 3.4, 9.6 },
+                { 0.1, 0.3 }, { 9.8, 9.9 }
+        };
+        final Random random = new Random(1);
+        for (int i = 0 ; i < particles.size() ; i++) {
+            final double x = i < positions.length ? positions[i][0] : random.nextDouble() * L;
+            final double y = i < positions.length ? positions[i][1] : random.nextDouble() * L;
+            particles.set(i, i + 1, x, y, RADIO, SPEED, random.nextDouble() * 2 * Math.PI);
+        }
+        final ParticleStore next = new ParticleStore(particles.size());
+
+        final CellIndexMethodImpl cellIndexMethod = new CellIndexMethodImpl();
+        OffLattices.run(particles, next, new OrientationSums(),
+                (p, consumer) -> cellIndexMethod.forEachPair(p, L, M, RC, true, consumer),
+                new ParticleUpdater(new SeededRandom(1)), L, 0);
+
+        for (int i = 0 ; i < particles.size() ; i++) {
+            final List<Integer> neighbours = neighboursOf(particles, i);
+            if (i < positions.length) {
+                Assert.assertTrue(neighbours.contains(i % 2 == 0 ? i + 1 : i - 1));
+            }
+
+            // the average over the particle itself and its neighbours
+            double sin = Math.sin(particles.orientation(i));
+            double cos = Math.cos(particles.orientation(i));
+            for (final int j : neighbours) {
+                sin += Math.sin(particles.orientation(j));
+                cos += Math.cos(particles.orientation(j));
+            }
+            final double orientation = Math.atan2(sin / (neighbours.size() + 1), cos / (neighbours.size() + 1));
+            Assert.assertEquals(orientation, next.orientation(i), 1e-12);
+
+            // each particle moves along its previous orientation
+            final double x = (particles.x(i) + Math.cos(particles.orientation(i)) * SPEED + L) % L;
+            final double y = (particles.y(i) + Math.sin(particles.orientation(i)) * SPEED + L) % L;
+            Assert.assertEquals(x, next.x(i), 1e-12);
+            Assert.assertEquals(y, next.y(i), 1e-12);
+        }
+    }
+
+    /**
+     * @return the slots of the particles at a distance lower or equal than rc of the given one, between their borders
+     * and with the nearest periodic image of each of them
+     */
+    private static List<Integer> neighboursOf(final ParticleStore particles, final int i) {
+        final List<Integer> neighbours = new ArrayList<>();
+        for (int j = 0 ; j < particles.size() ; j++) {
+            if (j == i) {
+                continue;
+            }
+            double dx = particles.x(j) - particles.x(i);
+            double dy = particles.y(j) - particles.y(i);
+            dx -= L * Math.rint(dx / L);
+            dy -= L * Math.rint(dy / L);
+            if (Math.sqrt(dx * dx + dy * dy) - particles.radio(i) - particles.radio(j) <= RC) {
+                neighbours.add(j);
+            }
+        }
+        return neighbours;
+    }
+}
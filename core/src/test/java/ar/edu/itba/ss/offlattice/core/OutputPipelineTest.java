@@ -0,0 +1,135 @@
+package ar.edu.itba.ss.offlattice.core;
+
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
+import ar.edu.itba.ss.offlattice.services.SeededRandom;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+public class OutputPipelineTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void framesAreWrittenOnOrderAsTheyWereTest() throws IOException {
+        final Simulation simulation = newSimulation(300, 0);
+        final Path output = folder.getRoot().toPath().resolve("output.dat");
+        final Path va = folder.getRoot().toPath().resolve("t_va.csv");
+
+        // a single slot, so each submit has to wait for the writer to give it back
+        final StringBuilder expectedOutput = new StringBuilder();
+        final StringBuilder expectedVa = new StringBuilder();
+        try (final OutputPipeline pipeline = new OutputPipeline(output, va, 300, 1)) {
+            for (long iteration = 0 ; iteration < 100 ; iteration++) {
+                pipeline.submit(simulation, iteration);
+                appendFrame(simulation, iteration, expectedOutput, expectedVa);
+                simulation.step();
+            }
+        }
+
+        Assert.assertEquals(expectedOutput.toString(), new String(Files.readAllBytes(output), StandardCharsets.US_ASCII));
+        Assert.assertEquals(expectedVa.toString(), new String(Files.readAllBytes(va), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void framesAreWrittenOnTheParticlesInitialOrderTest() throws IOException {
+        // particles are reordered on memory, but written as they were at first
+        final Simulation simulation = newSimulation(300, 2);
+        final Path output = folder.getRoot().toPath().resolve("output.dat");
+        final Path va = folder.getRoot().toPath().resolve("t_va.csv");
+
+        final StringBuilder expectedOutput = new StringBuilder();
+        final StringBuilder expectedVa = new StringBuilder();
+        try (final OutputPipeline pipeline = new OutputPipeline(output, va, 300, OutputPipeline.DEFAULT_CAPACITY)) {
+            for (long iteration = 0 ; iteration < 10 ; iteration++) {
+                pipeline.submit(simulation, iteration);
+                appendFrame(simulation, iteration, expectedOutput, expectedVa);
+                simulation.step();
+            }
+        }
+
+        Assert.assertEquals(expectedOutput.toString(), new String(Files.readAllBytes(output), StandardCharsets.US_ASCII));
+        Assert.assertEquals(expectedVa.toString(), new String(Files.readAllBytes(va), StandardCharsets.US_ASCII));
+    }
+
+    @Test(timeout = 10_000)
+    public void writerFailureIsReportedInsteadOfBlockingTest() throws IOException {
+        final Simulation simulation = newSimulation(10, 0);
+        // a trajectory of more particles than the frames have, so writing the first frame fails
+        final BinaryTrajectoryWriter trajectory = new BinaryTrajectoryWriter(folder.newFile("output.bin").toPath(),
+                randomParticles(11), 10, 10, 0.03, false);
+
+        final OutputPipeline pipeline = new OutputPipeline(trajectory, folder.newFile("t_va.csv").toPath(), 10, 1);
+        try {
+            for (long iteration = 0 ; iteration < 10 ; iteration++) {
+                pipeline.submit(simulation, iteration);
+            }
+            Assert.fail("Submit must fail once the writer failed");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getCause() instanceof IndexOutOfBoundsException);
+        }
+
+        try {
+            pipeline.close();
+            Assert.fail("Close must fail if the writer failed");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getCause() instanceof IndexOutOfBoundsException);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveCapacityTest() throws IOException {
+        new OutputPipeline(folder.getRoot().toPath().resolve("output.dat"),
+                folder.getRoot().toPath().resolve("t_va.csv"), 10, 0);
+    }
+
+    private static Simulation newSimulation(final int N, final int reorderInterval) {
+        // no neighbours, so only the noise changes the orientations
+        return new Simulation(randomParticles(N), (p, consumer) -> { },
+                new ParticleUpdater(new SeededRandom(1)), 10, 10, 0.5, reorderInterval);
+    }
+
+    private static ParticleStore randomParticles(final int N) {
+        final Random random = new Random(N);
+        final ParticleStore particles = new ParticleStore(N);
+        for (int i = 0 ; i < N ; i++) {
+            particles.set(i, i + 1, random.nextDouble() * 10, random.nextDouble() * 10, 0.1, 0.03,
+                    random.nextDouble() * 2 * Math.PI);
+        }
+        return particles;
+    }
+
+    /**
+     * Appends the given frame as output.dat and t_va.csv were written with a StringBuilder
+     */
+    private static void appendFrame(final Simulation simulation, final long iteration,
+                                    final StringBuilder output, final StringBuilder va) {
+        final ParticleStore particles = simulation.particles();
+        output.append(iteration).append('\n');
+        double vax = 0;
+        double vay = 0;
+        double v = 0;
+        for (int particle = 0 ; particle < particles.size() ; particle++) {
+            final int i = simulation.slotOf(particle);
+            final double vx = particles.speed(i) * Math.cos(particles.orientation(i));
+            final double vy = particles.speed(i) * Math.sin(particles.orientation(i));
+            vax += vx;
+            vay += vy;
+            v += particles.speed(i);
+            output.append(particles.id(i)).append('\t')
+                    .append(particles.x(i)).append('\t').append(particles.y(i)).append('\t')
+                    .append(vx).append('\t').append(vy).append('\t')
+                    .append(Math.cos(particles.orientation(i))).append('\t')
+                    .append(Math.sin(particles.orientation(i))).append('\t')
+                    .append(Math.cos(particles.orientation(i)) * Math.sin(particles.orientation(i))).append('\n');
+        }
+        va.append((1/v) * (Math.sqrt(Math.pow(vax,2) + Math.pow(vay,2)))).append('\n');
+    }
+}
@@ -0,0 +1,133 @@
+package ar.edu.itba.ss.offlattice.core;
+
+import ar.edu.itba.ss.offlattice.interfaces.NeighbourSearch;
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
+import ar.edu.itba.ss.offlattice.services.CellIndexMethodImpl;
+import ar.edu.itba.ss.offlattice.services.ParallelCellIndexMethodImpl;
+import ar.edu.itba.ss.offlattice.services.SeededRandom;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class SimulationTest {
+    private static final double L = 100;
+    private static final double RC = 1;
+    private static final int M = (int) (L / RC);
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void sameSeedGivesSameStoresWithAndWithoutPoolTest() {
+        // more than one chunk of particles, so chunks are updated on different threads
+        final ParticleStore initial = randomParticles(3 * ParticleUpdater.CHUNK_SIZE - 100, new Random(1));
+
+        for (final int threads : new int[] {2, 4}) {
+            final ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                final CellIndexMethodImpl cim = new CellIndexMethodImpl();
+                final Simulation sequential = new Simulation(initial,
+                        (p, consumer) -> cim.forEachPair(p, L, M, RC, true, consumer),
+                        new ParticleUpdater(new SeededRandom(7)), L, 0.5);
+
+                final CellIndexMethodImpl parallelCim = new ParallelCellIndexMethodImpl(pool);
+                final Simulation parallel = new Simulation(initial,
+                        (p, consumer) -> parallelCim.forEachPair(p, L, M, RC, true, consumer),
+                        new ParticleUpdater(new SeededRandom(7), pool), L, 0.5);
+
+                for (int step = 0 ; step < 10 ; step++) {
+                    sequential.step();
+                    parallel.step();
+                    assertSameStores(sequential.particles(), parallel.particles());
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void differentSeedsGiveDifferentStoresTest() {
+        final ParticleStore initial = randomParticles(1000, new Random(1));
+        final CellIndexMethodImpl cim = new CellIndexMethodImpl();
+        final NeighbourSearch search = (p, consumer) -> cim.forEachPair(p, L, M, RC, true, consumer);
+
+        final Simulation s1 = new Simulation(initial, search, new ParticleUpdater(new SeededRandom(7)), L, 0.5);
+        final Simulation s2 = new Simulation(initial, search, new ParticleUpdater(new SeededRandom(8)), L, 0.5);
+        s1.step();
+        s2.step();
+
+        Assert.assertNotEquals(s1.particles().orientation(0), s2.particles().orientation(0), 0);
+    }
+
+    @Test
+    public void reorderingKeepsTheOutputTest() throws IOException {
+        // more than one chunk of particles, so reordered particles go to slots of other chunks
+        final ParticleStore initial = randomParticles(ParticleUpdater.CHUNK_SIZE + 500, new Random(2));
+        final List<String> plain = outputOf(initial, 0);
+        final List<String> reordered = outputOf(initial, 3);
+
+        // neighbours' orientations are summed on another order, so values may only differ on their last digits
+        Assert.assertEquals(plain.size(), reordered.size());
+        for (int line = 0 ; line < plain.size() ; line++) {
+            final String[] expected = plain.get(line).split("\t");
+            final String[] actual = reordered.get(line).split("\t");
+            Assert.assertEquals(expected.length, actual.length);
+            // iteration or id
+            Assert.assertEquals(expected[0], actual[0]);
+            for (int k = 1 ; k < expected.length ; k++) {
+                Assert.assertEquals(Double.parseDouble(expected[k]), Double.parseDouble(actual[k]), 1e-9);
+            }
+        }
+    }
+
+    private static ParticleStore randomParticles(final int N, final Random random) {
+        final ParticleStore particles = new ParticleStore(N);
+        for (int i = 0 ; i < N ; i++) {
+            particles.set(i, i + 1, random.nextDouble() * L, random.nextDouble() * L, 0, 0.03,
+                    random.nextDouble() * 2 * Math.PI);
+        }
+        return particles;
+    }
+
+    private static void assertSameStores(final ParticleStore expected, final ParticleStore actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0 ; i < expected.size() ; i++) {
+            Assert.assertEquals(expected.id(i), actual.id(i));
+            // bit-for-bit, not just close
+            Assert.assertEquals(Double.doubleToLongBits(expected.x(i)), Double.doubleToLongBits(actual.x(i)));
+            Assert.assertEquals(Double.doubleToLongBits(expected.y(i)), Double.doubleToLongBits(actual.y(i)));
+            Assert.assertEquals(Double.doubleToLongBits(expected.orientation(i)),
+                    Double.doubleToLongBits(actual.orientation(i)));
+        }
+    }
+
+    /**
+     * @return lines of the output.dat of a run of 10 steps, with noise, from the given particles
+     */
+    private List<String> outputOf(final ParticleStore initial, final int reorderInterval) throws IOException {
+        final CellIndexMethodImpl cim = new CellIndexMethodImpl();
+        final Simulation simulation = new Simulation(initial,
+                (p, consumer) -> cim.forEachPair(p, L, M, RC, true, consumer),
+                new ParticleUpdater(new SeededRandom(7)), L, 0.5, reorderInterval);
+
+        final Path output = folder.newFile().toPath();
+        try (final OutputPipeline pipeline = new OutputPipeline(output, folder.newFile().toPath(),
+                initial.size(), OutputPipeline.DEFAULT_CAPACITY)) {
+            for (long iteration = 0 ; iteration <= 10 ; iteration++) {
+                pipeline.submit(simulation, iteration);
+                simulation.step();
+            }
+        }
+        return Files.readAllLines(output, StandardCharsets.US_ASCII);
+    }
+}
@@ -1,6 +1,7 @@
 package ar.edu.itba.ss.offlattice.interfaces;
 
 
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
 import ar.edu.itba.ss.offlattice.models.Point;
 
 import java.util.Map;
@@ -33,4 +34,72 @@ public interface CellIndexMethod {
 	 * @throws IllegalArgumentException if M <= 0 or rc < 0 or L <= 0
 	 */
 	Map<Point, Set<Point>> run(Set<Point> points, double L, int M, double rc, boolean periodicLimit);
+	
+	/**
+	 * Same as {@link #run(Set, double, int, double, boolean)}, but working directly over the slots of the given store.
+	 * <p>
+	 * The neighbours of each slot are saved, as slot indexes, on the given graph, which is reset before being filled.
+	 * <p>
+	 * Notice that, as long as the condition L/M > rc + r1 + r2 is met, each neighbour is saved only once.
+	 *
+	 * @param particles store containing the particles for the algorithm
+	 * @param L length of the side of the square containing all the particles. Must be positive.
+	 * @param M number of cells on which the side of the square will be divided. Must be positive.
+	 * @param rc max distance to consider that two particles collide. Must be non negative.
+	 * @param periodicLimit if the end of a limit cell should be consider as it were from the opposite side
+	 * @param neighbours graph where the neighbours of each slot will be saved
+	 *
+	 * @throws IllegalArgumentException if M <= 0 or rc < 0 or L <= 0
+	 */
+	void run(ParticleStore particles, double L, int M, double rc, boolean periodicLimit, NeighbourGraph neighbours);
+	
+	/**
+	 * Runs the same search as {@link #run(ParticleStore, double, int, double, boolean, NeighbourGraph)}, but instead
+	 * of saving the neighbours of each slot, the given consumer is called once for each pair of colliding particles.
+	 * <p>
+	 * Useful when there is no need to keep the neighbours, but only to do something with each of them.
+	 *
+	 * @param particles store containing the particles for the algorithm
+	 * @param L length of the side of the square containing all the particles. Must be positive.
+	 * @param M number of cells on which the side of the square will be divided. Must be positive.
+	 * @param rc max distance to consider that two particles collide. Must be non negative.
+	 * @param periodicLimit if the end of a limit cell should be consider as it were from the opposite side
+	 * @param consumer action to be done for each pair of colliding particles
+	 *
+	 * @throws IllegalArgumentException if M <= 0 or rc < 0 or L <= 0
+	 */
+	void forEachPair(ParticleStore particles, double L, int M, double rc, boolean periodicLimit, PairConsumer consumer);
+	
+	/**
+	 * Same as {@link #forEachPair(ParticleStore, double, int, double, boolean, PairConsumer)}, but for particles
+	 * contained on a rectangle with sides of length Lx and Ly ( 0 <= x < Lx && 0 <= y < Ly ), divided in
+	 * Mx columns and My rows.
+	 * <p>
+	 * The condition Lx/Mx > rc + r1 + r2 and Ly/My > rc + r1 + r2 must be met for every pair of particles,
+	 * and, when a periodic limit is being considered, each axis wraps on its own.
+	 *
+	 * @param particles store containing the particles for the algorithm
+	 * @param Lx length of the side of the rectangle along the x axis. Must be positive.
+	 * @param Ly length of the side of the rectangle along the y axis. Must be positive.
+	 * @param Mx number of cells on which the x side of the rectangle will be divided. Must be positive.
+	 * @param My number of cells on which the y side of the rectangle will be divided. Must be positive.
+	 * @param rc max distance to consider that two particles collide. Must be non negative.
+	 * @param periodicLimit if the end of a limit cell should be consider as it were from the opposite side
+	 * @param consumer action to be done for each pair of colliding particles
+	 *
+	 * @throws IllegalArgumentException if Mx <= 0 or My <= 0 or rc < 0 or Lx <= 0 or Ly <= 0
+	 */
+	void forEachPair(ParticleStore particles, double Lx, double Ly, int Mx, int My, double rc, boolean periodicLimit,
+	                 PairConsumer consumer);
+
+	/**
+	 * Amount of cells in which the interaction range is split, on each axis. A method with a subdivision of k
+	 * requires the condition L/M > (rc + r1 + r2) / k instead of L/M > rc + r1 + r2, so, for it,
+	 * M should be chosen as floor(k * L / (rc + r1 + r2)).
+	 *
+	 * @return the amount of cells in which the interaction range is split; 1 if cells cover the whole range
+	 */
+	default int subdivision() {
+		return 1;
+	}
 }
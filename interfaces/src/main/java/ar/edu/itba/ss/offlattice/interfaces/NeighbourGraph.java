@@ -0,0 +1,105 @@
+package ar.edu.itba.ss.offlattice.interfaces;
+
+/**
+ * Neighbours of each slot of a {@link ar.edu.itba.ss.offlattice.models.ParticleStore}, saved as a
+ * compressed sparse row (CSR) adjacency.
+ * <p>
+ * The neighbours of slot i are saved, as slot indexes, at {@code neighbours[offsets[i]]} ..
+ * {@code neighbours[offsets[i+1] - 1]}, so the whole graph is kept on two int arrays, without creating
+ * a collection per slot.
+ * <p>
+ * The graph is filled in two passes over the same pairs: first each pair is counted with
+ * {@link #countPair(int, int)}, then {@link #allocate()} is called and finally each pair is saved with
+ * {@link #addPair(int, int)}. Arrays are kept between fills and only grow when needed.
+ */
+public class NeighbourGraph {
+	private int[] offsets = new int[1];
+	private int[] cursors = new int[0];
+	private int[] neighbours = new int[0];
+	private int size;
+
+	/**
+	 * Empties the graph and makes sure there is room for the given amount of slots
+	 * @param size amount of slots
+	 */
+	public void reset(final int size) {
+		if (offsets.length < size + 1) {
+			offsets = new int[size + 1];
+			cursors = new int[size];
+		} else {
+			for (int i = 0 ; i <= size ; i++) {
+				offsets[i] = 0;
+			}
+		}
+		this.size = size;
+	}
+
+	/**
+	 * First pass: counts the pair (i, j), so there is room for j as a neighbour of i and vice versa
+	 */
+	public void countPair(final int i, final int j) {
+		offsets[i + 1] ++;
+		offsets[j + 1] ++;
+	}
+
+	/**
+	 * Turns the counts into offsets and makes sure there is room for all the counted neighbours.
+	 * Must be called between the two passes.
+	 */
+	public void allocate() {
+		for (int i = 0 ; i < size ; i++) {
+			offsets[i + 1] += offsets[i];
+			cursors[i] = offsets[i];
+		}
+		if (neighbours.length < offsets[size]) {
+			neighbours = new int[offsets[size]];
+		}
+	}
+
+	/**
+	 * Second pass: saves j as a neighbour of i and i as a neighbour of j.
+	 * Each pair must have been counted before with {@link #countPair(int, int)}.
+	 */
+	public void addPair(final int i, final int j) {
+		neighbours[cursors[i]++] = j;
+		neighbours[cursors[j]++] = i;
+	}
+
+	/**
+	 * @return amount of slots
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param i slot index
+	 * @return amount of neighbours of the given slot
+	 */
+	public int count(final int i) {
+		return offsets[i + 1] - offsets[i];
+	}
+
+	/**
+	 * @param i slot index
+	 * @param k neighbour index, between 0 and count(i) - 1
+	 * @return slot index of the k-th neighbour of i
+	 */
+	public int get(final int i, final int k) {
+		return neighbours[offsets[i] + k];
+	}
+
+	/**
+	 * @return the offsets' array; only the first size + 1 positions are valid
+	 */
+	public int[] offsets() {
+		return offsets;
+	}
+
+	/**
+	 * @return the neighbours' array; only the first offsets[size] positions are valid
+	 */
+	public int[] neighbours() {
+		return neighbours;
+	}
+}
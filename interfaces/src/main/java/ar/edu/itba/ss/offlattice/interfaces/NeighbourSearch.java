@@ -0,0 +1,29 @@
+package ar.edu.itba.ss.offlattice.interfaces;
+
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
+
+/**
+ * A neighbour search already configured for a given system (side length, interaction radius and limit
+ * condition), which is run once per simulation step over the same particles.
+ * <p>
+ * Implementations may keep state between calls, so as to reuse work from previous steps.
+ */
+@FunctionalInterface
+public interface NeighbourSearch {
+
+	/**
+	 * Calls the given consumer once for each pair of colliding particles of the given store.
+	 *
+	 * @param particles store containing the particles; it must have the same particles (on any order
+	 *                  of their attributes' updates) each time this method is called
+	 * @param consumer action to be done for each pair of colliding particles
+	 */
+	void forEachPair(ParticleStore particles, PairConsumer consumer);
+
+	/**
+	 * Notifies that the particles were moved to different slots of the store, so any state kept from
+	 * previous calls must be discarded. Does nothing by default.
+	 */
+	default void invalidate() {
+	}
+}
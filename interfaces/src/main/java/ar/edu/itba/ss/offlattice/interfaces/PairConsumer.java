@@ -0,0 +1,21 @@
+package ar.edu.itba.ss.offlattice.interfaces;
+
+/**
+ * Action to be done for each pair of colliding particles found by a neighbour search.
+ * <p>
+ * Particles are referred by their slots at the {@link ar.edu.itba.ss.offlattice.models.ParticleStore}
+ * being searched, so no object is created per pair.
+ */
+@FunctionalInterface
+public interface PairConsumer {
+
+	/**
+	 * Each colliding pair is given only once, with i != j; it is up to the consumer to handle both sides of it.
+	 *
+	 * @param i slot of one of the particles
+	 * @param j slot of the other particle
+	 * @param squaredDistance squared distance between both particles' centers, considering the periodic
+	 *                        image of j that collides with i when a periodic limit is being considered
+	 */
+	void accept(int i, int j, double squaredDistance);
+}
@@ -0,0 +1,158 @@
+package ar.edu.itba.ss.offlattice.models;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Structure-of-arrays storage for the particles of a simulation.
+ * <p>
+ * Each particle lives at a slot (an index between 0 and size - 1) and each of its attributes is kept
+ * on a parallel primitive array, so the simulation loop can read and update particles without creating
+ * a new {@link Point} per particle on each step.
+ * <p>
+ * {@link Point} and {@code Set<Point>} are only meant to be used to import and export particles,
+ * through {@link #fromPoints(Collection)} and {@link #toPoints()}.
+ */
+public class ParticleStore {
+	private final long[] ids;
+	private final double[] x;
+	private final double[] y;
+	private final double[] radio;
+	private final double[] speed;
+	private final double[] orientation;
+
+	/**
+	 * Creates a store with the given amount of slots, all of them with every attribute set to 0
+	 * @param size amount of particles to be stored. Must be non negative.
+	 *
+	 * @throws NegativeArraySizeException if size < 0
+	 */
+	public ParticleStore(final int size) {
+		this.ids = new long[size];
+		this.x = new double[size];
+		this.y = new double[size];
+		this.radio = new double[size];
+		this.speed = new double[size];
+		this.orientation = new double[size];
+	}
+
+	/**
+	 * Creates a store containing all the given points, in the order the collection iterates them
+	 * @param points points to be stored
+	 * @return a new store with one slot per point
+	 */
+	public static ParticleStore fromPoints(final Collection<Point> points) {
+		final ParticleStore store = new ParticleStore(points.size());
+		int i = 0;
+		for (final Point p : points) {
+			store.set(i++, p.id(), p.x(), p.y(), p.radio(), p.speed(), p.orientation());
+		}
+		return store;
+	}
+
+	/**
+	 * @return a set with one point per slot, keeping the slots' order on iteration
+	 */
+	public Set<Point> toPoints() {
+		final Set<Point> points = new LinkedHashSet<>(size());
+		for (int i = 0 ; i < size() ; i++) {
+			points.add(toPoint(i));
+		}
+		return points;
+	}
+
+	/**
+	 * @param i slot index
+	 * @return a new point with the information of the given slot
+	 */
+	public Point toPoint(final int i) {
+		return Point.builder(x[i], y[i])
+						.id(ids[i])
+						.radio(radio[i])
+						.speed(speed[i])
+						.orientation(orientation[i])
+						.build();
+	}
+
+	public int size() {
+		return ids.length;
+	}
+
+	/**
+	 * Sets all the attributes of the given slot
+	 *
+	 * @throws IndexOutOfBoundsException if i < 0 or i >= size
+	 */
+	public void set(final int i, final long id, final double x, final double y,
+	                final double radio, final double speed, final double orientation) {
+		this.ids[i] = id;
+		this.x[i] = x;
+		this.y[i] = y;
+		this.radio[i] = radio;
+		this.speed[i] = speed;
+		this.orientation[i] = orientation;
+	}
+
+	public void setPosition(final int i, final double x, final double y) {
+		this.x[i] = x;
+		this.y[i] = y;
+	}
+
+	public void setOrientation(final int i, final double orientation) {
+		this.orientation[i] = orientation;
+	}
+
+	/**
+	 * Copies the id, radio and speed of every slot of the given store into this one.
+	 * Useful when a store is used as the next state of another one, as those attributes do not change.
+	 * @param other store with the same size as this one
+	 *
+	 * @throws IndexOutOfBoundsException if other's size is greater than this store's size
+	 */
+	public void copyStaticFrom(final ParticleStore other) {
+		System.arraycopy(other.ids, 0, ids, 0, other.size());
+		System.arraycopy(other.radio, 0, radio, 0, other.size());
+		System.arraycopy(other.speed, 0, speed, 0, other.size());
+	}
+
+	/**
+	 * Copies every slot of the given store into this one, reordering them: slot k of this store gets
+	 * the particle at slot order[k] of the other store.
+	 * @param other store with the same size as this one
+	 * @param order slots of the other store, on the order they should be copied
+	 *
+	 * @throws IndexOutOfBoundsException if other's size or order's length are greater than this store's size
+	 */
+	public void copyFrom(final ParticleStore other, final int[] order) {
+		int j;
+		for (int k = 0 ; k < other.size() ; k++) {
+			j = order[k];
+			set(k, other.ids[j], other.x[j], other.y[j], other.radio[j], other.speed[j], other.orientation[j]);
+		}
+	}
+
+	public long id(final int i) {
+		return ids[i];
+	}
+
+	public double x(final int i) {
+		return x[i];
+	}
+
+	public double y(final int i) {
+		return y[i];
+	}
+
+	public double radio(final int i) {
+		return radio[i];
+	}
+
+	public double speed(final int i) {
+		return speed[i];
+	}
+
+	public double orientation(final int i) {
+		return orientation[i];
+	}
+}
@@ -3,6 +3,8 @@ package ar.edu.itba.ss.offlattice.models;
 import org.immutables.builder.Builder;
 import org.immutables.value.Value;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 @Value.Immutable
 @Value.Style(
 				typeAbstract = "*Abs",
@@ -11,11 +13,12 @@ import org.immutables.value.Value;
 )
 public abstract class PointAbs {
 	
-	private static long idGen = 1;
+	/* points may be built from different threads */
+	private static final AtomicLong idGen = new AtomicLong(1);
 	
 	@Value.Default
 	public long id() {
-		return idGen ++;
+		return idGen.getAndIncrement();
 	}
 	
 	@Builder.Parameter
@@ -77,6 +80,6 @@ public abstract class PointAbs {
 	
 	/* for testing purposes only */
 	public static void resetIdGen() {
-		idGen = 0;
+		idGen.set(0);
 	}
 }
@@ -0,0 +1,80 @@
+package ar.edu.itba.ss.offlattice.models;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+public class ParticleStoreTest {
+
+	/* ids are always given so as not to move PointAbs' id generator */
+
+	@Test
+	public void fromPointsKeepsOrderAndAttributesTest() {
+		final Point p1 = Point.builder(1, 2).id(10).radio(0.5).speed(0.03).orientation(1).build();
+		final Point p2 = Point.builder(3, 4).id(20).radio(0.25).speed(0.03).orientation(2).build();
+
+		final ParticleStore store = ParticleStore.fromPoints(Arrays.asList(p1, p2));
+
+		Assert.assertEquals(2, store.size());
+		Assert.assertEquals(10, store.id(0));
+		Assert.assertEquals(20, store.id(1));
+		Assert.assertEquals(3, store.x(1), 0);
+		Assert.assertEquals(4, store.y(1), 0);
+		Assert.assertEquals(0.25, store.radio(1), 0);
+		Assert.assertEquals(0.03, store.speed(1), 0);
+		Assert.assertEquals(2, store.orientation(1), 0);
+	}
+
+	@Test
+	public void toPointsTest() {
+		final List<Point> points = Arrays.asList(
+						Point.builder(1, 2).id(10).radio(0.5).speed(0.03).orientation(1).build(),
+						Point.builder(3, 4).id(20).radio(0.25).speed(0.03).orientation(2).build());
+
+		final Set<Point> exported = ParticleStore.fromPoints(points).toPoints();
+
+		Assert.assertEquals(points, Arrays.asList(exported.toArray()));
+		final Point p2 = exported.stream().filter(p -> p.id() == 20).findFirst().orElseThrow(AssertionError::new);
+		Assert.assertEquals(3, p2.x(), 0);
+		Assert.assertEquals(2, p2.orientation(), 0);
+	}
+
+	@Test
+	public void copyStaticFromTest() {
+		final ParticleStore store = new ParticleStore(1);
+		store.set(0, 7, 1, 2, 0.5, 0.03, 1);
+
+		final ParticleStore next = new ParticleStore(1);
+		next.copyStaticFrom(store);
+		next.setPosition(0, 5, 6);
+
+		Assert.assertEquals(7, next.id(0));
+		Assert.assertEquals(0.5, next.radio(0), 0);
+		Assert.assertEquals(0.03, next.speed(0), 0);
+		Assert.assertEquals(5, next.x(0), 0);
+		Assert.assertEquals(6, next.y(0), 0);
+		Assert.assertEquals(0, next.orientation(0), 0);
+	}
+
+	@Test
+	public void copyFromWithOrderTest() {
+		final ParticleStore store = new ParticleStore(3);
+		store.set(0, 7, 1, 2, 0.5, 0.03, 1);
+		store.set(1, 8, 3, 4, 0.25, 0.03, 2);
+		store.set(2, 9, 5, 6, 0.1, 0.03, 3);
+
+		final ParticleStore reordered = new ParticleStore(3);
+		reordered.copyFrom(store, new int[] {2, 0, 1});
+
+		Assert.assertEquals(9, reordered.id(0));
+		Assert.assertEquals(7, reordered.id(1));
+		Assert.assertEquals(8, reordered.id(2));
+		Assert.assertEquals(5, reordered.x(0), 0);
+		Assert.assertEquals(2, reordered.y(1), 0);
+		Assert.assertEquals(0.25, reordered.radio(2), 0);
+		Assert.assertEquals(3, reordered.orientation(0), 0);
+	}
+}
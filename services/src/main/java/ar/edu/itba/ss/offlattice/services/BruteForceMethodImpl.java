@@ -0,0 +1,202 @@
+package ar.edu.itba.ss.offlattice.services;
+
+import ar.edu.itba.ss.offlattice.interfaces.BruteForceMethod;
+import ar.edu.itba.ss.offlattice.interfaces.PairConsumer;
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
+import ar.edu.itba.ss.offlattice.models.Point;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Brute force method, that checks every pair of particles.
+ * <p>
+ * It runs in O(N^2), but it has no grid to set up, so it is the fastest one for systems with a few particles.
+ * When a periodic limit is being considered, distances are measured with the minimum image convention, so
+ * there is no condition to be met for it to find every pair; this makes it the reference to test other
+ * methods against.
+ * <p>
+ * Slots are split on tiles of consecutive slots, and pairs are checked tile against tile, so the particles of
+ * both tiles stay on cache while they are compared. Given a pool, each row of tiles (a tile against itself and
+ * every tile after it) is checked by a different task, saving its colliding pairs on its own {@link PairBuffer};
+ * once all tasks are done, the buffers are replayed row by row. Because of this, the consumer is always called
+ * from the calling thread and with exactly the same pairs, on exactly the same order, with or without a pool.
+ * <p>
+ * Notice that an instance of this class must not be used by more than one thread at a time.
+ */
+public class BruteForceMethodImpl implements BruteForceMethod {
+	/**
+	 * Amount of slots of each tile; the positions and radios of two tiles take 12KB
+	 */
+	static final int TILE = 512;
+
+	/**
+	 * Min amount of particles to split the work between the threads of the pool
+	 */
+	private static final int PARALLEL_MIN_N = 2 * TILE;
+
+	private final ForkJoinPool pool;
+	private PairBuffer[] rowPairs = new PairBuffer[0];
+
+	/**
+	 * Creates a brute force method that runs on the calling thread
+	 */
+	public BruteForceMethodImpl() {
+		this(null);
+	}
+
+	/**
+	 * @param pool pool where the rows of tiles will be checked; null to check them on the calling thread
+	 */
+	public BruteForceMethodImpl(final ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	@Override
+	public Map<Point, Set<Point>> run(final Set<Point> points, final double L, final double rc,
+	                                  final boolean periodicLimit) {
+		return CellIndexMethods.collisionsOf(points,
+						(particles, consumer) -> forEachPair(particles, L, L, rc, periodicLimit, consumer));
+	}
+
+	/**
+	 * Calls the given consumer once for each pair of colliding particles, checking every pair of them.
+	 *
+	 * @param particles store containing the particles for the algorithm
+	 * @param Lx length of the side of the rectangle along the x axis. Must be positive.
+	 * @param Ly length of the side of the rectangle along the y axis. Must be positive.
+	 * @param rc max distance to consider that two particles collide. Must be non negative.
+	 * @param periodicLimit if the end of the rectangle should be consider as it were its opposite side
+	 * @param consumer action to be done for each pair of colliding particles
+	 *
+	 * @throws IllegalArgumentException if rc < 0 or Lx <= 0 or Ly <= 0
+	 */
+	public void forEachPair(final ParticleStore particles, final double Lx, final double Ly, final double rc,
+	                        final boolean periodicLimit, final PairConsumer consumer) {
+		if (rc < 0 || Lx <= 0 || Ly <= 0) {
+			throw new IllegalArgumentException("Check that this is happening, but must not: rc < 0 or Lx <= 0 or Ly <= 0");
+		}
+
+		final int N = particles.size();
+		final int tiles = (N + TILE - 1) / TILE;
+
+		if (pool == null || N < PARALLEL_MIN_N) {
+			for (int row = 0 ; row < tiles ; row++) {
+				checkRow(particles, Lx, Ly, rc, periodicLimit, row, tiles, consumer);
+			}
+			return;
+		}
+
+		if (rowPairs.length < tiles) {
+			final PairBuffer[] newRowPairs = new PairBuffer[tiles];
+			System.arraycopy(rowPairs, 0, newRowPairs, 0, rowPairs.length);
+			for (int row = rowPairs.length ; row < tiles ; row++) {
+				newRowPairs[row] = new PairBuffer();
+			}
+			rowPairs = newRowPairs;
+		}
+
+		// check every row of tiles, each one saving its pairs on its own buffer
+		pool.invoke(new RowsTask(particles, Lx, Ly, rc, periodicLimit, tiles, 0, tiles));
+
+		// give the pairs to the consumer, on the same order as the sequential check
+		for (int row = 0 ; row < tiles ; row++) {
+			rowPairs[row].replay(consumer);
+		}
+	}
+
+	/**
+	 * Checks the pairs between the given tile and itself, and between it and each of the tiles after it
+	 */
+	private static void checkRow(final ParticleStore particles, final double Lx, final double Ly, final double rc,
+	                             final boolean periodicLimit, final int row, final int tiles,
+	                             final PairConsumer consumer) {
+		final int N = particles.size();
+		final int start = row * TILE;
+		final int end = Math.min(N, start + TILE);
+		for (int column = row ; column < tiles ; column++) {
+			final int oStart = column * TILE;
+			final int oEnd = Math.min(N, oStart + TILE);
+			checkTiles(particles, start, end, oStart, oEnd, Lx, Ly, rc, periodicLimit, consumer);
+		}
+	}
+
+	/**
+	 * Checks each pair (i, j), with i between start (inclusive) and end (exclusive), and j between
+	 * max(oStart, i + 1) (inclusive) and oEnd (exclusive)
+	 */
+	private static void checkTiles(final ParticleStore particles, final int start, final int end,
+	                               final int oStart, final int oEnd, final double Lx, final double Ly, final double rc,
+	                               final boolean periodicLimit, final PairConsumer consumer) {
+		final double halfLx = Lx / 2;
+		final double halfLy = Ly / 2;
+		double xi, yi, reach, dx, dy, squaredDistance, threshold;
+		for (int i = start ; i < end ; i++) {
+			xi = particles.x(i);
+			yi = particles.y(i);
+			reach = rc + particles.radio(i);
+			for (int j = Math.max(oStart, i + 1) ; j < oEnd ; j++) {
+				dx = particles.x(j) - xi;
+				dy = particles.y(j) - yi;
+				if (periodicLimit) {
+					// both particles are inside the rectangle, so one side's length is enough to get the nearest image
+					if (dx > halfLx) {
+						dx -= Lx;
+					} else if (dx < -halfLx) {
+						dx += Lx;
+					}
+					if (dy > halfLy) {
+						dy -= Ly;
+					} else if (dy < -halfLy) {
+						dy += Ly;
+					}
+				}
+				squaredDistance = dx * dx + dy * dy;
+				threshold = reach + particles.radio(j);
+				if (squaredDistance <= threshold * threshold) {
+					consumer.accept(i, j, squaredDistance);
+				}
+			}
+		}
+	}
+
+	private class RowsTask extends RecursiveAction {
+		private final ParticleStore particles;
+		private final double Lx;
+		private final double Ly;
+		private final double rc;
+		private final boolean periodicLimit;
+		private final int tiles;
+		private final int fromRow;
+		private final int toRow;
+
+		private RowsTask(final ParticleStore particles, final double Lx, final double Ly, final double rc,
+		                 final boolean periodicLimit, final int tiles, final int fromRow, final int toRow) {
+			this.particles = particles;
+			this.Lx = Lx;
+			this.Ly = Ly;
+			this.rc = rc;
+			this.periodicLimit = periodicLimit;
+			this.tiles = tiles;
+			this.fromRow = fromRow;
+			this.toRow = toRow;
+		}
+
+		@Override
+		protected void compute() {
+			if (toRow - fromRow == 1) {
+				final PairBuffer pairs = rowPairs[fromRow];
+				pairs.clear();
+				checkRow(particles, Lx, Ly, rc, periodicLimit, fromRow, tiles, pairs);
+				return;
+			}
+
+			// first rows have more tiles to check, so rows are split as work is stolen
+			final int middle = (fromRow + toRow) >>> 1;
+			invokeAll(new RowsTask(particles, Lx, Ly, rc, periodicLimit, tiles, fromRow, middle),
+							new RowsTask(particles, Lx, Ly, rc, periodicLimit, tiles, middle, toRow));
+		}
+	}
+}
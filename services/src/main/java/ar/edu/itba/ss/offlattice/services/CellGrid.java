@@ -0,0 +1,357 @@
+package ar.edu.itba.ss.offlattice.services;
+
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
+
+/**
+ * Mx x My cell grid where the slots of a {@link ParticleStore} are binned by cell using a counting sort.
+ * The grid covers a Lx x Ly rectangle, with Mx columns and My rows, so cells need not be squares.
+ * <p>
+ * Cells are identified by {@code cell = row * Mx + col}. The slots of the particles inside a cell are saved
+ * contiguously at {@code sorted[cellStart[cell]]} .. {@code sorted[cellStart[cell + 1] - 1]}, so no object
+ * is created per cell and an empty cell is just one with {@code cellStart[cell] == cellStart[cell + 1]}.
+ * <p>
+ * The position and radio of each binned particle are also copied on that same order, so the particles of
+ * a cell can be swept over contiguous arrays instead of jumping between the store's slots.
+ * <p>
+ * Arrays are kept between calls to {@link #bin(ParticleStore, double, double, int, int)} and only grow when needed,
+ * so re-binning the same amount of particles on the same grid does not allocate any memory.
+ * <p>
+ * When the same particles are re-binned on the same grid, as it happens between the steps of a simulation,
+ * the grid is not rebuilt: only the particles that changed their cell are moved. Moving a particle from one cell
+ * to another costs as many cell ids as there are between both, so the cost of keeping the cells up to date depends
+ * on how many particles crossed a cell border, and how far their cells are, instead of on N and Mx * My. When that
+ * cost would be higher than rebuilding the grid (e.g., particles going to the next row on a grid with a lot of
+ * columns, or wrapping across the periodic top and bottom borders), the grid is rebuilt instead.
+ * Notice that, because of this, the order of the particles inside a cell depends on the previous bins.
+ */
+class CellGrid {
+	/**
+	 * Max amount of cell ids that particles may go through when moved, as a fraction of N + Mx * My
+	 * (i.e., of the cost of rebuilding the grid), to update the grid instead of rebuilding it
+	 */
+	private static final double MAX_SHIFTED_FRACTION = 0.25;
+
+	private double Lx = Double.NaN;
+	private double Ly = Double.NaN;
+	private int Mx;
+	private int My;
+	private int N = -1;
+	private long[] binnedIds = new long[0];
+	private int[] newCellOf = new int[0];
+	private int[] positionOf = new int[0];
+	private int[] cellStart = new int[1];
+	private int[] cellOf = new int[0];
+	private int[] sorted = new int[0];
+	private double[] sortedX = new double[0];
+	private double[] sortedY = new double[0];
+	private double[] sortedRadio = new double[0];
+
+	/**
+	 * Bins all the particles of the given store on a M x M grid over a L x L square
+	 * @see #bin(ParticleStore, double, double, int, int)
+	 */
+	void bin(final ParticleStore particles, final double L, final int M) {
+		bin(particles, L, L, M, M);
+	}
+
+	/**
+	 * Bins all the particles of the given store. Runs in O(N + Mx * My).
+	 * <p>
+	 * See {@link #cellOf(double, double, int, int, double, double)} for a detailed explanation of how cells
+	 * are calculated.
+	 *
+	 * @param particles particles to be binned
+	 * @param Lx length of the side of the rectangle containing all the particles, along the x axis
+	 * @param Ly length of the side of the rectangle containing all the particles, along the y axis
+	 * @param Mx number of cells on which the x side of the rectangle will be divided (i.e., columns)
+	 * @param My number of cells on which the y side of the rectangle will be divided (i.e., rows)
+	 *
+	 * @throws IndexOutOfBoundsException if a particle is not inside the rectangle
+	 * ( x < 0 || x >= Lx || y < 0 || y >= Ly )
+	 */
+	void bin(final ParticleStore particles, final double Lx, final double Ly, final int Mx, final int My) {
+		if (Lx == this.Lx && Ly == this.Ly && Mx == this.Mx && My == this.My && particles.size() == this.N
+						&& update(particles)) {
+			return;
+		}
+
+		final int N = particles.size();
+		final int nCells = Mx * My;
+		this.Lx = Lx;
+		this.Ly = Ly;
+		this.Mx = Mx;
+		this.My = My;
+		this.N = N;
+
+		if (cellStart.length < nCells + 1) {
+			cellStart = new int[nCells + 1];
+		} else {
+			for (int cell = 0 ; cell <= nCells ; cell++) {
+				cellStart[cell] = 0;
+			}
+		}
+		if (cellOf.length < N) {
+			cellOf = new int[N];
+			newCellOf = new int[N];
+			positionOf = new int[N];
+			binnedIds = new long[N];
+			sorted = new int[N];
+			sortedX = new double[N];
+			sortedY = new double[N];
+			sortedRadio = new double[N];
+		}
+
+		// count how many particles each cell has, saving the counts shifted by one
+		final double kx = Lx / Mx;
+		final double ky = Ly / My;
+		for (int i = 0 ; i < N ; i++) {
+			final int cell = cellOf(kx, ky, Mx, My, particles.x(i), particles.y(i));
+			cellOf[i] = cell;
+			cellStart[cell + 1] ++;
+		}
+
+		// accumulate the counts, so each cell knows where it starts
+		for (int cell = 0 ; cell < nCells ; cell++) {
+			cellStart[cell + 1] += cellStart[cell];
+		}
+
+		// place each slot at its cell range; cellStart[cell] is used as a cursor and restored afterwards
+		for (int i = 0 ; i < N ; i++) {
+			final int s = cellStart[cellOf[i]]++;
+			sorted[s] = i;
+			positionOf[i] = s;
+			sortedX[s] = particles.x(i);
+			sortedY[s] = particles.y(i);
+			sortedRadio[s] = particles.radio(i);
+		}
+		for (int cell = nCells ; cell > 0 ; cell--) {
+			cellStart[cell] = cellStart[cell - 1];
+		}
+		cellStart[0] = 0;
+
+		for (int i = 0 ; i < N ; i++) {
+			binnedIds[i] = particles.id(i);
+		}
+	}
+
+	/**
+	 * Updates the grid, which was binned with the same sides, cells and amount of particles, moving only the particles
+	 * that changed their cell.
+	 *
+	 * @return true if the grid was updated; false if it must be rebuilt, because the particles at the slots are
+	 * not the binned ones, or because moving the ones that changed their cell would cost too much
+	 *
+	 * @throws IndexOutOfBoundsException if a particle is not inside the rectangle
+	 * ( x < 0 || x >= Lx || y < 0 || y >= Ly )
+	 */
+	private boolean update(final ParticleStore particles) {
+		final double kx = Lx / Mx;
+		final double ky = Ly / My;
+		final long maxShifted = (long) ((N + (long) Mx * My) * MAX_SHIFTED_FRACTION);
+		long shifted = 0;
+		for (int i = 0 ; i < N ; i++) {
+			if (particles.id(i) != binnedIds[i]) {
+				return false;
+			}
+			newCellOf[i] = cellOf(kx, ky, Mx, My, particles.x(i), particles.y(i));
+			// see move(int, int, int)
+			shifted += Math.abs(newCellOf[i] - cellOf[i]);
+			if (shifted > maxShifted) {
+				return false;
+			}
+		}
+
+		if (shifted > 0) {
+			for (int i = 0 ; i < N ; i++) {
+				if (newCellOf[i] != cellOf[i]) {
+					move(i, cellOf[i], newCellOf[i]);
+					cellOf[i] = newCellOf[i];
+				}
+			}
+		}
+
+		// positions change on every step, even when cells do not
+		int i;
+		for (int s = 0 ; s < N ; s++) {
+			i = sorted[s];
+			sortedX[s] = particles.x(i);
+			sortedY[s] = particles.y(i);
+		}
+		return true;
+	}
+
+	/**
+	 * Moves the particle at the given slot from one cell to the other.
+	 * <p>
+	 * The particle is swapped to the border of its range, and the border between both cells is moved one cell
+	 * at a time, swapping the particle to the opposite border of each cell it goes through. This way, only
+	 * O(|to - from|) positions of the sorted arrays are touched.
+	 */
+	private void move(final int i, final int from, final int to) {
+		if (from < to) {
+			// take it to the end of its cell, and then leave it at the start of the next one, until reaching the other cell
+			for (int cell = from ; cell < to ; cell++) {
+				swap(positionOf[i], cellStart[cell + 1] - 1);
+				cellStart[cell + 1] --;
+			}
+		} else {
+			// take it to the start of its cell, and then leave it at the end of the previous one, until reaching the other cell
+			for (int cell = from ; cell > to ; cell--) {
+				swap(positionOf[i], cellStart[cell]);
+				cellStart[cell] ++;
+			}
+		}
+	}
+
+	private void swap(final int s1, final int s2) {
+		final int i1 = sorted[s1];
+		final int i2 = sorted[s2];
+		sorted[s1] = i2;
+		sorted[s2] = i1;
+		positionOf[i2] = s1;
+		positionOf[i1] = s2;
+
+		final double radio = sortedRadio[s1];
+		sortedRadio[s1] = sortedRadio[s2];
+		sortedRadio[s2] = radio;
+	}
+
+	/**
+	 * @return the cell containing the point (x, y), for a grid of M x M cells with sides of length k
+	 *
+	 * @throws IndexOutOfBoundsException if the point is outside of the grid
+	 */
+	static int cellOf(final double k, final int M, final double x, final double y) {
+		return cellOf(k, k, M, M, x, y);
+	}
+
+	/**
+	 * @return the cell containing the point (x, y), for a grid of Mx columns and My rows, whose cells have
+	 * sides of length kx along the x axis and ky along the y axis
+	 *
+	 * @throws IndexOutOfBoundsException if the point is outside of the grid
+	 */
+	static int cellOf(final double kx, final double ky, final int Mx, final int My, final double x, final double y) {
+		/*
+				Each point has an x & y component.
+				To get at which cell of the matrix the point belongs, here it is the idea of what's done.
+				Consider the case of a column:
+				* check which is the number t that makes t*k <= point.x() < (t+1)*k
+				* if t is an integer, the column taken is t-1 (unless t = 0), as it would be the case that the point is
+						at a cell boundary, and it can be classified in any of those.
+				* if t is not an integer, the floor of t is taken as the column number
+				
+				The same goes for the row.
+				
+				Notes:
+					* For translating points to the correct matrix index, the following formula is used:
+							column = ( nCells - 1 ) - t
+							
+							The problem is "drawn" following, with nCell = 5 for this example
+							
+								(x,y) plain with t
+								indexes as they are got
+							
+							y
+							|
+							4
+							3
+							2
+							1
+							0 1 2 3 4 --> x
+							
+								matrix with
+								translated t indexes
+								0 1 2 3 4
+							0
+							1
+							2
+							3
+							4
+							
+							Notice that the second form is the one needed to work with the matrix,
+							so as to be able to make a more efficient process
+							
+					* rows are calculated with point.y() and cols with point.x()
+					(see previous graphics for a better understanding).
+		 */
+		
+		final int row = (My - 1) - (int) Math.floor(y / ky);
+		final int col = (int) Math.floor(x / kx);
+		if (row < 0 || row >= My || col < 0 || col >= Mx) {
+			throw new IndexOutOfBoundsException("Point (" + x + ", " + y + ") is out of the grid");
+		}
+		return row * Mx + col;
+	}
+
+	/**
+	 * @return number of columns of the grid (Mx)
+	 */
+	int columns() {
+		return Mx;
+	}
+
+	/**
+	 * @return number of rows of the grid (My)
+	 */
+	int rows() {
+		return My;
+	}
+
+	int cellCount() {
+		return Mx * My;
+	}
+
+	/**
+	 * @return index at {@link #sorted()} of the first slot of the given cell
+	 */
+	int start(final int cell) {
+		return cellStart[cell];
+	}
+
+	/**
+	 * @return index at {@link #sorted()} after the last slot of the given cell
+	 */
+	int end(final int cell) {
+		return cellStart[cell + 1];
+	}
+
+	boolean isEmpty(final int cell) {
+		return cellStart[cell] == cellStart[cell + 1];
+	}
+
+	/**
+	 * @return slots of all the binned particles, sorted by cell
+	 */
+	int[] sorted() {
+		return sorted;
+	}
+
+	/**
+	 * @return x of all the binned particles, on the same order as {@link #sorted()}
+	 */
+	double[] sortedX() {
+		return sortedX;
+	}
+
+	/**
+	 * @return y of all the binned particles, on the same order as {@link #sorted()}
+	 */
+	double[] sortedY() {
+		return sortedY;
+	}
+
+	/**
+	 * @return radio of all the binned particles, on the same order as {@link #sorted()}
+	 */
+	double[] sortedRadio() {
+		return sortedRadio;
+	}
+
+	/**
+	 * @return cell of the particle at the given slot, as it was when binned
+	 */
+	int cellOfSlot(final int i) {
+		return cellOf[i];
+	}
+}
@@ -1,6 +1,9 @@
 package ar.edu.itba.ss.offlattice.services;
 
 import ar.edu.itba.ss.offlattice.interfaces.CellIndexMethod;
+import ar.edu.itba.ss.offlattice.interfaces.NeighbourGraph;
+import ar.edu.itba.ss.offlattice.interfaces.PairConsumer;
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
 import ar.edu.itba.ss.offlattice.models.Point;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,23 +15,65 @@ public class CellIndexMethodImpl implements CellIndexMethod {
 	private static final Logger LOGGER = LoggerFactory.getLogger(CellIndexMethodImpl.class);
 	
 	/**
-	 * On the run method, given a cell (row, col), it is necessary to compare with itself
-	 * and to go up, up-right, right and down-right. This is:
-	 *    itself = row, col
-	 *    up = row-1, col
-	 *    up-right = row-1, col+1
-	 *    right = row, col+1
-	 *    down-right = row+1, col+1
+	 * Grid where particles are binned on each run; kept so as to reuse its arrays between runs.
+	 * Notice that, because of this, an instance of this class must not be used by more than one thread at a time.
 	 */
-	private final static int[][] neighbourDirections = new int[][] {
-					{0, 0}, // itself
-					{-1, 0}, // up
-					{-1, +1}, // up-right
-					{0, +1}, // right
-					{+1, +1} // down-right
-	};
-	private static final int ROW = 0;
-	private static final int COL = 1;
+	final CellGrid grid = new CellGrid();
+	
+	/**
+	 * Stencil of the grid, kept between runs so as to only build it when the grid changes.
+	 */
+	final CellStencil stencil = new CellStencil();
+	
+	/**
+	 * Grid used instead of the dense one when most of its cells would be empty (see {@link #isSparse(int, int, int)}).
+	 */
+	final SparseCellGrid sparseGrid = new SparseCellGrid();
+	
+	/**
+	 * Min amount of cells per particle to use the sparse grid
+	 */
+	private static final int SPARSE_CELLS_PER_PARTICLE = 16;
+	
+	/**
+	 * Colliding pairs found on the last run. Kept between runs, as the grid, so as to reuse its arrays.
+	 */
+	private final PairBuffer pairs = new PairBuffer();
+	
+	/**
+	 * Amount of cells needed to cover the interaction range, on each axis
+	 */
+	private final int subdivision;
+	
+	/**
+	 * Creates a cell index method whose cells' side is expected to be greater than the interaction range
+	 */
+	public CellIndexMethodImpl() {
+		this(1);
+	}
+	
+	/**
+	 * Creates a cell index method whose cells' side is expected to be greater than 1/subdivision of the
+	 * interaction range, i.e., L/M > (rc + r1 + r2) / subdivision. The half-shell stencil is generated to cover
+	 * subdivision cells on each direction, pruning the cells that can not hold a pair of neighbours.
+	 * <p>
+	 * Smaller cells hold less particles that are out of range, so, on dense systems, less distances are calculated
+	 * (the greater subdivision, the less wasted distances, but the more cells to visit).
+	 * @param subdivision amount of cells needed to cover the interaction range, on each axis. Must be positive.
+	 *
+	 * @throws IllegalArgumentException if subdivision <= 0
+	 */
+	public CellIndexMethodImpl(final int subdivision) {
+		if (subdivision <= 0) {
+			throw new IllegalArgumentException("Check that this is happening, but must not: subdivision <= 0");
+		}
+		this.subdivision = subdivision;
+	}
+	
+	@Override
+	public int subdivision() {
+		return subdivision;
+	}
 	
 	@Override
 	public Map<Point, Set<Point>> run(final Set<Point> points,
@@ -36,321 +81,285 @@ public class CellIndexMethodImpl implements CellIndexMethod {
 	                                        final int M,
 	                                        final double rc,
 	                                        final boolean periodicLimit) {
-		// check M conditions
-		
-		if (M <= 0 || rc < 0 || L <= 0) {
-			throw new IllegalArgumentException("Check that this is happening, but must not: M <= 0 or rc < 0 or L <= 0");
-		}
-		
-		// create the square cell matrix
-		final SquareMatrix cellMatrix = new SquareMatrix(M);
+		return CellIndexMethods.collisionsOf(points,
+						(particles, consumer) -> forEachPair(particles, L, M, rc, periodicLimit, consumer));
+	}
+	
+	@Override
+	public void run(final ParticleStore particles,
+	                final double L,
+	                final int M,
+	                final double rc,
+	                final boolean periodicLimit,
+	                final NeighbourGraph neighbours) {
+		// run the cell index method itself, saving every colliding pair
+		pairs.clear();
+		forEachPair(particles, L, M, rc, periodicLimit, pairs);
 		
-		final Map<Point, Set<Point>> collisionPerPoint = new HashMap<>(points.size());
-		final Set<Cell> nonEmptyCells = new HashSet<>();
+		CellIndexMethods.fillGraph(particles.size(), pairs, neighbours);
+	}
+	
+	@Override
+	public void forEachPair(final ParticleStore particles,
+	                        final double L,
+	                        final int M,
+	                        final double rc,
+	                        final boolean periodicLimit,
+	                        final PairConsumer consumer) {
+		forEachPair(particles, L, L, M, M, rc, periodicLimit, consumer);
+	}
+	
+	@Override
+	public void forEachPair(final ParticleStore particles,
+	                        final double Lx,
+	                        final double Ly,
+	                        final int Mx,
+	                        final int My,
+	                        final double rc,
+	                        final boolean periodicLimit,
+	                        final PairConsumer consumer) {
+		checkArguments(Lx, Ly, Mx, My, rc, periodicLimit);
 		
-		for (Point point : points) {
-			// add the point to the map to be returned, with a new empty set
-			collisionPerPoint.put(point, new HashSet<>());
-			
-			// put each point on the corresponding cell of the cell's matrix
-			// save the cell as a non empty one, to analyse it later
-			nonEmptyCells.add(saveToMatrix(L, M, point, cellMatrix));
+		if (isSparse(particles.size(), Mx, My)) {
+			// only the occupied cells are saved, so memory does not depend on Mx * My
+			sparseGrid.bin(particles, Lx, Ly, Mx, My);
+			updateStencil(particles, Lx, Ly, Mx, My, rc, periodicLimit);
+			sweepSparse(rc, consumer);
+			return;
 		}
 		
+		// put each particle on the corresponding cell of the grid
+		prepare(particles, Lx, Ly, Mx, My, rc, periodicLimit);
+		
 		// run the cell index method itself
-		run(L, nonEmptyCells, cellMatrix, rc, periodicLimit, collisionPerPoint);
+		sweep(rc, 0, My, consumer);
+	}
+	
+	void checkArguments(final double Lx, final double Ly, final int Mx, final int My, final double rc,
+	                    final boolean periodicLimit) {
+		// check M conditions
 		
-		// return the created map with each point information
-		return collisionPerPoint;
+		if (Mx <= 0 || My <= 0 || rc < 0 || Lx <= 0 || Ly <= 0) {
+			throw new IllegalArgumentException("Check that this is happening, but must not: " +
+							"Mx <= 0 or My <= 0 or rc < 0 or Lx <= 0 or Ly <= 0");
+		}
+		if ((long) Mx * My > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Check that this is happening, but must not: Mx * My > Integer.MAX_VALUE");
+		}
+		// otherwise, the directions of the stencil along that axis would wrap to the cell itself, which would then
+		// be taken as the same cell, giving its pairs once per direction and missing the ones across the border
+		if (periodicLimit && (Mx < 2 || My < 2)) {
+			throw new IllegalArgumentException("Check that this is happening, but must not: " +
+							"periodicLimit and Mx or My < 2");
+		}
+		// otherwise, the stencil would wrap over the same cells more than once
+		if (subdivision > 1 && periodicLimit && (Mx < 2 * subdivision + 1 || My < 2 * subdivision + 1)) {
+			throw new IllegalArgumentException("Check that this is happening, but must not: " +
+							"periodicLimit and Mx or My < 2 * subdivision + 1");
+		}
 	}
 	
-	private void run(final double L, final Set<Cell> nonEmptyCells, final SquareMatrix cellMatrix, final double rc,
-	                 final boolean periodicLimit, final Map<Point, Set<Point>> collisionPerPoint) {
+	/**
+	 * @return true if a grid of Mx x My cells would be mostly empty with N particles, and so the sparse grid
+	 * should be used instead of the dense one
+	 */
+	static boolean isSparse(final int N, final int Mx, final int My) {
+		return (long) Mx * My > (long) SPARSE_CELLS_PER_PARTICLE * N;
+	}
+	
+	/**
+	 * Bins the given particles on the grid, and builds its stencil if the grid changed
+	 */
+	void prepare(final ParticleStore particles, final double Lx, final double Ly, final int Mx, final int My,
+	             final double rc, final boolean periodicLimit) {
+		grid.bin(particles, Lx, Ly, Mx, My);
+		updateStencil(particles, Lx, Ly, Mx, My, rc, periodicLimit);
+	}
+	
+	private void updateStencil(final ParticleStore particles, final double Lx, final double Ly,
+	                           final int Mx, final int My, final double rc, final boolean periodicLimit) {
+		if (subdivision == 1) {
+			// with cells of side greater than the reach, no cell of the stencil can be pruned
+			stencil.update(Lx, Ly, Mx, My, periodicLimit);
+			return;
+		}
+		double r1 = 0, r2 = 0; // r1 >= r2
+		for (int i = 0 ; i < particles.size() ; i++) {
+			if (particles.radio(i) > r1) {
+				r2 = r1;
+				r1 = particles.radio(i);
+			} else if (particles.radio(i) > r2) {
+				r2 = particles.radio(i);
+			}
+		}
+		stencil.update(Lx, Ly, Mx, My, periodicLimit, subdivision, rc + r1 + r2);
+	}
+	
+	/**
+	 * Runs the cell index method over the cells of the rows between fromRow (inclusive) and toRow (exclusive),
+	 * on the same order as they are saved at the grid. The grid must have been prepared with
+	 * {@link #prepare(ParticleStore, double, double, int, int, double, boolean)}.
+	 * <p>
+	 * This method only reads the grid and its stencil, so several sweeps over disjoint rows may be run at the same time,
+	 * as long as each of them is given a different consumer.
+	 */
+	void sweep(final double rc, final int fromRow, final int toRow, final PairConsumer consumer) {
 		/*
 			Takes one cell at a time and applies the patter saw in class to take advantage of the symmetry of the
 			 method. Let's explain it a little bit.
 			
-			Given a cell (row, col), it is necessary to go up, up-right, right and down-right. This is:
-			* up = row-1, col
-			* up-right = row-1, col+1
-			* right = row, col+1
-			* down-right = row+1, col+1
-			 
-			Periodic Limit Cases
-			
-			if periodic limit is false
-				if row-1 < 0 || row+1 = M || col+1 = M => do not consider that cell, with M = matrix.dimension()
-			
-			if periodic limit is true
-				if row-1 < 0 => use M-1 and points inside this cell should be applied an y offset of -L
-				if row+1 = M => use 0 and points inside this cell should be applied an y offset of + L
-				if col+1 = M => use 0 and points inside this cell should be applied an x offset of + L
-				
-				, with M = matrix.dimension()
-				
+			Given a cell (row, col), it is necessary to go up, up-right, right and down-right (or, with subdivided
+			cells, to every cell up of it and to its right that may hold a neighbour).
+			Those cells, already wrapped when considering a periodic limit, and the offsets to be applied to their
+			particles are taken from the stencil (see CellStencil for a detailed explanation of the border cases).
 		 */
 		
-		final int M = cellMatrix.dimension();
-		nonEmptyCells.forEach(cCell -> {
-			boolean virtualPointNeeded;
-			double xOffset, yOffset;
-			int row, col, oRow, oCol;
-			Cell oCell;
-			for (final int[] neighbourDirection : neighbourDirections) { // travel getting different neighbours
-				virtualPointNeeded = false;
-				xOffset = 0;
-				yOffset = 0;
-				
-				// get current cell's row & col
-				row = cCell.row;
-				col = cCell.col;
-				
-				// get the other cell's row & col
-				oRow = row + neighbourDirection[ROW];
-				oCol = col + neighbourDirection[COL];
+		final int Mx = grid.columns();
+		final int directions = stencil.directions();
+		final int[] sorted = grid.sorted();
+		final double[] x = grid.sortedX();
+		final double[] y = grid.sortedY();
+		final double[] radio = grid.sortedRadio();
+		int cCell, rowStart, oCol, oCell;
+		for (int row = fromRow ; row < toRow ; row++) {
+			for (int col = 0 ; col < Mx ; col++) {
+				cCell = row * Mx + col;
+				if (grid.isEmpty(cCell)) {
+					continue; // so as not to create overhead; if empty => no necessary to process
+				}
 				
-				// adapt to periodicLimit condition
-				if (!periodicLimit) {
-					if (oRow < 0 || oRow == M || oCol == M) {
-						continue; // do not consider this cell, because it does not exists
-					}
-				} else {
-					// oRow condition
-					if (oRow < 0) {
-						oRow = M - 1;
-						virtualPointNeeded = true;
-						yOffset = L;
-					} else if (oRow == M) {
-						oRow = 0;
-						virtualPointNeeded = true;
-						yOffset = -L;
-					}
+				for (int direction = 0 ; direction < directions ; direction++) {
+					rowStart = stencil.otherRowStart(row, direction);
+					oCol = stencil.otherCol(col, direction);
 					
-					// oCol condition
-					if (oCol == M) {
-						oCol = 0;
-						virtualPointNeeded = true;
-						xOffset = L;
+					if (rowStart == CellStencil.NONE || oCol == CellStencil.NONE) {
+						continue; // do not consider this cell, because it does not exists
 					}
-				}
+					oCell = rowStart + oCol;
 				
-				oCell = cellMatrix.get(oRow, oCol);
-				
-				// checks if it is the same cell
-				if (cCell.equals(oCell)) {
-					// if so, check collisions only on the current cell, using an improvement of the brute force method
-					checkCollisions(cCell, rc, collisionPerPoint);
-				} else if (nonEmptyCells.contains(oCell)) {
-					// so as not to create overhead; if empty => no necessary to process
-					
-					// if !empty => check the distance between each pair of points on the current pair of cells,
-					// and add the necessary mappings, if two points collide
-					checkCollisions(cCell, oCell, rc, collisionPerPoint, virtualPointNeeded, xOffset, yOffset);
+					// checks if it is the same cell
+					if (cCell == oCell) {
+						// if so, check collisions only on the current cell, using an improvement of the brute force method
+						checkCollisions(sorted, x, y, radio, grid.start(cCell), grid.end(cCell), rc, consumer);
+					} else if (!grid.isEmpty(oCell)) {
+						// if !empty => check the distance between each pair of points on the current pair of cells,
+						// and add the necessary mappings, if two points collide
+						checkCollisions(sorted, x, y, radio, grid.start(cCell), grid.end(cCell),
+										grid.start(oCell), grid.end(oCell), rc,
+										stencil.xOffset(col, direction), stencil.yOffset(row, direction), consumer);
+					}
 				}
 			}
-		});
-	}
-	
-	private void checkCollisions(final Cell cCell, final double rc, final Map<Point, Set<Point>> collisionPerPoint) {
-		Point[] points = new Point[cCell.points.size()];
-		points = cCell.points.toArray(points);
-		Point pi, pj;
-		for (int i = 0 ; i < points.length ; i++) {
-			pi = points[i];
-			for (int j = i+1 ; j < points.length ; j++) {
-				pj = points[j];
-				CellIndexMethods.checkCollision(pi,pj,rc, collisionPerPoint);
-			}
 		}
 	}
 	
 	/**
-	 * Check, for each pair of points on each cell (c = current, o = other), if they are colliding, i.e.,
-	 * if the distance between them is lower or equal to rc, considering their radios too.
-	 * <p>
-	 * If so, each of them are added to the other's collision set at the given map.
+	 * Runs the cell index method over the occupied cells of the sparse grid, on the same order as
+	 * {@link #sweep(double, int, int, PairConsumer)} does over the dense one.
 	 * <p>
-	 * Notice that if a virtual point is needed, virtualPointNeeded should be true, and xOffset and yOffset
-	 * should have the corresponding values to be applied to all the points of the oCell.
-	 * A virtual point should be needed when a border case is reached and a periodic limit is being considered.
-	 * @param cCell current cell being analysed
-	 * @param oCell other cell whose points will be compared to the cCell's points
-	 * @param rc max distance to consider that two points are colliding
-	 * @param collisionPerPoint map containing all the points and a set with the already found colliding points, for each
-	 * @param virtualPointNeeded whether a virtual point is needed or not
-	 * @param xOffset x offset to be applied to all the oCell's points when creating the new virtual point
-	 * @param yOffset y offset to be applied to all the oCell's points when creating the new virtual point
+	 * The stencil only keeps each row's and column's wrapped steps, so it does not depend on Mx * My either,
+	 * and each of the cells to compare with is looked up at the grid's table.
 	 */
-	private void checkCollisions(final Cell cCell, final Cell oCell, final double rc,
-	                 final Map<Point, Set<Point>> collisionPerPoint,
-	                             final boolean virtualPointNeeded,
-	                             final double xOffset, final double yOffset) {
-		cCell.points.forEach(cPoint -> oCell.points.forEach(oPoint -> {
-			Point vPoint = oPoint;
-			if (virtualPointNeeded) {
-				// a virtual point should be considered instead of the real one
-				vPoint = Point.builder(oPoint.x() + xOffset, oPoint.y() + yOffset)
-								.radio(oPoint.radio()).build();
-			}
-			if (CellIndexMethods.distanceBetween(cPoint, vPoint) <= rc // points are colliding
-							&& !cPoint.equals(vPoint)) { // for the case of identity
-				// add each one to the set of colliding points of the other
-				collisionPerPoint.get(cPoint).add(oPoint);
-				collisionPerPoint.get(oPoint).add(cPoint);
+	private void sweepSparse(final double rc, final PairConsumer consumer) {
+		final int Mx = sparseGrid.columns();
+		final int directions = stencil.directions();
+		final int[] sorted = sparseGrid.sorted();
+		final double[] x = sparseGrid.sortedX();
+		final double[] y = sparseGrid.sortedY();
+		final double[] radio = sparseGrid.sortedRadio();
+		int cCell, row, col, rowStart, oCol, oCell, o;
+		for (int c = 0 ; c < sparseGrid.occupiedCount() ; c++) {
+			cCell = sparseGrid.cell(c);
+			row = cCell / Mx;
+			col = cCell % Mx;
+			
+			for (int direction = 0 ; direction < directions ; direction++) {
+				rowStart = stencil.otherRowStart(row, direction);
+				oCol = stencil.otherCol(col, direction);
+				if (rowStart == CellStencil.NONE || oCol == CellStencil.NONE) {
+					continue; // do not consider this cell, because it does not exists
+				}
+				oCell = rowStart + oCol;
+				
+				if (cCell == oCell) {
+					checkCollisions(sorted, x, y, radio, sparseGrid.start(c), sparseGrid.end(c), rc, consumer);
+				} else if ((o = sparseGrid.indexOf(oCell)) != CellStencil.NONE) {
+					checkCollisions(sorted, x, y, radio, sparseGrid.start(c), sparseGrid.end(c),
+									sparseGrid.start(o), sparseGrid.end(o), rc,
+									stencil.xOffset(col, direction), stencil.yOffset(row, direction), consumer);
+				}
 			}
-		}));
+		}
 	}
 	
 	/**
-	 *
-	 * @param mapSideLength
-	 * @param nCells
-	 * @param point
-	 * @param cellMatrix
-	 * @return cell where the given point was saved at the given SquareMatrix
+	 * Check, for each pair of particles of the same cell, if they are colliding, using an improvement of
+	 * the brute force method. The cell's particles are the ones between start (inclusive) and end (exclusive)
+	 * of the given sorted arrays.
 	 */
-	private Cell saveToMatrix(final double mapSideLength, final int nCells,
-	                          final Point point, final SquareMatrix cellMatrix) {
-		/*
-				Each point has an x & y component.
-				To get at which cell of the matrix the point belongs, here it is the idea of what's done.
-				Consider the case of a column:
-				* check which is the number t that makes t*k <= point.x() < (t+1)*k
-				* if t is an integer, the column taken is t-1 (unless t = 0), as it would be the case that the point is
-						at a cell boundary, and it can be classified in any of those.
-				* if t is not an integer, the floor of t is taken as the column number
-				
-				The same goes for the row.
-				
-				Notes:
-					* For translating points to the correct matrix index, the following formula is used:
-							column = ( nCells - 1 ) - t
-							
-							The problem is "drawn" following, with nCell = 5 for this example
-							
-								(x,y) plain with t
-								indexes as they are got
-							
-							y
-							|
-							4
-							3
-							2
-							1
-							0 1 2 3 4 --> x
-							
-								matrix with
-								translated t indexes
-								0 1 2 3 4
-							0
-							1
-							2
-							3
-							4
-							
-							Notice that the second form is the one needed to work with the matrix,
-							so as to be able to make a more efficient process
-							
-					* rows are calculated with point.y() and cols with point.x()
-					(see previous graphics for a better understanding).
-		 */
-		
-		final double k = mapSideLength / nCells;
-		
-		final int row, col;
-		
-		row = (nCells - 1) - getT(k, point.y());
-		col = getT(k, point.x());
-		
-		// if row or col is out of bounds => bad input was given ( x < 0 || x >= L || y < 0 || y >= L )
-		return cellMatrix.addToCell(row, col, point);
+	private static void checkCollisions(final int[] sorted, final double[] x, final double[] y, final double[] radio,
+	                                    final int start, final int end, final double rc, final PairConsumer consumer) {
+		double xi, yi, reach, dx, dy, squaredDistance, threshold;
+		for (int i = start ; i < end ; i++) {
+			xi = x[i];
+			yi = y[i];
+			reach = rc + radio[i];
+			for (int j = i+1 ; j < end ; j++) {
+				dx = x[j] - xi;
+				dy = y[j] - yi;
+				squaredDistance = dx * dx + dy * dy;
+				threshold = reach + radio[j];
+				if (squaredDistance <= threshold * threshold) {
+					consumer.accept(sorted[i], sorted[j], squaredDistance);
+				}
+			}
+		}
 	}
 	
 	/**
-	 *
-	 * @param k k
-	 * @param v v
-	 * @return Math.toIntExact(Math.round(Math.floor(v/k)));
-	 *
-	 * @throws ArithmeticException if Math.round(Math.floor(v/k)) overflows an int
+	 * Check, for each pair of particles on each cell (c = current, o = other), if they are colliding, i.e.,
+	 * if the distance between them is lower or equal to rc, considering their radios too.
+	 * <p>
+	 * If so, the given consumer is called with the pair.
+	 * <p>
+	 * The check is done over the grid's contiguous copies of the particles' positions and radios (given as the
+	 * sorted arrays, with each cell's range on them), comparing the squared distance between centers against
+	 * (rc + ri + rj)^2, so no square root is needed.
+	 * <p>
+	 * Notice that xOffset and yOffset should have the values to be applied to all the particles of the oCell
+	 * when a border case is reached and a periodic limit is being considered; 0 otherwise.
+	 * These offsets are applied on the fly, so no virtual particle is created.
+	 * @param sorted slots of the binned particles, sorted by cell
+	 * @param x x of the binned particles, on the same order as sorted
+	 * @param y y of the binned particles, on the same order as sorted
+	 * @param radio radio of the binned particles, on the same order as sorted
+	 * @param cStart first position of the current cell's particles
+	 * @param cEnd position after the last one of the current cell's particles
+	 * @param oStart first position of the other cell's particles, which will be compared to the current cell's ones
+	 * @param oEnd position after the last one of the other cell's particles
+	 * @param rc max distance to consider that two particles are colliding
+	 * @param xOffset x offset to be applied to all the oCell's particles
+	 * @param yOffset y offset to be applied to all the oCell's particles
+	 * @param consumer action to be done for each pair of colliding particles
 	 */
-	private int getT(final double k, final double v) {
-		return Math.toIntExact(Math.round(Math.floor(v/k)));
-	}
-	
-	
-	private static class Cell {
-		private final List<Point> points;
-		private final int row;
-		private final int col;
-		
-		private Cell(final int row, final int col) {
-			this.points = new LinkedList<>();
-			this.row = row;
-			this.col = col;
-		}
-		
-		@Override
-		public boolean equals(final Object o) {
-			if (this == o) return true;
-			if (!(o instanceof Cell)) return false;
-			
-			final Cell cell = (Cell) o;
-			
-			return row == cell.row && col == cell.col;
-			
-		}
-		
-		@Override
-		public int hashCode() {
-			int result = row;
-			result = 31 * result + col;
-			return result;
-		}
-	}
-	
-	private static class SquareMatrix {
-		private final Cell[][] matrix;
-		
-		private SquareMatrix(final int dimension) {
-			this.matrix = new Cell[dimension][dimension];
-			for (int row = 0 ; row < dimension ; row ++) {
-				for (int col = 0 ; col < dimension ; col ++) {
-					matrix[row][col] = new Cell(row, col);
+	private static void checkCollisions(final int[] sorted, final double[] x, final double[] y, final double[] radio,
+	                                    final int cStart, final int cEnd, final int oStart, final int oEnd,
+	                                    final double rc, final double xOffset, final double yOffset,
+	                                    final PairConsumer consumer) {
+		double xi, yi, reach, dx, dy, squaredDistance, threshold;
+		for (int i = cStart ; i < cEnd ; i++) {
+			xi = x[i];
+			yi = y[i];
+			reach = rc + radio[i];
+			for (int j = oStart ; j < oEnd ; j++) {
+				dx = x[j] + xOffset - xi;
+				dy = y[j] + yOffset - yi;
+				squaredDistance = dx * dx + dy * dy;
+				threshold = reach + radio[j];
+				if (squaredDistance <= threshold * threshold) {
+					consumer.accept(sorted[i], sorted[j], squaredDistance);
 				}
 			}
 		}
-		
-		/**
-		 *
-		 * @param row row index
-		 * @param col col index
-		 * @return the cell contained at the specified row and col
-		 *
-		 * @throws IndexOutOfBoundsException if row or col is lower than 0 or equal or greater than matrix's dimension
-		 */
-		private Cell get(final int row, final int col) {
-			return matrix[row][col];
-		}
-		
-		/**
-		 *
-		 * @param row row index
-		 * @param col col index
-		 * @param p point to be added to the cell specified by the given row and call
-		 * @return the Cell where the point was added
-		 *
-		 * @throws IndexOutOfBoundsException if row or col is lower than 0 or equal or greater than matrix's dimension
-		 */
-		private Cell addToCell(final int row, final int col, final Point p) {
-			final Cell c = get(row, col);
-			c.points.add(p);
-			return c;
-		}
-		
-		private int dimension() {
-			return matrix.length;
-		}
-		
 	}
 }
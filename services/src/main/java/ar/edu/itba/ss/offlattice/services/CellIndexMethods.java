@@ -1,18 +1,51 @@
 package ar.edu.itba.ss.offlattice.services;
 
+import ar.edu.itba.ss.offlattice.interfaces.NeighbourGraph;
+import ar.edu.itba.ss.offlattice.interfaces.NeighbourSearch;
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
 import ar.edu.itba.ss.offlattice.models.Point;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
-import static java.lang.Math.pow;
 import static java.lang.Math.sqrt;
 
 public abstract class CellIndexMethods {
+	/**
+	 * Greatest M whose grid's cells can be identified by an int ( M * M <= Integer.MAX_VALUE )
+	 */
+	public static final int MAX_M = 46340;
+	
 	public static double distanceBetween(final Point p1, final Point p2) {
-		return sqrt(pow(p2.x() - p1.x(), 2) + pow(p2.y() - p1.y(), 2)) - p1.radio() - p2.radio();
+		final double dx = p2.x() - p1.x();
+		final double dy = p2.y() - p1.y();
+		return sqrt(dx * dx + dy * dy) - p1.radio() - p2.radio();
+	}
+	
+	/**
+	 * Same as {@link #distanceBetween(Point, Point)}, but for the particles at the given slots of the store.
+	 * <p>
+	 * The given offsets are applied to the particle at slot j, as it is done with virtual points
+	 * when a periodic limit is being considered.
+	 */
+	public static double distanceBetween(final ParticleStore particles, final int i, final int j,
+	                                     final double xOffset, final double yOffset) {
+		return sqrt(squaredDistanceBetween(particles, i, j, xOffset, yOffset))
+						- particles.radio(i) - particles.radio(j);
+	}
+	
+	/**
+	 * @return the squared distance between the centers of the particles at the given slots,
+	 * applying the given offsets to the particle at slot j
+	 */
+	public static double squaredDistanceBetween(final ParticleStore particles, final int i, final int j,
+	                                            final double xOffset, final double yOffset) {
+		final double dx = particles.x(j) + xOffset - particles.x(i);
+		final double dy = particles.y(j) + yOffset - particles.y(i);
+		return dx * dx + dy * dy;
 	}
 	
 	public static boolean checkCollision(final Point pi, final Point pj, final double rc,
@@ -27,6 +60,9 @@ public abstract class CellIndexMethods {
 	
 	/**
 	 * Checks that the condition L/M > rc + r1 + r2 is met for each pair of points at the given set.
+	 * <p>
+	 * As the pair with the two greatest radios is the one that needs the biggest cells, only that pair
+	 * is checked, so this runs in O(N).
 	 *
 	 * @param l L
 	 * @param m M
@@ -36,19 +72,96 @@ public abstract class CellIndexMethods {
 	 */
 	public static boolean mConditionIsMet(final double l, final int m,
 	                                       final double rc, final Set<Point> points) {
-		final List<Point> pointsAsList = new ArrayList<>(points);
+		double r1 = -1, r2 = -1; // r1 >= r2; -1 if there is no such point
+		for (final Point point : points) {
+			if (point.radio() > r1) {
+				r2 = r1;
+				r1 = point.radio();
+			} else if (point.radio() > r2) {
+				r2 = point.radio();
+			}
+		}
+		
+		return r2 < 0 || l/m > rc + r1 + r2;
+	}
+	
+	/**
+	 * Same as {@link #mConditionIsMet(double, int, double, Set)}, but for the particles of the given store.
+	 */
+	public static boolean mConditionIsMet(final double l, final int m,
+	                                       final double rc, final ParticleStore particles) {
+		double r1 = -1, r2 = -1; // r1 >= r2; -1 if there is no such particle
+		for (int i = 0 ; i < particles.size() ; i++) {
+			if (particles.radio(i) > r1) {
+				r2 = r1;
+				r1 = particles.radio(i);
+			} else if (particles.radio(i) > r2) {
+				r2 = particles.radio(i);
+			}
+		}
+		
+		return r2 < 0 || l/m > rc + r1 + r2;
+	}
+	
+	/**
+	 * @return the greatest M that meets the condition L/M > rc + r1 + r2, up to {@link #MAX_M};
+	 * or 1 if there is no such M
+	 */
+	public static int maxM(final double l, final double rc, final double r1, final double r2) {
+		final double reach = rc + r1 + r2;
+		if (reach <= 0) {
+			return MAX_M;
+		}
+		int m = (int) Math.min(MAX_M, Math.ceil(l / reach) - 1);
+		if (m >= 1 && l / m <= reach) {
+			m --; // l / reach was not exact when rounded
+		}
+		return Math.max(1, Math.min(MAX_M, m));
+	}
+	
+	/**
+	 * Adapts the given points to a store, runs the given search over it and translates the colliding pairs
+	 * back to points, so methods that work over stores can also work over sets of points.
+	 *
+	 * @param points points to be checked
+	 * @param forEachPair search that calls its consumer once for each pair of colliding particles of the store
+	 * @return a map with each point and the points it collides with
+	 */
+	static Map<Point, Set<Point>> collisionsOf(final Set<Point> points, final NeighbourSearch forEachPair) {
+		// keep a reference to each point by its slot
+		final Point[] pointsBySlot = points.toArray(new Point[points.size()]);
+		final ParticleStore particles = ParticleStore.fromPoints(Arrays.asList(pointsBySlot));
+		final PairBuffer pairs = new PairBuffer();
+		final NeighbourGraph neighbours = new NeighbourGraph();
 		
-		double r1, r2;
-		for (int i = 0 ; i < pointsAsList.size() ; i++) {
-			for (int j = i + 1 ; j < pointsAsList.size() ; j++) {
-				r1 = pointsAsList.get(i).radio();
-				r2 = pointsAsList.get(j).radio();
-				if (l/m <= rc + r1 + r2) {
-					return false;
-				}
+		forEachPair.forEachPair(particles, pairs);
+		fillGraph(particles.size(), pairs, neighbours);
+		
+		// translate the neighbours' slots back to points
+		final Map<Point, Set<Point>> collisionPerPoint = new HashMap<>(pointsBySlot.length);
+		for (int i = 0 ; i < pointsBySlot.length ; i++) {
+			final Set<Point> collisions = new HashSet<>();
+			for (int k = 0 ; k < neighbours.count(i) ; k++) {
+				collisions.add(pointsBySlot[neighbours.get(i, k)]);
 			}
+			collisionPerPoint.put(pointsBySlot[i], collisions);
 		}
 		
-		return true;
+		return collisionPerPoint;
+	}
+	
+	/**
+	 * Saves the given pairs of N particles on the given graph, overwriting its content, in two passes:
+	 * it counts how many neighbours each particle has, and then saves them
+	 */
+	static void fillGraph(final int N, final PairBuffer pairs, final NeighbourGraph neighbours) {
+		neighbours.reset(N);
+		for (int p = 0 ; p < pairs.size() ; p++) {
+			neighbours.countPair(pairs.i(p), pairs.j(p));
+		}
+		neighbours.allocate();
+		for (int p = 0 ; p < pairs.size() ; p++) {
+			neighbours.addPair(pairs.i(p), pairs.j(p));
+		}
 	}
 }
@@ -0,0 +1,229 @@
+package ar.edu.itba.ss.offlattice.services;
+
+/**
+ * Precomputed half-shell stencil of an Mx x My cell grid.
+ * <p>
+ * The stencil is a list of directions, i.e., of (row, col) steps from a cell to the cells it has to be compared
+ * with. With cells of side rc (or greater), those are the cell itself and the ones up, up-right, right and
+ * down-right of it. When cells are subdivided, so that k cells are needed to cover the interaction range,
+ * the directions are generated for that greater neighbourhood, pruning the cells that are too far away
+ * to hold a pair of neighbours.
+ * <p>
+ * For each row and direction, it keeps the row to be compared with, already wrapped when a periodic limit is
+ * considered, together with the y offset to be applied to the other cell's particles; and the same is kept for
+ * each column and its x offset. As each axis wraps on its own, this is enough to get any cell's stencil,
+ * while the wrap and offset logic is solved once per grid, instead of once per cell on each run, and cells on
+ * the border of the grid cost the same as the ones on its interior.
+ * <p>
+ * The stencil is only rebuilt when the grid changes, so it does not allocate any memory between runs over
+ * the same grid.
+ */
+class CellStencil {
+	/**
+	 * Value of the other row or column of a direction whose cell does not exist
+	 */
+	static final int NONE = -1;
+
+	private double Lx = Double.NaN;
+	private double Ly = Double.NaN;
+	private int Mx;
+	private int My;
+	private boolean periodicLimit;
+	private int span;
+	private double reach = Double.NaN;
+
+	/* steps of each direction */
+	private int directions;
+	private int[] rowSteps = new int[0];
+	private int[] colSteps = new int[0];
+
+	/* for each row (or column) and direction, saved at row * directions + direction */
+	private int[] otherRowStart = new int[0];
+	private double[] yOffset = new double[0];
+	private int[] otherCol = new int[0];
+	private double[] xOffset = new double[0];
+
+	/**
+	 * Builds the stencil for a M x M grid over a L x L square
+	 * @see #update(double, double, int, int, boolean)
+	 */
+	void update(final double L, final int M, final boolean periodicLimit) {
+		update(L, L, M, M, periodicLimit);
+	}
+
+	/**
+	 * Builds the stencil for the given grid, with cells of side rc or greater
+	 * @see #update(double, double, int, int, boolean, int, double)
+	 */
+	void update(final double Lx, final double Ly, final int Mx, final int My, final boolean periodicLimit) {
+		update(Lx, Ly, Mx, My, periodicLimit, 1, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Builds the stencil for the given grid, unless it was already built for it.
+	 * Each axis wraps on its own, so cells on the x border get an x offset and cells on the y border a y one.
+	 * @param Lx length of the side of the rectangle containing all the particles, along the x axis
+	 * @param Ly length of the side of the rectangle containing all the particles, along the y axis
+	 * @param Mx number of columns of the grid
+	 * @param My number of rows of the grid
+	 * @param periodicLimit whether the grid wraps around its borders or not
+	 * @param span amount of cells needed to cover the interaction range, on each axis
+	 * @param reach greatest distance between the centers of two neighbours (rc + r1 + r2, for the two greatest
+	 *              radios), used to prune the cells that cannot hold a pair of neighbours;
+	 *              {@link Double#POSITIVE_INFINITY} so as not to prune any cell
+	 */
+	void update(final double Lx, final double Ly, final int Mx, final int My, final boolean periodicLimit,
+	            final int span, final double reach) {
+		if (Lx == this.Lx && Ly == this.Ly && Mx == this.Mx && My == this.My && periodicLimit == this.periodicLimit
+						&& span == this.span && reach == this.reach) {
+			return;
+		}
+		this.Lx = Lx;
+		this.Ly = Ly;
+		this.Mx = Mx;
+		this.My = My;
+		this.periodicLimit = periodicLimit;
+		this.span = span;
+		this.reach = reach;
+
+		generateDirections(Lx / Mx, Ly / My);
+
+		if (otherRowStart.length < My * directions) {
+			otherRowStart = new int[My * directions];
+			yOffset = new double[My * directions];
+		}
+		if (otherCol.length < Mx * directions) {
+			otherCol = new int[Mx * directions];
+			xOffset = new double[Mx * directions];
+		}
+
+		/*
+			Periodic Limit Cases
+
+			if periodic limit is false
+				if row + step < 0 || row + step >= My || col + step >= Mx => do not consider that cell
+
+			if periodic limit is true
+				if row + step < 0 => add My and points inside this cell should be applied an y offset of + Ly
+				if row + step >= My => subtract My and points inside this cell should be applied an y offset of - Ly
+				if col + step >= Mx => subtract Mx and points inside this cell should be applied an x offset of + Lx
+		 */
+		for (int row = 0 ; row < My ; row++) {
+			for (int direction = 0 ; direction < directions ; direction++) {
+				final int entry = row * directions + direction;
+				int oRow = row + rowSteps[direction];
+				double offset = 0;
+				if (oRow < 0) {
+					oRow = periodicLimit ? oRow + My : NONE;
+					offset = Ly;
+				} else if (oRow >= My) {
+					oRow = periodicLimit ? oRow - My : NONE;
+					offset = -Ly;
+				}
+				otherRowStart[entry] = oRow == NONE ? NONE : oRow * Mx;
+				yOffset[entry] = periodicLimit ? offset : 0;
+			}
+		}
+		for (int col = 0 ; col < Mx ; col++) {
+			for (int direction = 0 ; direction < directions ; direction++) {
+				final int entry = col * directions + direction;
+				int oCol = col + colSteps[direction];
+				double offset = 0;
+				if (oCol >= Mx) {
+					oCol = periodicLimit ? oCol - Mx : NONE;
+					offset = Lx;
+				}
+				otherCol[entry] = oCol;
+				xOffset[entry] = periodicLimit ? offset : 0;
+			}
+		}
+	}
+
+	/**
+	 * Generates the half-shell directions for the current span. These are the cell itself; the cells up of it,
+	 * on the same column; and the cells on the columns to its right, from up to down.
+	 * With a span of 1, these are itself, up, up-right, right and down-right, on that order.
+	 * <p>
+	 * A direction is pruned if the gap between the nearest borders of both cells is greater than the reach.
+	 * @param kx length of the side of a cell along the x axis
+	 * @param ky length of the side of a cell along the y axis
+	 */
+	private void generateDirections(final double kx, final double ky) {
+		final int maxDirections = 1 + span + span * (2 * span + 1);
+		if (rowSteps.length < maxDirections) {
+			rowSteps = new int[maxDirections];
+			colSteps = new int[maxDirections];
+		}
+
+		directions = 0;
+		addDirection(0, 0, kx, ky); // itself
+		for (int rowStep = -span ; rowStep < 0 ; rowStep++) {
+			addDirection(rowStep, 0, kx, ky); // up
+		}
+		for (int colStep = 1 ; colStep <= span ; colStep++) {
+			for (int rowStep = -span ; rowStep <= span ; rowStep++) {
+				addDirection(rowStep, colStep, kx, ky); // right, from up to down
+			}
+		}
+	}
+
+	private void addDirection(final int rowStep, final int colStep, final double kx, final double ky) {
+		if (isReachable(rowStep, colStep, kx, ky)) {
+			rowSteps[directions] = rowStep;
+			colSteps[directions] = colStep;
+			directions ++;
+		}
+	}
+
+	private boolean isReachable(final int rowStep, final int colStep, final double kx, final double ky) {
+		final double xGap = Math.max(0, Math.abs(colStep) - 1) * kx;
+		final double yGap = Math.max(0, Math.abs(rowStep) - 1) * ky;
+		return xGap * xGap + yGap * yGap <= reach * reach;
+	}
+
+	/**
+	 * @return amount of directions of the stencil
+	 */
+	int directions() {
+		return directions;
+	}
+
+	/**
+	 * @return index of the first cell of the row to be compared with the cells of the given row, on the given
+	 * direction (i.e., that row times Mx), or {@link #NONE} if it does not exist
+	 */
+	int otherRowStart(final int row, final int direction) {
+		return otherRowStart[row * directions + direction];
+	}
+
+	/**
+	 * @return column to be compared with the cells of the given column, on the given direction,
+	 * or {@link #NONE} if it does not exist
+	 */
+	int otherCol(final int col, final int direction) {
+		return otherCol[col * directions + direction];
+	}
+
+	/**
+	 * @return cell to be compared with the given cell, on the given direction, or {@link #NONE} if it does not exist
+	 */
+	int otherCell(final int row, final int col, final int direction) {
+		final int rowStart = otherRowStart(row, direction);
+		final int oCol = otherCol(col, direction);
+		return rowStart == NONE || oCol == NONE ? NONE : rowStart + oCol;
+	}
+
+	/**
+	 * @return x offset to be applied to the particles of the cells of the other column of the given direction
+	 */
+	double xOffset(final int col, final int direction) {
+		return xOffset[col * directions + direction];
+	}
+
+	/**
+	 * @return y offset to be applied to the particles of the cells of the other row of the given direction
+	 */
+	double yOffset(final int row, final int direction) {
+		return yOffset[row * directions + direction];
+	}
+}
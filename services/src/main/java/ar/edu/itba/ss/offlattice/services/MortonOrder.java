@@ -0,0 +1,89 @@
+package ar.edu.itba.ss.offlattice.services;
+
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
+
+import java.util.Arrays;
+
+/**
+ * Sorts the slots of a {@link ParticleStore} following a Z-order (Morton) curve over the square (or rectangle).
+ * <p>
+ * The square is divided on a 2^15 x 2^15 grid, and each particle is given the code that results from
+ * interleaving the bits of its column and row. Particles that are close on the square get close codes,
+ * so storing them on this order makes the particles of a cell and of its neighbouring cells lie close
+ * in memory too.
+ * <p>
+ * Arrays are kept between calls and only grow when needed.
+ */
+public class MortonOrder {
+	private static final int BITS = 15;
+	private static final int SIDE = 1 << BITS;
+
+	private long[] keys = new long[0];
+	private int[] order = new int[0];
+
+	/**
+	 * Sorts the slots of the given store. Runs in O(N log N).
+	 * @param particles particles to be sorted
+	 * @param L length of the side of the square containing all the particles
+	 * @return the slots of the given store on Z-order, i.e., the slot that should be placed at each position.
+	 * Notice that the returned array is reused on the next call, and that it may be longer than the store.
+	 */
+	public int[] sort(final ParticleStore particles, final double L) {
+		return sort(particles, L, L);
+	}
+
+	/**
+	 * Same as {@link #sort(ParticleStore, double)}, but for a rectangle.
+	 * The grid's cells stay square, so they are fitted to the longest side.
+	 * @param particles particles to be sorted
+	 * @param Lx length of the side of the rectangle containing all the particles, along the x axis
+	 * @param Ly length of the side of the rectangle containing all the particles, along the y axis
+	 * @return the slots of the given store on Z-order
+	 * @see #sort(ParticleStore, double)
+	 */
+	public int[] sort(final ParticleStore particles, final double Lx, final double Ly) {
+		final int N = particles.size();
+		if (keys.length < N) {
+			keys = new long[N];
+			order = new int[N];
+		}
+
+		// the slot is saved on the lower bits of the key, so a primitive sort is enough and ties keep the slots' order.
+		// Codes take 30 bits, so keys are never negative
+		final double cellsPerUnit = SIDE / Math.max(Lx, Ly);
+		for (int i = 0 ; i < N ; i++) {
+			final int col = clamp((int) (particles.x(i) * cellsPerUnit));
+			final int row = clamp((int) (particles.y(i) * cellsPerUnit));
+			keys[i] = (code(col, row) << 32) | i;
+		}
+		Arrays.sort(keys, 0, N);
+
+		for (int k = 0 ; k < N ; k++) {
+			order[k] = (int) keys[k];
+		}
+		return order;
+	}
+
+	/**
+	 * @return the Morton code of the given cell, with col's bits on the even positions and row's on the odd ones
+	 */
+	static long code(final int col, final int row) {
+		return spread(col) | (spread(row) << 1);
+	}
+
+	/**
+	 * @return the lower 15 bits of the given value, with a 0 bit between each of them
+	 */
+	private static long spread(final int value) {
+		long v = value & 0x7FFFL;
+		v = (v | (v << 8)) & 0x00FF00FFL;
+		v = (v | (v << 4)) & 0x0F0F0F0FL;
+		v = (v | (v << 2)) & 0x33333333L;
+		v = (v | (v << 1)) & 0x55555555L;
+		return v;
+	}
+
+	private static int clamp(final int cell) {
+		return Math.max(0, Math.min(SIDE - 1, cell));
+	}
+}
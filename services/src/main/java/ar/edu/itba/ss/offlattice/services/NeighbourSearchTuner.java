@@ -0,0 +1,323 @@
+package ar.edu.itba.ss.offlattice.services;
+
+import ar.edu.itba.ss.offlattice.interfaces.NeighbourSearch;
+import ar.edu.itba.ss.offlattice.interfaces.PairConsumer;
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Picks the neighbour search to be used for a given system, and its parameters.
+ * <p>
+ * Candidates are the brute force method, the cell index method with cells of side rc/k for k = 1, 2, 3 (and the
+ * greatest M that meets the condition L/M > (rc + r1 + r2) / k), Verlet lists over the cell index method and,
+ * when particles' radios are spread, the size binned cell index method. Each of them is given an estimated cost
+ * per step, measured in distance checks, from the amount of particles, their density and radios, and the amount
+ * of threads.
+ * <p>
+ * Optionally, the most promising candidates are run for a few steps over the given particles, and the fastest one
+ * is chosen, so as to confirm the estimation on the actual machine.
+ * <p>
+ * Every decision is logged, together with the estimated (and measured) cost of each candidate.
+ */
+public class NeighbourSearchTuner {
+	private static final Logger LOGGER = LoggerFactory.getLogger(NeighbourSearchTuner.class);
+
+	/**
+	 * Max amount of particles for the brute force method to be considered
+	 */
+	private static final int BRUTE_FORCE_MAX_N = 5000;
+
+	/**
+	 * Max amount of cells needed to cover the interaction range to be considered
+	 */
+	private static final int MAX_SUBDIVISION = 3;
+
+	/**
+	 * Cost of visiting a stencil's entry of an occupied cell, and of visiting a cell, relative to a distance check
+	 */
+	private static final double ENTRY_COST = 0.2;
+	private static final double CELL_COST = 0.05;
+
+	/**
+	 * Cost of binning a particle, and of setting up the grid on each run, relative to a distance check
+	 */
+	private static final double BIN_COST = 2;
+	private static final double GRID_SETUP_COST = 1000;
+
+	/**
+	 * Cost of checking a candidate pair of a Verlet list, relative to a distance check (it takes a square root
+	 * and does not read contiguous memory)
+	 */
+	private static final double VERLET_CANDIDATE_COST = 1.5;
+
+	/**
+	 * Amount of steps a Verlet list is expected to last, used to size its skin
+	 */
+	private static final int VERLET_TARGET_STEPS = 10;
+
+	/**
+	 * Fraction of the ideal speedup expected when running on several threads
+	 */
+	private static final double PARALLEL_EFFICIENCY = 0.7;
+
+	/**
+	 * Amount of candidates run when calibrating, in order of estimated cost
+	 */
+	private static final int CALIBRATED_CANDIDATES = 3;
+
+	private final double Lx;
+	private final double Ly;
+	private final double rc;
+	private final boolean periodicLimit;
+	private final ForkJoinPool pool;
+	private final int calibrationSteps;
+
+	private String choice;
+
+	/**
+	 * @param Lx length of the side of the rectangle containing all the particles, along the x axis. Must be positive.
+	 * @param Ly length of the side of the rectangle containing all the particles, along the y axis. Must be positive.
+	 * @param rc max distance to consider that two particles collide. Must be non negative.
+	 * @param periodicLimit if the end of a limit cell should be consider as it were from the opposite side
+	 * @param pool pool to be used by the parallel candidates; null to only consider sequential ones
+	 * @param calibrationSteps amount of steps each of the most promising candidates is run, so as to confirm
+	 *                         the choice; 0 to only use the estimated costs. Must be non negative.
+	 *
+	 * @throws IllegalArgumentException if rc < 0 or Lx <= 0 or Ly <= 0 or calibrationSteps < 0
+	 */
+	public NeighbourSearchTuner(final double Lx, final double Ly, final double rc, final boolean periodicLimit,
+	                            final ForkJoinPool pool, final int calibrationSteps) {
+		if (rc < 0 || Lx <= 0 || Ly <= 0 || calibrationSteps < 0) {
+			throw new IllegalArgumentException("Check that this is happening, but must not: " +
+							"rc < 0 or Lx <= 0 or Ly <= 0 or calibrationSteps < 0");
+		}
+		this.Lx = Lx;
+		this.Ly = Ly;
+		this.rc = rc;
+		this.periodicLimit = periodicLimit;
+		this.pool = pool;
+		this.calibrationSteps = calibrationSteps;
+	}
+
+	/**
+	 * Picks the neighbour search for the given particles
+	 * @param particles initial state of the particles
+	 * @return a new neighbour search, that has not been run yet
+	 */
+	public NeighbourSearch tune(final ParticleStore particles) {
+		final List<Candidate> candidates = candidates(particles);
+		candidates.sort(Comparator.comparingDouble(candidate -> candidate.estimatedCost));
+
+		Candidate chosen = candidates.get(0);
+		if (calibrationSteps > 0) {
+			// only the most promising ones, so calibration stays short
+			for (int c = 0 ; c < Math.min(CALIBRATED_CANDIDATES, candidates.size()) ; c++) {
+				final Candidate candidate = candidates.get(c);
+				candidate.measuredNanos = calibrate(candidate, particles);
+				if (candidate.measuredNanos < chosen.measuredNanos) {
+					chosen = candidate;
+				}
+			}
+		}
+
+		for (final Candidate candidate : candidates) {
+			LOGGER.debug("Neighbour search candidate: {}; estimated cost: {} checks/step; measured: {}",
+							candidate.name, (long) candidate.estimatedCost,
+							candidate.measuredNanos == Double.POSITIVE_INFINITY ?
+											"-" : String.format("%.3f ms/step", candidate.measuredNanos / 1e6));
+		}
+		choice = chosen.name;
+		LOGGER.info("Neighbour search for N = {}{}: {}", particles.size(),
+						calibrationSteps > 0 ? " (calibrated over " + calibrationSteps + " steps)" : "", choice);
+
+		return chosen.factory.get();
+	}
+
+	/**
+	 * @return description of the neighbour search picked on the last call to {@link #tune(ParticleStore)};
+	 * null if it was never called
+	 */
+	public String choice() {
+		return choice;
+	}
+
+	private List<Candidate> candidates(final ParticleStore particles) {
+		final int N = particles.size();
+		final double[] radios = new double[N];
+		double maxSpeed = 0;
+		for (int i = 0 ; i < N ; i++) {
+			radios[i] = particles.radio(i);
+			maxSpeed = Math.max(maxSpeed, Math.abs(particles.speed(i)));
+		}
+		Arrays.sort(radios);
+		final double r1 = N > 0 ? radios[N - 1] : 0;
+		final double r2 = N > 1 ? radios[N - 2] : 0;
+		final double reach = rc + r1 + r2;
+		final int threads = pool == null ? 1 : pool.getParallelism();
+
+		final List<Candidate> candidates = new ArrayList<>();
+
+		if (N <= BRUTE_FORCE_MAX_N) {
+			final double pairs = (double) N * (N - 1) / 2;
+			final double cost = threads > 1 && N >= 2 * BruteForceMethodImpl.TILE ?
+							pairs / (threads * PARALLEL_EFFICIENCY) : pairs;
+			candidates.add(new Candidate("brute force", cost, () -> {
+				final BruteForceMethodImpl bruteForce = new BruteForceMethodImpl(pool);
+				return (p, consumer) -> bruteForce.forEachPair(p, Lx, Ly, rc, periodicLimit, consumer);
+			}));
+		}
+
+		for (int k = 1 ; k <= MAX_SUBDIVISION ; k++) {
+			final int Mx = CellIndexMethods.maxM(k * Lx, rc, r1, r2);
+			final int My = CellIndexMethods.maxM(k * Ly, rc, r1, r2);
+			if (!isValidGrid(Mx, My, k)) {
+				continue;
+			}
+			final int subdivision = k;
+			final double cost = cellIndexMethodCost(N, Mx, My, k, reach, threads);
+			candidates.add(new Candidate("cell index method (" + Mx + " x " + My + " cells, " + k + " per rc)", cost,
+							() -> {
+								final CellIndexMethodImpl cim = newCellIndexMethod(subdivision);
+								return (p, consumer) -> cim.forEachPair(p, Lx, Ly, Mx, My, rc, periodicLimit, consumer);
+							}));
+		}
+
+		// sized so as to last some steps at the greatest speed, but not wider than the interaction range
+		final double skin = maxSpeed > 0 ? Math.min(reach, 2 * maxSpeed * VERLET_TARGET_STEPS) : 0.1 * reach;
+		// the same grid the list will be built on (see VerletListMethod)
+		final int verletMx = CellIndexMethods.maxM(Lx, rc + skin, r1, r2);
+		final int verletMy = CellIndexMethods.maxM(Ly, rc + skin, r1, r2);
+		if (skin > 0 && isValidGrid(verletMx, verletMy, 1)) {
+			final double steps = maxSpeed > 0 ? Math.max(1, Math.floor(skin / (2 * maxSpeed))) : VERLET_TARGET_STEPS;
+			final double candidatePairs = N * (N / (Lx * Ly)) * Math.PI * (reach + skin) * (reach + skin) / 2;
+			final double cost = VERLET_CANDIDATE_COST * candidatePairs + ENTRY_COST * N
+							+ cellIndexMethodCost(N, verletMx, verletMy, 1, reach + skin, threads) / steps;
+			final Candidate verlet = new Candidate(
+							String.format("Verlet lists (skin = %.4g) over the cell index method", skin), cost,
+							() -> new VerletListMethod(Lx, Ly, rc, skin, periodicLimit, newCellIndexMethod(1)));
+			verlet.stepsPerBuild = steps;
+			candidates.add(verlet);
+		}
+
+		// a few big particles would make every cell big, so small ones are better searched on their own
+		final double r90 = N > 0 ? radios[(int) (0.9 * (N - 1))] : 0;
+		final double smallReach = rc + 2 * r90;
+		final int smallMx = CellIndexMethods.maxM(Lx, rc, r90, r90);
+		final int smallMy = CellIndexMethods.maxM(Ly, rc, r90, r90);
+		if (r1 > 2 * r90 && N > BRUTE_FORCE_MAX_N / 10 && isValidGrid(smallMx, smallMy, 1)
+						&& (!periodicLimit || (Lx > 2 * reach && Ly > 2 * reach))) {
+			final double cost = 1.5 * cellIndexMethodCost(N, smallMx, smallMy, 1, smallReach, 1);
+			candidates.add(new Candidate("size binned cell index method", cost,
+							() -> new SizeBinnedCellIndexMethod(Lx, Ly, rc, periodicLimit,
+											SizeBinnedCellIndexMethod.DEFAULT_MAX_CLASSES)));
+		}
+
+		if (candidates.isEmpty()) {
+			// too few cells even for the cell index method, so every pair has to be checked
+			candidates.add(new Candidate("brute force", (double) N * (N - 1) / 2, () -> {
+				final BruteForceMethodImpl bruteForce = new BruteForceMethodImpl(pool);
+				return (p, consumer) -> bruteForce.forEachPair(p, Lx, Ly, rc, periodicLimit, consumer);
+			}));
+		}
+		return candidates;
+	}
+
+	/**
+	 * @return true if a cell index method with the given subdivision can be run on a grid of Mx x My cells,
+	 * without its stencil wrapping over the same cells more than once
+	 */
+	private boolean isValidGrid(final int Mx, final int My, final int subdivision) {
+		return !periodicLimit || (Mx >= 2 * subdivision + 1 && My >= 2 * subdivision + 1);
+	}
+
+	private CellIndexMethodImpl newCellIndexMethod(final int subdivision) {
+		return pool == null ? new CellIndexMethodImpl(subdivision) : new ParallelCellIndexMethodImpl(pool, subdivision);
+	}
+
+	/**
+	 * @return the estimated cost of a step of the cell index method, in distance checks: the ones done between the
+	 * particles of the cells on each stencil's direction, plus the cost of binning the particles, and of visiting
+	 * the grid and its stencil
+	 */
+	private double cellIndexMethodCost(final int N, final int Mx, final int My, final int subdivision,
+	                                   final double reach, final int threads) {
+		final CellStencil stencil = new CellStencil();
+		stencil.update(Lx, Ly, Mx, My, periodicLimit, subdivision, reach);
+		final int directions = stencil.directions();
+
+		final double cells = (double) Mx * My;
+		final double particlesPerCell = N / cells;
+		final double occupiedCells = Math.min(cells, N);
+		final double checks = N * particlesPerCell * (directions - 0.5) + BIN_COST * N + GRID_SETUP_COST;
+
+		if (CellIndexMethodImpl.isSparse(N, Mx, My)) {
+			// each direction of an occupied cell is looked up at the table, and the sweep is not split
+			return checks + 2 * ENTRY_COST * occupiedCells * directions;
+		}
+		final double cost = checks + ENTRY_COST * occupiedCells * directions + CELL_COST * cells;
+		return threads > 1 ? cost / (threads * PARALLEL_EFFICIENCY) : cost;
+	}
+
+	/**
+	 * @return the mean time of a step of the given candidate, in nanoseconds; for Verlet lists, the time of a build
+	 * is spread over the steps it is expected to last, as particles are not moved while calibrating
+	 */
+	private double calibrate(final Candidate candidate, final ParticleStore particles) {
+		final NeighbourSearch neighbourSearch = candidate.factory.get();
+		final CountingConsumer consumer = new CountingConsumer();
+
+		// the first run warms up the search (and builds the list, if any)
+		neighbourSearch.forEachPair(particles, consumer);
+
+		long buildNanos = 0;
+		if (neighbourSearch instanceof VerletListMethod) {
+			neighbourSearch.invalidate();
+			final long start = System.nanoTime();
+			neighbourSearch.forEachPair(particles, consumer);
+			buildNanos = System.nanoTime() - start;
+		}
+
+		final long start = System.nanoTime();
+		for (int step = 0 ; step < calibrationSteps ; step++) {
+			neighbourSearch.forEachPair(particles, consumer);
+		}
+		final double stepNanos = (double) (System.nanoTime() - start) / calibrationSteps;
+
+		LOGGER.trace("Calibration of {} found {} pairs", candidate.name, consumer.pairs);
+		return stepNanos + buildNanos / candidate.stepsPerBuild;
+	}
+
+	private static class Candidate {
+		private final String name;
+		private final double estimatedCost;
+		private final Supplier<NeighbourSearch> factory;
+		private double measuredNanos = Double.POSITIVE_INFINITY;
+		private double stepsPerBuild = 1;
+
+		private Candidate(final String name, final double estimatedCost, final Supplier<NeighbourSearch> factory) {
+			this.name = name;
+			this.estimatedCost = estimatedCost;
+			this.factory = factory;
+		}
+	}
+
+	/**
+	 * Consumer that only counts pairs, so the calibrated searches can not be optimized away
+	 */
+	private static class CountingConsumer implements PairConsumer {
+		private long pairs;
+
+		@Override
+		public void accept(final int i, final int j, final double squaredDistance) {
+			pairs ++;
+		}
+	}
+}
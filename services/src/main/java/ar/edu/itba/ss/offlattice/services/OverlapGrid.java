@@ -0,0 +1,125 @@
+package ar.edu.itba.ss.offlattice.services;
+
+import java.util.Arrays;
+
+/**
+ * Grid of the particles already placed on a rectangle, used to check if a new particle would overlap
+ * any of them in O(1), instead of comparing it with every placed particle.
+ * <p>
+ * Cells have a side of, at least, twice the greatest radio, so a particle can only overlap particles of its own
+ * cell and of the 8 cells around it. Each cell keeps its particles as a linked list over arrays, so adding a
+ * particle does not create any object.
+ */
+class OverlapGrid {
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final double minX;
+	private final double minY;
+	private final double cellSide;
+	private final int columns;
+	private final int rows;
+
+	/* first particle of each cell, and next particle of the same cell of each particle; -1 if there is none */
+	private final int[] head;
+	private int[] next = new int[0];
+
+	private double[] x = new double[0];
+	private double[] y = new double[0];
+	private double[] radio = new double[0];
+	private int size;
+
+	/**
+	 * @param minX left boundary of the rectangle - inclusive
+	 * @param minY bottom boundary of the rectangle - inclusive
+	 * @param maxX right boundary of the rectangle - exclusive
+	 * @param maxY top boundary of the rectangle - exclusive
+	 * @param maxRadio greatest radio of the particles to be placed
+	 * @param expectedSize amount of particles expected to be placed, used to size the cells
+	 */
+	OverlapGrid(final double minX, final double minY, final double maxX, final double maxY,
+	            final double maxRadio, final int expectedSize) {
+		final double width = maxX - minX;
+		final double height = maxY - minY;
+		this.minX = minX;
+		this.minY = minY;
+		// around one particle per cell, but never less than the greatest diameter
+		this.cellSide = Math.max(2 * maxRadio, Math.sqrt(width * height / Math.max(1, expectedSize)));
+		this.columns = (int) Math.max(1, Math.ceil(width / cellSide));
+		this.rows = (int) Math.max(1, Math.ceil(height / cellSide));
+		this.head = new int[columns * rows];
+		Arrays.fill(head, -1);
+	}
+
+	/**
+	 * @return true if a grid can be built for the given rectangle, without overflowing its amount of cells
+	 */
+	static boolean fits(final double minX, final double minY, final double maxX, final double maxY,
+	                    final double maxRadio, final int expectedSize) {
+		final double width = maxX - minX;
+		final double height = maxY - minY;
+		if (!(width > 0) || !(height > 0) || Double.isInfinite(width) || Double.isInfinite(height)) {
+			return false;
+		}
+		final double cellSide = Math.max(2 * maxRadio, Math.sqrt(width * height / Math.max(1, expectedSize)));
+		return Math.ceil(width / cellSide) * Math.ceil(height / cellSide) <= Integer.MAX_VALUE / 2;
+	}
+
+	/**
+	 * Checks if a particle at the given position would overlap any of the added ones, i.e., if the distance
+	 * between both of them, considering their radios, would be lower than 0 (as
+	 * {@link CellIndexMethods#distanceBetween(ar.edu.itba.ss.offlattice.models.Point,
+	 * ar.edu.itba.ss.offlattice.models.Point)} calculates it).
+	 */
+	boolean overlaps(final double px, final double py, final double pRadio) {
+		final int col = column(px);
+		final int row = row(py);
+		for (int r = Math.max(0, row - 1) ; r <= Math.min(rows - 1, row + 1) ; r++) {
+			for (int c = Math.max(0, col - 1) ; c <= Math.min(columns - 1, col + 1) ; c++) {
+				for (int i = head[r * columns + c] ; i != -1 ; i = next[i]) {
+					final double dx = px - x[i];
+					final double dy = py - y[i];
+					if (Math.sqrt(dx * dx + dy * dy) - radio[i] - pRadio < 0) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds a particle at the given position
+	 */
+	void add(final double px, final double py, final double pRadio) {
+		if (size == x.length) {
+			final int capacity = Math.max(2 * size, INITIAL_CAPACITY);
+			x = Arrays.copyOf(x, capacity);
+			y = Arrays.copyOf(y, capacity);
+			radio = Arrays.copyOf(radio, capacity);
+			next = Arrays.copyOf(next, capacity);
+		}
+		x[size] = px;
+		y[size] = py;
+		radio[size] = pRadio;
+
+		final int cell = row(py) * columns + column(px);
+		next[size] = head[cell];
+		head[cell] = size;
+		size ++;
+	}
+
+	/**
+	 * @return amount of added particles
+	 */
+	int size() {
+		return size;
+	}
+
+	private int column(final double px) {
+		return Math.max(0, Math.min(columns - 1, (int) ((px - minX) / cellSide)));
+	}
+
+	private int row(final double py) {
+		return Math.max(0, Math.min(rows - 1, (int) ((py - minY) / cellSide)));
+	}
+}
@@ -0,0 +1,60 @@
+package ar.edu.itba.ss.offlattice.services;
+
+import ar.edu.itba.ss.offlattice.interfaces.PairConsumer;
+
+import java.util.Arrays;
+
+/**
+ * Consumer that saves each given pair, with its squared distance, so as to replay them later on the same order.
+ * <p>
+ * Arrays are kept between calls to {@link #clear()} and only grow when needed.
+ */
+class PairBuffer implements PairConsumer {
+	private static final int INITIAL_CAPACITY = 64;
+
+	/* pairs, saved as (i, j) slots on consecutive positions */
+	private int[] pairs = new int[0];
+	private double[] squaredDistances = new double[0];
+	private int size;
+
+	@Override
+	public void accept(final int i, final int j, final double squaredDistance) {
+		if (size == squaredDistances.length) {
+			final int capacity = Math.max(2 * size, INITIAL_CAPACITY);
+			pairs = Arrays.copyOf(pairs, 2 * capacity);
+			squaredDistances = Arrays.copyOf(squaredDistances, capacity);
+		}
+		pairs[2 * size] = i;
+		pairs[2 * size + 1] = j;
+		squaredDistances[size] = squaredDistance;
+		size ++;
+	}
+
+	void clear() {
+		size = 0;
+	}
+
+	/**
+	 * @return amount of saved pairs
+	 */
+	int size() {
+		return size;
+	}
+
+	int i(final int pair) {
+		return pairs[2 * pair];
+	}
+
+	int j(final int pair) {
+		return pairs[2 * pair + 1];
+	}
+
+	/**
+	 * Gives each saved pair to the given consumer, on the same order they were saved
+	 */
+	void replay(final PairConsumer consumer) {
+		for (int p = 0 ; p < size ; p++) {
+			consumer.accept(pairs[2 * p], pairs[2 * p + 1], squaredDistances[p]);
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package ar.edu.itba.ss.offlattice.services;
+
+import ar.edu.itba.ss.offlattice.interfaces.PairConsumer;
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Cell index method that sweeps the grid on a {@link ForkJoinPool}.
+ * <p>
+ * The grid is split on strips of consecutive rows, and each strip is swept by a different task, saving its
+ * colliding pairs on its own {@link PairBuffer}. As the half-shell stencil makes a strip reach cells of its
+ * neighbouring strips, pairs are not given to the consumer by the tasks themselves; once all tasks are done,
+ * the buffers are replayed strip by strip. Because of this, the consumer is always called from the calling
+ * thread and with exactly the same pairs, on exactly the same order, as {@link CellIndexMethodImpl} does.
+ * <p>
+ * Notice that an instance of this class must not be used by more than one thread at a time.
+ */
+public class ParallelCellIndexMethodImpl extends CellIndexMethodImpl {
+	/**
+	 * Amount of strips per thread of the pool, so as to balance strips with different amount of particles
+	 */
+	private static final int STRIPS_PER_THREAD = 4;
+
+	private final ForkJoinPool pool;
+	private PairBuffer[] stripPairs = new PairBuffer[0];
+
+	/**
+	 * Creates a parallel cell index method that runs on the common pool
+	 */
+	public ParallelCellIndexMethodImpl() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param pool pool where the grid will be swept
+	 */
+	public ParallelCellIndexMethodImpl(final ForkJoinPool pool) {
+		this(pool, 1);
+	}
+
+	/**
+	 * @param pool pool where the grid will be swept
+	 * @param subdivision amount of cells needed to cover the interaction range, on each axis. Must be positive.
+	 *
+	 * @throws IllegalArgumentException if subdivision <= 0
+	 * @see CellIndexMethodImpl#CellIndexMethodImpl(int)
+	 */
+	public ParallelCellIndexMethodImpl(final ForkJoinPool pool, final int subdivision) {
+		super(subdivision);
+		this.pool = pool;
+	}
+
+	@Override
+	public void forEachPair(final ParticleStore particles,
+	                        final double Lx,
+	                        final double Ly,
+	                        final int Mx,
+	                        final int My,
+	                        final double rc,
+	                        final boolean periodicLimit,
+	                        final PairConsumer consumer) {
+		checkArguments(Lx, Ly, Mx, My, rc, periodicLimit);
+
+		if (isSparse(particles.size(), Mx, My)) {
+			// dilute systems have few particles per row, so they are not worth splitting
+			super.forEachPair(particles, Lx, Ly, Mx, My, rc, periodicLimit, consumer);
+			return;
+		}
+
+		// put each particle on the corresponding cell of the grid
+		prepare(particles, Lx, Ly, Mx, My, rc, periodicLimit);
+
+		final int strips = Math.min(My, pool.getParallelism() * STRIPS_PER_THREAD);
+		if (stripPairs.length < strips) {
+			final PairBuffer[] newStripPairs = new PairBuffer[strips];
+			System.arraycopy(stripPairs, 0, newStripPairs, 0, stripPairs.length);
+			for (int s = stripPairs.length ; s < strips ; s++) {
+				newStripPairs[s] = new PairBuffer();
+			}
+			stripPairs = newStripPairs;
+		}
+
+		// sweep every strip, each one saving its pairs on its own buffer
+		pool.invoke(new StripsTask(My, rc, strips, 0, strips));
+
+		// give the pairs to the consumer, on the same order as the sequential sweep
+		for (int s = 0 ; s < strips ; s++) {
+			stripPairs[s].replay(consumer);
+		}
+	}
+
+	private class StripsTask extends RecursiveAction {
+		private final int My;
+		private final double rc;
+		private final int strips;
+		private final int fromStrip;
+		private final int toStrip;
+
+		private StripsTask(final int My, final double rc, final int strips, final int fromStrip, final int toStrip) {
+			this.My = My;
+			this.rc = rc;
+			this.strips = strips;
+			this.fromStrip = fromStrip;
+			this.toStrip = toStrip;
+		}
+
+		@Override
+		protected void compute() {
+			if (toStrip - fromStrip == 1) {
+				final PairBuffer pairs = stripPairs[fromStrip];
+				pairs.clear();
+				sweep(rc, firstRow(fromStrip), firstRow(toStrip), pairs);
+				return;
+			}
+
+			final int middle = (fromStrip + toStrip) >>> 1;
+			invokeAll(new StripsTask(My, rc, strips, fromStrip, middle),
+							new StripsTask(My, rc, strips, middle, toStrip));
+		}
+
+		private int firstRow(final int strip) {
+			return (int) ((long) strip * My / strips);
+		}
+	}
+}
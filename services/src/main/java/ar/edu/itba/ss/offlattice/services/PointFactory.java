@@ -5,17 +5,33 @@ import ar.edu.itba.ss.offlattice.models.Point;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class PointFactory {
-	private static PointFactory pointFactory;
+	/**
+	 * Area per point, in squared min distances, when using Poisson-disk sampling; a full sampling has around
+	 * 1.5 squared min distances of area per point, so this leaves some room for the last points
+	 */
+	private static final double POISSON_DISK_AREA = 2;
+
+	/**
+	 * Amount of candidates tried around an active point before discarding it, on Poisson-disk sampling
+	 */
+	private static final int POISSON_DISK_CANDIDATES = 30;
+
+	/**
+	 * Amount of points of each region when generating them by regions
+	 */
+	static final int REGION_SIZE = 4096;
+
+	/* it holds no state, so it can be shared between threads */
+	private static final PointFactory pointFactory = new PointFactory();
 
 	private PointFactory() {
 	}
 
 	public static PointFactory getInstance() {
-		if (pointFactory == null) {
-			pointFactory = new PointFactory();
-		}
 		return pointFactory;
 	}
 	
@@ -26,6 +42,37 @@ public class PointFactory {
 	                               final boolean canCollide,
 	                               final int maxTries,
 	                               final double speed) {
+		return randomPoints(leftBottomPoint, rightTopPoint, radios, canCollide, maxTries, speed,
+						SeededRandom.withRandomSeed());
+	}
+	
+	/**
+	 * Generates in a pseudo-aleatory manner, but based on the given parameters, one point per given radio.
+	 * Collisions are accepted or not depending the given parameter.
+	 * <p>
+	 * Given the same parameters and a generator with the same seed, the same points are generated.
+	 * <p>
+	 * When collisions are not accepted and the area is bounded, each candidate is only compared with the points
+	 * placed near it (see {@link OverlapGrid}), so each try costs O(1) instead of O(N). Candidates are accepted
+	 * or rejected exactly as if they were compared with every generated point.
+	 *
+	 * @param leftBottomPoint the point at that corner of the area to where the points must belong ; null if random
+	 * @param rightTopPoint the point at that corner of the area to where the points must belong ; null if random
+	 * @param radios the radio of each point ; < 0 if random
+	 * @param canCollide whether the points can collide or not
+	 * @param maxTries how many times the function will try to generate non-colliding points - consecutively.
+	 *                 If this limit is reached, the set as is at that moment is returned
+	 * @param speed points' speed
+	 * @param random generator used to get the points' positions and orientations
+	 * @return a set containing the generated points - could have less than radios.length points
+	 */
+	public Set<Point> randomPoints(final Point leftBottomPoint,
+	                               final Point rightTopPoint,
+	                               final double[] radios,
+	                               final boolean canCollide,
+	                               final int maxTries,
+	                               final double speed,
+	                               final SeededRandom random) {
 		final double minX, minY, maxX, maxY;
 		if (leftBottomPoint != null) {
 			minX = leftBottomPoint.x();
@@ -44,6 +91,8 @@ public class PointFactory {
 		final int amount = radios.length;
 		
 		final Set<Point> generatedPoints = new HashSet<>(amount);
+		final OverlapGrid grid = canCollide || !OverlapGrid.fits(minX, minY, maxX, maxY, maxRadio(radios), amount) ?
+						null : new OverlapGrid(minX, minY, maxX, maxY, maxRadio(radios), amount);
 		
 		int tries;
 		double pX, pY, pR, pOrientation;
@@ -52,10 +101,10 @@ public class PointFactory {
 			Point p;
 			tries = 0;
 			do {
-				pX = RandomInRanges.randomDouble(minX, maxX);
-				pY = RandomInRanges.randomDouble(minY, maxY);
+				pX = random.randomDouble(minX, maxX);
+				pY = random.randomDouble(minY, maxY);
 				pR = radios[i] <= -1 ? 0 : radios[i];
-				pOrientation = RandomInRanges.randomDouble(0, 2 * Math.PI);
+				pOrientation = random.randomDouble(0, 2 * Math.PI);
 
 				p = Point.builder(pX, pY).radio(pR).orientation(pOrientation).speed(speed).build();
 				
@@ -63,15 +112,289 @@ public class PointFactory {
 				if (tries > maxTries) {
 					return generatedPoints;
 				}
-			} while (!passCollisionCondition(generatedPoints, p, canCollide));
+			} while (grid != null ? grid.overlaps(pX, pY, pR) : !passCollisionCondition(generatedPoints, p, canCollide));
 
 			// for sure that the point is not at the set; if it were, it would have collied with itself
 			generatedPoints.add(p);
+			if (grid != null) {
+				grid.add(pX, pY, pR);
+			}
 		}
 		
 		return generatedPoints;
 	}
 	
+	/**
+	 * Same as {@link #randomPoints(Point, Point, double[], boolean, int, double, SeededRandom)}, but splitting the
+	 * area on a grid of regions (around one per {@link #REGION_SIZE} points) that are filled independently,
+	 * on the given pool if any.
+	 * <p>
+	 * Points are evenly split between regions, in order: region k (counted row by row, from the bottom left one)
+	 * gets the radios that follow the ones of region k - 1, and draws its positions and orientations from the
+	 * k-th substream of the given generator. The point of radios[i] gets the id i + 1, so points can be put
+	 * back on the order of their radios.
+	 * <p>
+	 * When collisions are not accepted, regions are filled on 4 phases, by the parity of their row and column,
+	 * so regions filled at the same time never touch each other. A point near a border shared with another
+	 * region is also checked against the points of that region, which are either already placed or not placed
+	 * yet, so no margin is left between regions and the points are spread as if the area were filled at once.
+	 * Because of this, given the same parameters and a generator with the same seed, the same points are
+	 * generated, no matter the pool nor its amount of threads.
+	 *
+	 * @param leftBottomPoint the point at that corner of the area to where the points must belong
+	 * @param rightTopPoint the point at that corner of the area to where the points must belong
+	 * @param radios the radio of each point ; < 0 if 0
+	 * @param canCollide whether the points can collide or not
+	 * @param maxTries how many times each region will try to generate non-colliding points - consecutively.
+	 *                 If this limit is reached, the region stops generating points
+	 * @param speed points' speed
+	 * @param random generator whose substreams are used to get the points' positions and orientations
+	 * @param pool pool where the regions will be filled; null to fill them on the calling thread
+	 * @return a set containing the generated points - could have less than radios.length points
+	 */
+	public Set<Point> randomPointsByRegions(final Point leftBottomPoint,
+	                                        final Point rightTopPoint,
+	                                        final double[] radios,
+	                                        final boolean canCollide,
+	                                        final int maxTries,
+	                                        final double speed,
+	                                        final SeededRandom random,
+	                                        final ForkJoinPool pool) {
+		final double minX = leftBottomPoint.x();
+		final double minY = leftBottomPoint.y();
+		final double width = rightTopPoint.x() - minX;
+		final double height = rightTopPoint.y() - minY;
+		final int amount = radios.length;
+		final double maxRadio = canCollide ? 0 : maxRadio(radios);
+
+		// around REGION_SIZE points per region, as square as possible, but wider than the greatest diameter,
+		// so a point can only collide with points of the regions around its own one
+		final int regions = Math.max(1, (amount + REGION_SIZE - 1) / REGION_SIZE);
+		int columns = (int) Math.max(1, Math.round(Math.sqrt(regions * width / height)));
+		int rows = Math.max(1, (regions + columns - 1) / columns);
+		if (maxRadio > 0) {
+			columns = (int) Math.max(1, Math.min(columns, Math.floor(width / (2 * maxRadio))));
+			rows = (int) Math.max(1, Math.min(rows, Math.floor(height / (2 * maxRadio))));
+		}
+
+		final Region[] regionsToFill = new Region[columns * rows];
+		final Point[] points = new Point[amount];
+		for (int k = 0 ; k < regionsToFill.length ; k++) {
+			final int row = k / columns;
+			final int column = k % columns;
+			regionsToFill[k] = new Region(
+							minX + width * column / columns,
+							minY + height * row / rows,
+							minX + width * (column + 1) / columns,
+							minY + height * (row + 1) / rows,
+							(int) ((long) amount * k / regionsToFill.length),
+							(int) ((long) amount * (k + 1) / regionsToFill.length),
+							maxRadio, canCollide,
+							random.substream(k));
+		}
+
+		// 4 phases, by the parity of the row and the column, so a region never touches one filled at the same time
+		final Region[][] phases = new Region[4][];
+		for (int phase = 0 ; phase < phases.length ; phase++) {
+			final int phaseRow = phase / 2;
+			final int phaseColumn = phase % 2;
+			phases[phase] = new Region[((rows - phaseRow + 1) / 2) * ((columns - phaseColumn + 1) / 2)];
+			int p = 0;
+			for (int row = phaseRow ; row < rows ; row += 2) {
+				for (int column = phaseColumn ; column < columns ; column += 2) {
+					final Region region = regionsToFill[row * columns + column];
+					region.setNeighbours(regionsToFill, rows, columns, row, column);
+					phases[phase][p++] = region;
+				}
+			}
+		}
+
+		for (final Region[] phase : phases) {
+			if (pool == null || phase.length <= 1) {
+				for (final Region region : phase) {
+					region.fill(radios, maxTries, speed, points);
+				}
+			} else {
+				pool.invoke(new RegionsTask(phase, 0, phase.length, radios, maxTries, speed, points));
+			}
+		}
+
+		final Set<Point> generatedPoints = new HashSet<>(amount);
+		for (final Point p : points) {
+			if (p != null) {
+				generatedPoints.add(p);
+			}
+		}
+		return generatedPoints;
+	}
+
+	/**
+	 * Places one point per given radio on the sites of a square or hexagonal lattice that covers the given area,
+	 * moving each of them a random amount (jitter) that keeps it apart from the points of its neighbouring sites.
+	 * <p>
+	 * This is meant for dense packings, where random insertion stalls: as long as the sites are, at least,
+	 * twice the greatest radio apart, every point is placed. Sites are taken row by row, from the bottom one;
+	 * the lattice is the one whose sites are the farthest apart while having a site for every point.
+	 * <p>
+	 * Given the same parameters and a generator with the same seed, the same points are generated.
+	 *
+	 * @param leftBottomPoint the point at that corner of the area to where the points must belong
+	 * @param rightTopPoint the point at that corner of the area to where the points must belong
+	 * @param radios the radio of each point ; < 0 if 0
+	 * @param hexagonal if the lattice is hexagonal (each odd row shifted half a site) instead of a square one
+	 * @param speed points' speed
+	 * @param random generator used to get the points' jitters and orientations
+	 * @return a set containing the generated points - has less than radios.length points if sites are
+	 * too near to place a point on each of them without collisions
+	 */
+	public Set<Point> latticePoints(final Point leftBottomPoint,
+	                                final Point rightTopPoint,
+	                                final double[] radios,
+	                                final boolean hexagonal,
+	                                final double speed,
+	                                final SeededRandom random) {
+		final double minX = leftBottomPoint.x();
+		final double minY = leftBottomPoint.y();
+		final double width = rightTopPoint.x() - minX;
+		final double height = rightTopPoint.y() - minY;
+		final int amount = radios.length;
+		final double maxRadio = maxRadio(radios);
+
+		final Set<Point> generatedPoints = new HashSet<>(amount);
+		if (amount == 0) {
+			return generatedPoints;
+		}
+
+		// amount of rows (and so of columns) that leaves sites the farthest apart
+		int rows = 1;
+		double spacing = 0;
+		for (int r = 1 ; r <= amount ; r++) {
+			final double rSpacing = latticeSpacing(width / ((amount + r - 1) / r), height / r, hexagonal);
+			if (rSpacing > spacing) {
+				rows = r;
+				spacing = rSpacing;
+			}
+		}
+		final int columns = (amount + rows - 1) / rows;
+		final double dx = width / columns;
+		final double dy = height / rows;
+		// each point may move up to this far from its site on each axis (so, up to sqrt(2) times this far),
+		// so two points of neighbouring sites can not collide
+		final double jitter = Math.max(0, (spacing - 2 * maxRadio) / (2 * Math.sqrt(2)));
+		// hexagonal rows are shifted a quarter of a site to both sides, so they all fit inside the area;
+		// on each axis, points must not move farther than the margin between the sites and the area's sides
+		final double jitterX = Math.min(jitter, (hexagonal ? 0.25 : 0.5) * dx);
+		final double jitterY = Math.min(jitter, 0.5 * dy);
+
+		final OverlapGrid grid = new OverlapGrid(minX, minY, rightTopPoint.x(), rightTopPoint.y(), maxRadio, amount);
+		double pX, pY, pR, pOrientation;
+		for (int i = 0 ; i < amount ; i++) {
+			final int row = i / columns;
+			final int column = i % columns;
+			final double shift = hexagonal ? (row % 2 == 0 ? 0.25 : 0.75) : 0.5;
+			pX = minX + (column + shift) * dx + jitterX * random.randomDouble(-1, 1);
+			pY = minY + (row + 0.5) * dy + jitterY * random.randomDouble(-1, 1);
+			// keep rounding errors from leaving the point just outside the area
+			pX = Math.max(minX, Math.min(pX, Math.nextDown(rightTopPoint.x())));
+			pY = Math.max(minY, Math.min(pY, Math.nextDown(rightTopPoint.y())));
+			pR = radios[i] <= -1 ? 0 : radios[i];
+			pOrientation = random.randomDouble(0, 2 * Math.PI);
+
+			if (!grid.overlaps(pX, pY, pR)) {
+				grid.add(pX, pY, pR);
+				generatedPoints.add(Point.builder(pX, pY).radio(pR).orientation(pOrientation).speed(speed).build());
+			}
+		}
+
+		return generatedPoints;
+	}
+
+	/**
+	 * Places one point per given radio using Poisson-disk sampling (Bridson's algorithm): each new point is
+	 * taken from the ring around an already placed one, between one and two min distances away from it, so
+	 * points end up evenly spread but without any lattice pattern.
+	 * <p>
+	 * The min distance between centers is the greatest one such that, on average, all the points fit in the
+	 * given area, but never less than twice the greatest radio, so points never collide.
+	 * <p>
+	 * Given the same parameters and a generator with the same seed, the same points are generated.
+	 *
+	 * @param leftBottomPoint the point at that corner of the area to where the points must belong
+	 * @param rightTopPoint the point at that corner of the area to where the points must belong
+	 * @param radios the radio of each point ; < 0 if 0
+	 * @param speed points' speed
+	 * @param random generator used to get the points' positions and orientations
+	 * @return a set containing the generated points - has less than radios.length points if the area gets
+	 * full before placing all of them
+	 */
+	public Set<Point> poissonDiskPoints(final Point leftBottomPoint,
+	                                    final Point rightTopPoint,
+	                                    final double[] radios,
+	                                    final double speed,
+	                                    final SeededRandom random) {
+		final double minX = leftBottomPoint.x();
+		final double minY = leftBottomPoint.y();
+		final double maxX = rightTopPoint.x();
+		final double maxY = rightTopPoint.y();
+		final int amount = radios.length;
+
+		final Set<Point> generatedPoints = new HashSet<>(amount);
+		if (amount == 0) {
+			return generatedPoints;
+		}
+
+		final double minDistance = Math.max(2 * maxRadio(radios),
+						Math.sqrt((maxX - minX) * (maxY - minY) / (POISSON_DISK_AREA * amount)));
+		// every point is checked as if its radio were half the min distance
+		final double halfMinDistance = minDistance / 2;
+		final OverlapGrid grid = new OverlapGrid(minX, minY, maxX, maxY, halfMinDistance, amount);
+
+		final double[] activeX = new double[amount];
+		final double[] activeY = new double[amount];
+		int active = 0;
+
+		double pX = random.randomDouble(minX, maxX);
+		double pY = random.randomDouble(minY, maxY);
+		double pR, pOrientation;
+		int placed = 0;
+		while (true) {
+			// place the point at (pX, pY)
+			grid.add(pX, pY, halfMinDistance);
+			activeX[active] = pX;
+			activeY[active] = pY;
+			active ++;
+			pR = radios[placed] <= -1 ? 0 : radios[placed];
+			pOrientation = random.randomDouble(0, 2 * Math.PI);
+			generatedPoints.add(Point.builder(pX, pY).radio(pR).orientation(pOrientation).speed(speed).build());
+			placed ++;
+			if (placed == amount) {
+				return generatedPoints;
+			}
+
+			// look for the next point around the active ones, discarding those with no room left around them
+			boolean found = false;
+			while (!found && active > 0) {
+				final int a = (int) random.randomDouble(0, active);
+				for (int k = 0 ; k < POISSON_DISK_CANDIDATES && !found ; k++) {
+					final double angle = random.randomDouble(0, 2 * Math.PI);
+					final double distance = minDistance * Math.sqrt(random.randomDouble(1, 4));
+					pX = activeX[a] + distance * Math.cos(angle);
+					pY = activeY[a] + distance * Math.sin(angle);
+					found = pX >= minX && pX < maxX && pY >= minY && pY < maxY
+									&& !grid.overlaps(pX, pY, halfMinDistance);
+				}
+				if (!found) {
+					active --;
+					activeX[a] = activeX[active];
+					activeY[a] = activeY[active];
+				}
+			}
+			if (!found) {
+				return generatedPoints;
+			}
+		}
+	}
+
 	/**
 	 * Generates in a pseudo-aleatory manner, but based on the given parameters,
 	 * the specified amount of points.
@@ -114,6 +437,25 @@ public class PointFactory {
 		return randomPoints(null, null, -1, amount, canCollide, maxTries, speed);
 	}
 
+	/**
+	 * @return the min distance between two sites of a lattice with the given distances between columns and rows
+	 */
+	private static double latticeSpacing(final double dx, final double dy, final boolean hexagonal) {
+		// sites of alternate rows of a hexagonal lattice are on the same columns
+		return hexagonal ? Math.min(Math.min(dx, 2 * dy), Math.sqrt(dx * dx / 4 + dy * dy)) : Math.min(dx, dy);
+	}
+
+	/**
+	 * @return the greatest of the given radios ; 0 if there is none
+	 */
+	private static double maxRadio(final double[] radios) {
+		double maxRadio = 0;
+		for (final double radio : radios) {
+			maxRadio = Math.max(maxRadio, radio);
+		}
+		return maxRadio;
+	}
+
 	/**
 	 * Checks that the collision condition is passed, comparing the just created point with all the
 	 * previous already obtained
@@ -136,4 +478,140 @@ public class PointFactory {
 		
 		return true;
 	}
+
+	/**
+	 * Rectangle where a contiguous range of points is generated, with its own generator
+	 */
+	private static class Region {
+		private final double minX;
+		private final double minY;
+		private final double maxX;
+		private final double maxY;
+		private final int from;
+		private final int to;
+		private final double maxRadio;
+		private final SeededRandom random;
+		/* placed points of this region; null if collisions are accepted */
+		private final OverlapGrid grid;
+		/* regions that share a border or a corner with this one */
+		private Region[] neighbours = new Region[0];
+
+		private Region(final double minX, final double minY, final double maxX, final double maxY,
+		               final int from, final int to, final double maxRadio, final boolean canCollide,
+		               final SeededRandom random) {
+			this.minX = minX;
+			this.minY = minY;
+			this.maxX = maxX;
+			this.maxY = maxY;
+			this.from = from;
+			this.to = to;
+			this.maxRadio = maxRadio;
+			this.random = random;
+			this.grid = canCollide ? null : new OverlapGrid(minX, minY, maxX, maxY, maxRadio, to - from);
+		}
+
+		/**
+		 * Saves the regions around the one at the given row and column of the given rows x columns grid of regions
+		 */
+		private void setNeighbours(final Region[] regions, final int rows, final int columns,
+		                           final int row, final int column) {
+			final Region[] around = new Region[8];
+			int n = 0;
+			for (int r = Math.max(0, row - 1) ; r <= Math.min(rows - 1, row + 1) ; r++) {
+				for (int c = Math.max(0, column - 1) ; c <= Math.min(columns - 1, column + 1) ; c++) {
+					if (r != row || c != column) {
+						around[n++] = regions[r * columns + c];
+					}
+				}
+			}
+			neighbours = Arrays.copyOf(around, n);
+		}
+
+		/**
+		 * Generates the points between from (inclusive) and to (exclusive), saving each of them at its position
+		 * of the given array, until all are generated or maxTries consecutive tries fail
+		 */
+		private void fill(final double[] radios, final int maxTries, final double speed, final Point[] points) {
+			int tries;
+			double pX, pY, pR, pOrientation;
+			for (int i = from ; i < to ; i++) {
+				tries = 0;
+				do {
+					pX = random.randomDouble(minX, maxX);
+					pY = random.randomDouble(minY, maxY);
+					pR = radios[i] <= -1 ? 0 : radios[i];
+					pOrientation = random.randomDouble(0, 2 * Math.PI);
+
+					tries ++;
+					if (tries > maxTries) {
+						return;
+					}
+				} while (grid != null && overlaps(pX, pY, pR));
+
+				if (grid != null) {
+					grid.add(pX, pY, pR);
+				}
+				points[i] = Point.builder(pX, pY).id(i + 1).radio(pR).orientation(pOrientation).speed(speed).build();
+			}
+		}
+
+		/**
+		 * @return true if a point at the given position would overlap a point of this region, or of a region
+		 * around it, if it is near enough to its border
+		 */
+		private boolean overlaps(final double px, final double py, final double pRadio) {
+			if (grid.overlaps(px, py, pRadio)) {
+				return true;
+			}
+			final double reach = pRadio + maxRadio;
+			for (final Region neighbour : neighbours) {
+				if (neighbour.isNear(px, py, reach) && neighbour.grid.overlaps(px, py, pRadio)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * @return true if the given position is at a distance lower than the given one of this region
+		 */
+		private boolean isNear(final double px, final double py, final double distance) {
+			final double dx = Math.max(0, Math.max(minX - px, px - maxX));
+			final double dy = Math.max(0, Math.max(minY - py, py - maxY));
+			return dx * dx + dy * dy < distance * distance;
+		}
+	}
+
+	private static class RegionsTask extends RecursiveAction {
+		private final Region[] regions;
+		private final int fromRegion;
+		private final int toRegion;
+		private final double[] radios;
+		private final int maxTries;
+		private final double speed;
+		private final Point[] points;
+
+		private RegionsTask(final Region[] regions, final int fromRegion, final int toRegion, final double[] radios,
+		                    final int maxTries, final double speed, final Point[] points) {
+			this.regions = regions;
+			this.fromRegion = fromRegion;
+			this.toRegion = toRegion;
+			this.radios = radios;
+			this.maxTries = maxTries;
+			this.speed = speed;
+			this.points = points;
+		}
+
+		@Override
+		protected void compute() {
+			if (toRegion - fromRegion == 1) {
+				regions[fromRegion].fill(radios, maxTries, speed, points);
+				return;
+			}
+
+			final int middle = (fromRegion + toRegion) >>> 1;
+			invokeAll(new RegionsTask(regions, fromRegion, middle, radios, maxTries, speed, points),
+							new RegionsTask(regions, middle, toRegion, radios, maxTries, speed, points));
+		}
+	}
 }
@@ -0,0 +1,93 @@
+package ar.edu.itba.ss.offlattice.services;
+
+import java.util.SplittableRandom;
+
+/**
+ * Seeded pseudo-aleatory number generator, built on a {@link SplittableRandom}.
+ * <p>
+ * Given the same seed, it always generates the same numbers. Independent streams can be derived from it with
+ * {@link #substream(long)}, which only depend on this generator's seed and the given index (and not on how many
+ * numbers were already generated), so each particle, chunk or replica can get its own deterministic stream.
+ * <p>
+ * Notice that an instance of this class must not be used by more than one thread at a time;
+ * use a different substream for each thread instead.
+ */
+public class SeededRandom {
+	/* golden ratio's fraction, as used by SplitMix64 to step between seeds */
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private final long seed;
+	private final SplittableRandom random;
+
+	/**
+	 * @param seed seed of the generator
+	 */
+	public SeededRandom(final long seed) {
+		this.seed = seed;
+		this.random = new SplittableRandom(seed);
+	}
+
+	/**
+	 * @return a new generator with a pseudo-aleatory seed; use {@link #seed()} to reproduce it later
+	 */
+	public static SeededRandom withRandomSeed() {
+		return new SeededRandom(new SplittableRandom().nextLong());
+	}
+
+	public long seed() {
+		return seed;
+	}
+
+	/**
+	 * Gets a new pseudo-aleatory random double between the min (inclusive) and max (exclusive) values
+	 * @param min the min value
+	 * @param max the max value
+	 * @return a value between the min (inclusive) and the max (exclusive) value
+	 */
+	public double randomDouble(final double min, final double max) {
+		return min + random.nextDouble() * (max-min);
+	}
+
+	/**
+	 * Fills the given array with pseudo-aleatory doubles between the min (inclusive) and max (exclusive) values
+	 * @param out array to be filled
+	 * @param min the min value
+	 * @param max the max value
+	 */
+	public void fillUniform(final double[] out, final double min, final double max) {
+		fillUniform(out, 0, out.length, min, max);
+	}
+
+	/**
+	 * Fills the positions between from (inclusive) and to (exclusive) of the given array with pseudo-aleatory doubles
+	 * between the min (inclusive) and max (exclusive) values
+	 * @param out array to be filled
+	 * @param from first position to be filled
+	 * @param to position after the last one to be filled
+	 * @param min the min value
+	 * @param max the max value
+	 */
+	public void fillUniform(final double[] out, final int from, final int to, final double min, final double max) {
+		final double range = max - min;
+		for (int i = from ; i < to ; i++) {
+			out[i] = min + random.nextDouble() * range;
+		}
+	}
+
+	/**
+	 * @param index index of the stream
+	 * @return a new generator whose seed only depends on this generator's seed and the given index
+	 */
+	public SeededRandom substream(final long index) {
+		return new SeededRandom(mix(seed + (index + 1) * GOLDEN_GAMMA));
+	}
+
+	/**
+	 * SplitMix64's finalizer, so that close seeds give unrelated streams
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
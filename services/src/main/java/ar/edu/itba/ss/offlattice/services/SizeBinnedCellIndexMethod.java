@@ -0,0 +1,264 @@
+package ar.edu.itba.ss.offlattice.services;
+
+import ar.edu.itba.ss.offlattice.interfaces.NeighbourSearch;
+import ar.edu.itba.ss.offlattice.interfaces.PairConsumer;
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
+
+/**
+ * Neighbour search for systems whose particles have different radios.
+ * <p>
+ * A single grid must have cells of side greater than rc + r1 + r2 for the two greatest radios, so
+ * if there are a few big particles, the small ones are compared with many more particles than needed.
+ * Instead, particles are split on classes by their radio: class 0 has the ones with radio greater than
+ * rMax / 2, class 1 the ones with radio greater than rMax / 4, and so on, with the last class taking the rest.
+ * Then:
+ * <ul>
+ *     <li>the pairs of each class are found with a {@link CellIndexMethodImpl} whose cells are sized for the
+ *     greatest radio of that class only</li>
+ *     <li>the pairs between a class and the classes with bigger particles are found binning the smaller
+ *     particles on a grid sized for both classes, and looking around each of the bigger particles</li>
+ * </ul>
+ * <p>
+ * When a periodic limit is being considered, distances between classes are measured with the minimum image
+ * convention, so it is required that L > 2 * (rc + r1 + r2) on each axis, for the two greatest radios.
+ * <p>
+ * Notice that an instance of this class must not be used by more than one thread at a time.
+ */
+public class SizeBinnedCellIndexMethod implements NeighbourSearch {
+	static final int DEFAULT_MAX_CLASSES = 4;
+
+	private final double Lx;
+	private final double Ly;
+	private final double rc;
+	private final boolean periodicLimit;
+	private final SizeClass[] classes;
+	private final CellGrid crossGrid = new CellGrid();
+	private int[] classOf = new int[0];
+
+	/**
+	 * @param L length of the side of the square containing all the particles. Must be positive.
+	 * @param rc max distance to consider that two particles collide. Must be non negative.
+	 * @param periodicLimit if the end of a limit cell should be consider as it were from the opposite side
+	 *
+	 * @throws IllegalArgumentException if rc < 0 or L <= 0
+	 */
+	public SizeBinnedCellIndexMethod(final double L, final double rc, final boolean periodicLimit) {
+		this(L, rc, periodicLimit, DEFAULT_MAX_CLASSES);
+	}
+
+	/**
+	 * @param L length of the side of the square containing all the particles. Must be positive.
+	 * @param rc max distance to consider that two particles collide. Must be non negative.
+	 * @param periodicLimit if the end of a limit cell should be consider as it were from the opposite side
+	 * @param maxClasses max amount of classes in which particles will be split. Must be positive.
+	 *
+	 * @throws IllegalArgumentException if rc < 0 or L <= 0 or maxClasses <= 0
+	 */
+	public SizeBinnedCellIndexMethod(final double L, final double rc, final boolean periodicLimit,
+	                                 final int maxClasses) {
+		this(L, L, rc, periodicLimit, maxClasses);
+	}
+
+	/**
+	 * @param Lx length of the side of the rectangle containing all the particles, along the x axis. Must be positive.
+	 * @param Ly length of the side of the rectangle containing all the particles, along the y axis. Must be positive.
+	 * @param rc max distance to consider that two particles collide. Must be non negative.
+	 * @param periodicLimit if the end of a limit cell should be consider as it were from the opposite side
+	 * @param maxClasses max amount of classes in which particles will be split. Must be positive.
+	 *
+	 * @throws IllegalArgumentException if rc < 0 or Lx <= 0 or Ly <= 0 or maxClasses <= 0
+	 */
+	public SizeBinnedCellIndexMethod(final double Lx, final double Ly, final double rc, final boolean periodicLimit,
+	                                 final int maxClasses) {
+		if (rc < 0 || Lx <= 0 || Ly <= 0 || maxClasses <= 0) {
+			throw new IllegalArgumentException("Check that this is happening, but must not: " +
+							"rc < 0 or Lx <= 0 or Ly <= 0 or maxClasses <= 0");
+		}
+		this.Lx = Lx;
+		this.Ly = Ly;
+		this.rc = rc;
+		this.periodicLimit = periodicLimit;
+		this.classes = new SizeClass[maxClasses];
+		for (int c = 0 ; c < maxClasses ; c++) {
+			classes[c] = new SizeClass();
+		}
+	}
+
+	@Override
+	public void forEachPair(final ParticleStore particles, final PairConsumer consumer) {
+		classify(particles);
+
+		// pairs inside each class
+		for (final SizeClass sizeClass : classes) {
+			if (sizeClass.count > 0) {
+				sizeClass.target = consumer;
+				sizeClass.cellIndexMethod.forEachPair(sizeClass.store, Lx, Ly,
+								CellIndexMethods.maxM(Lx, rc, sizeClass.maxRadio, sizeClass.maxRadio),
+								CellIndexMethods.maxM(Ly, rc, sizeClass.maxRadio, sizeClass.maxRadio),
+								rc, periodicLimit, sizeClass);
+			}
+		}
+
+		// pairs between each class and the ones with bigger particles
+		for (int small = 1 ; small < classes.length ; small++) {
+			if (classes[small].count == 0) {
+				continue;
+			}
+			for (int big = 0 ; big < small ; big++) {
+				if (classes[big].count > 0) {
+					crossPairs(particles, classes[small], classes[big], consumer);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Splits the particles on classes by their radio, copying each class' particles to its own store
+	 */
+	private void classify(final ParticleStore particles) {
+		final int N = particles.size();
+		if (classOf.length < N) {
+			classOf = new int[N];
+		}
+
+		double rMax = 0;
+		for (int i = 0 ; i < N ; i++) {
+			rMax = Math.max(rMax, particles.radio(i));
+		}
+
+		for (final SizeClass sizeClass : classes) {
+			sizeClass.count = 0;
+			sizeClass.maxRadio = 0;
+		}
+		for (int i = 0 ; i < N ; i++) {
+			int c = 0;
+			double bound = rMax / 2;
+			while (c < classes.length - 1 && particles.radio(i) <= bound) {
+				c ++;
+				bound /= 2;
+			}
+			classOf[i] = c;
+			classes[c].count ++;
+			classes[c].maxRadio = Math.max(classes[c].maxRadio, particles.radio(i));
+		}
+
+		for (final SizeClass sizeClass : classes) {
+			sizeClass.allocate();
+			sizeClass.count = 0;
+		}
+		for (int i = 0 ; i < N ; i++) {
+			final SizeClass sizeClass = classes[classOf[i]];
+			sizeClass.members[sizeClass.count] = i;
+			sizeClass.store.set(sizeClass.count, particles.id(i), particles.x(i), particles.y(i),
+							particles.radio(i), 0, 0);
+			sizeClass.count ++;
+		}
+	}
+
+	/**
+	 * Finds the pairs between the particles of the given classes, binning the small ones and looking
+	 * at the cells around each of the big ones
+	 */
+	private void crossPairs(final ParticleStore particles, final SizeClass small, final SizeClass big,
+	                        final PairConsumer consumer) {
+		final int Mx = CellIndexMethods.maxM(Lx, rc, small.maxRadio, big.maxRadio);
+		final int My = CellIndexMethods.maxM(Ly, rc, small.maxRadio, big.maxRadio);
+		final double kx = Lx / Mx;
+		final double ky = Ly / My;
+		crossGrid.bin(small.store, Lx, Ly, Mx, My);
+
+		final int[] sorted = crossGrid.sorted();
+		final double[] x = crossGrid.sortedX();
+		final double[] y = crossGrid.sortedY();
+		final double[] radio = crossGrid.sortedRadio();
+		// with less than 3 cells per side, the cells around would be visited more than once
+		final int rowsAround = My < 3 ? My : 3;
+		final int colsAround = Mx < 3 ? Mx : 3;
+
+		for (int b = 0 ; b < big.count ; b++) {
+			final int i = big.members[b];
+			final double xi = particles.x(i);
+			final double yi = particles.y(i);
+			final double reach = rc + particles.radio(i);
+			final int cell = CellGrid.cellOf(kx, ky, Mx, My, xi, yi);
+			final int firstRow = My < 3 ? 0 : cell / Mx - 1;
+			final int firstCol = Mx < 3 ? 0 : cell % Mx - 1;
+
+			for (int r = firstRow ; r < firstRow + rowsAround ; r++) {
+				final int row = wrap(r, My);
+				if (row < 0) {
+					continue;
+				}
+				for (int c = firstCol ; c < firstCol + colsAround ; c++) {
+					final int col = wrap(c, Mx);
+					if (col < 0) {
+						continue;
+					}
+					final int oCell = row * Mx + col;
+					final int end = crossGrid.end(oCell);
+					for (int s = crossGrid.start(oCell) ; s < end ; s++) {
+						final double dx = separation(x[s] - xi, Lx);
+						final double dy = separation(y[s] - yi, Ly);
+						final double squaredDistance = dx * dx + dy * dy;
+						final double threshold = reach + radio[s];
+						if (squaredDistance <= threshold * threshold) {
+							consumer.accept(i, small.members[sorted[s]], squaredDistance);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the given row or column, wrapped if a periodic limit is being considered; or -1 if it does not exist
+	 */
+	private int wrap(final int index, final int M) {
+		if (index >= 0 && index < M) {
+			return index;
+		}
+		if (!periodicLimit) {
+			return -1;
+		}
+		return index < 0 ? index + M : index - M;
+	}
+
+	/**
+	 * @param d difference between two coordinates
+	 * @param L length of the side of the rectangle along the coordinates' axis
+	 * @return the given difference, taking the nearest periodic image if a periodic limit is being considered
+	 */
+	private double separation(final double d, final double L) {
+		if (periodicLimit) {
+			return d - L * Math.rint(d / L);
+		}
+		return d;
+	}
+
+	/**
+	 * Particles of a class, copied to their own store, that translates the pairs found on that store
+	 * to the slots of the original one
+	 */
+	private static class SizeClass implements PairConsumer {
+		private final CellIndexMethodImpl cellIndexMethod = new CellIndexMethodImpl();
+		private ParticleStore store = new ParticleStore(0);
+		private int[] members = new int[0];
+		private int count;
+		private double maxRadio;
+		private PairConsumer target;
+
+		private void allocate() {
+			if (store.size() != count) {
+				store = new ParticleStore(count);
+			}
+			if (members.length < count) {
+				members = new int[count];
+			}
+		}
+
+		@Override
+		public void accept(final int i, final int j, final double squaredDistance) {
+			target.accept(members[i], members[j], squaredDistance);
+		}
+	}
+}
@@ -0,0 +1,217 @@
+package ar.edu.itba.ss.offlattice.services;
+
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
+
+import java.util.Arrays;
+
+/**
+ * Mx x My cell grid that only keeps its occupied cells, meant for dilute systems where most of the cells of
+ * a {@link CellGrid} would be empty.
+ * <p>
+ * Slots are sorted by cell, as {@link CellGrid} does, but only the occupied cells are saved, in increasing
+ * order of their ids, each one with its range at {@link #sorted()}. Cells are found by their id with an
+ * open-addressing hash table of primitive arrays, so memory scales with N instead of Mx * My, and no object is
+ * created per cell.
+ * <p>
+ * As cells and the slots inside them are saved on the same order as a {@link CellGrid} saves them when it
+ * is built, sweeping the occupied cells gives the pairs on the same order as sweeping a dense grid.
+ * <p>
+ * Arrays are kept between calls to {@link #bin(ParticleStore, double, double, int, int)} and only grow when needed.
+ */
+class SparseCellGrid {
+	/* value of the hash table's empty entries */
+	private static final int EMPTY = -1;
+
+	private int Mx;
+	private int My;
+	private int occupied;
+	private long[] keys = new long[0];
+	private int[] sorted = new int[0];
+	private double[] sortedX = new double[0];
+	private double[] sortedY = new double[0];
+	private double[] sortedRadio = new double[0];
+
+	/* id and range of each occupied cell */
+	private int[] cells = new int[0];
+	private int[] cellStart = new int[1];
+
+	/* hash table from cell id to its index at cells */
+	private int[] tableCells = new int[0];
+	private int[] tableIndexes = new int[0];
+	private int tableMask;
+
+	/**
+	 * Bins all the particles of the given store on a M x M grid over a L x L square
+	 * @see #bin(ParticleStore, double, double, int, int)
+	 */
+	void bin(final ParticleStore particles, final double L, final int M) {
+		bin(particles, L, L, M, M);
+	}
+
+	/**
+	 * Bins all the particles of the given store. Runs in O(N log N), regardless of Mx and My.
+	 *
+	 * @param particles particles to be binned
+	 * @param Lx length of the side of the rectangle containing all the particles, along the x axis
+	 * @param Ly length of the side of the rectangle containing all the particles, along the y axis
+	 * @param Mx number of cells on which the x side of the rectangle will be divided (i.e., columns)
+	 * @param My number of cells on which the y side of the rectangle will be divided (i.e., rows)
+	 *
+	 * @throws IndexOutOfBoundsException if a particle is not inside the rectangle
+	 * ( x < 0 || x >= Lx || y < 0 || y >= Ly )
+	 */
+	void bin(final ParticleStore particles, final double Lx, final double Ly, final int Mx, final int My) {
+		final int N = particles.size();
+		this.Mx = Mx;
+		this.My = My;
+		if (keys.length < N) {
+			keys = new long[N];
+			sorted = new int[N];
+			sortedX = new double[N];
+			sortedY = new double[N];
+			sortedRadio = new double[N];
+			cells = new int[N];
+			cellStart = new int[N + 1];
+		}
+
+		// sort the slots by cell; the slot is saved on the lower bits of the key, so ties keep the slots' order
+		final double kx = Lx / Mx;
+		final double ky = Ly / My;
+		for (int i = 0 ; i < N ; i++) {
+			keys[i] = ((long) CellGrid.cellOf(kx, ky, Mx, My, particles.x(i), particles.y(i)) << 32) | i;
+		}
+		Arrays.sort(keys, 0, N);
+
+		occupied = 0;
+		int previousCell = CellStencil.NONE;
+		for (int s = 0 ; s < N ; s++) {
+			final int cell = (int) (keys[s] >>> 32);
+			final int i = (int) keys[s];
+			if (cell != previousCell) {
+				cells[occupied] = cell;
+				cellStart[occupied] = s;
+				occupied ++;
+				previousCell = cell;
+			}
+			sorted[s] = i;
+			sortedX[s] = particles.x(i);
+			sortedY[s] = particles.y(i);
+			sortedRadio[s] = particles.radio(i);
+		}
+		cellStart[occupied] = N;
+
+		fillTable();
+	}
+
+	private void fillTable() {
+		// keep the table at most half full, so probe sequences are short
+		int capacity = 2;
+		while (capacity < 2 * occupied) {
+			capacity <<= 1;
+		}
+		if (tableCells.length < capacity) {
+			tableCells = new int[capacity];
+			tableIndexes = new int[capacity];
+		}
+		tableMask = capacity - 1;
+		Arrays.fill(tableCells, 0, capacity, EMPTY);
+
+		for (int c = 0 ; c < occupied ; c++) {
+			int entry = hash(cells[c]);
+			while (tableCells[entry] != EMPTY) {
+				entry = (entry + 1) & tableMask;
+			}
+			tableCells[entry] = cells[c];
+			tableIndexes[entry] = c;
+		}
+	}
+
+	/**
+	 * @return index of the given cell between the occupied ones, or {@link CellStencil#NONE} if it is empty
+	 */
+	int indexOf(final int cell) {
+		int entry = hash(cell);
+		while (tableCells[entry] != EMPTY) {
+			if (tableCells[entry] == cell) {
+				return tableIndexes[entry];
+			}
+			entry = (entry + 1) & tableMask;
+		}
+		return CellStencil.NONE;
+	}
+
+	private int hash(final int cell) {
+		final int mix = cell * 0x9E3779B9;
+		return (mix ^ (mix >>> 16)) & tableMask;
+	}
+
+	/**
+	 * @return number of columns of the grid (Mx)
+	 */
+	int columns() {
+		return Mx;
+	}
+
+	/**
+	 * @return number of rows of the grid (My)
+	 */
+	int rows() {
+		return My;
+	}
+
+	/**
+	 * @return amount of occupied cells
+	 */
+	int occupiedCount() {
+		return occupied;
+	}
+
+	/**
+	 * @return id of the occupied cell at the given index
+	 */
+	int cell(final int index) {
+		return cells[index];
+	}
+
+	/**
+	 * @return index at {@link #sorted()} of the first slot of the occupied cell at the given index
+	 */
+	int start(final int index) {
+		return cellStart[index];
+	}
+
+	/**
+	 * @return index at {@link #sorted()} after the last slot of the occupied cell at the given index
+	 */
+	int end(final int index) {
+		return cellStart[index + 1];
+	}
+
+	/**
+	 * @return slots of all the binned particles, sorted by cell
+	 */
+	int[] sorted() {
+		return sorted;
+	}
+
+	/**
+	 * @return x of all the binned particles, on the same order as {@link #sorted()}
+	 */
+	double[] sortedX() {
+		return sortedX;
+	}
+
+	/**
+	 * @return y of all the binned particles, on the same order as {@link #sorted()}
+	 */
+	double[] sortedY() {
+		return sortedY;
+	}
+
+	/**
+	 * @return radio of all the binned particles, on the same order as {@link #sorted()}
+	 */
+	double[] sortedRadio() {
+		return sortedRadio;
+	}
+}
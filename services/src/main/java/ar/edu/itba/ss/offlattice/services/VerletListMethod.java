@@ -0,0 +1,211 @@
+package ar.edu.itba.ss.offlattice.services;
+
+import ar.edu.itba.ss.offlattice.interfaces.CellIndexMethod;
+import ar.edu.itba.ss.offlattice.interfaces.NeighbourSearch;
+import ar.edu.itba.ss.offlattice.interfaces.PairConsumer;
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+/**
+ * Neighbour search that keeps a Verlet list of candidate pairs between steps.
+ * <p>
+ * The list is built with a {@link CellIndexMethod}, using rc + skin as the interaction radius,
+ * and is reused until some particle has moved more than skin / 2 since then. Up to that moment, every pair
+ * at distance lower or equal than rc is still on the list, so each step only has to filter the candidates.
+ * <p>
+ * The grid is sized each time the list is built, so that L / M > (rc + skin + r1 + r2) / k on each axis, for the two
+ * greatest radios r1 and r2 and the cell index method's subdivision k. If a periodic limit is being considered and
+ * there are less than 2 * k + 1 cells on some axis, the list is built by brute force instead.
+ * <p>
+ * When a periodic limit is being considered, distances are measured with the minimum image convention,
+ * so it is required that L > 2 * (rc + skin + r1 + r2), on each axis.
+ * <p>
+ * Notice that an instance of this class must not be used by more than one thread at a time.
+ */
+public class VerletListMethod implements NeighbourSearch {
+	private static final Logger LOGGER = LoggerFactory.getLogger(VerletListMethod.class);
+
+	private final CellIndexMethod cellIndexMethod;
+	private final BruteForceMethodImpl bruteForce = new BruteForceMethodImpl();
+	private final double Lx;
+	private final double Ly;
+	private final double rc;
+	private final double skin;
+	private final boolean periodicLimit;
+
+	/* candidate pairs, saved as (i, j) slots on consecutive positions */
+	private int[] candidates = new int[0];
+	private int candidatesSize;
+	private final PairConsumer candidateSaver = (i, j, squaredDistance) -> addCandidate(i, j);
+
+	/* positions of each particle when the list was built */
+	private double[] builtX = new double[0];
+	private double[] builtY = new double[0];
+	private int builtSize = -1;
+
+	private long builds;
+
+	/**
+	 * @param L length of the side of the square containing all the particles. Must be positive.
+	 * @param rc max distance to consider that two particles collide. Must be non negative.
+	 * @param skin extra distance used when building the list. Must be non negative.
+	 * @param periodicLimit if the end of a limit cell should be consider as it were from the opposite side
+	 *
+	 * @throws IllegalArgumentException if rc < 0 or skin < 0 or L <= 0
+	 */
+	public VerletListMethod(final double L, final double rc, final double skin, final boolean periodicLimit) {
+		this(L, rc, skin, periodicLimit, new CellIndexMethodImpl());
+	}
+
+	/**
+	 * @param L length of the side of the square containing all the particles. Must be positive.
+	 * @param rc max distance to consider that two particles collide. Must be non negative.
+	 * @param skin extra distance used when building the list. Must be non negative.
+	 * @param periodicLimit if the end of a limit cell should be consider as it were from the opposite side
+	 * @param cellIndexMethod cell index method used to build the list
+	 *
+	 * @throws IllegalArgumentException if rc < 0 or skin < 0 or L <= 0
+	 */
+	public VerletListMethod(final double L, final double rc, final double skin, final boolean periodicLimit,
+	                        final CellIndexMethod cellIndexMethod) {
+		this(L, L, rc, skin, periodicLimit, cellIndexMethod);
+	}
+
+	/**
+	 * @param Lx length of the side of the rectangle containing all the particles, along the x axis. Must be positive.
+	 * @param Ly length of the side of the rectangle containing all the particles, along the y axis. Must be positive.
+	 * @param rc max distance to consider that two particles collide. Must be non negative.
+	 * @param skin extra distance used when building the list. Must be non negative.
+	 * @param periodicLimit if the end of a limit cell should be consider as it were from the opposite side
+	 * @param cellIndexMethod cell index method used to build the list
+	 *
+	 * @throws IllegalArgumentException if rc < 0 or skin < 0 or Lx <= 0 or Ly <= 0
+	 */
+	public VerletListMethod(final double Lx, final double Ly, final double rc, final double skin,
+	                        final boolean periodicLimit, final CellIndexMethod cellIndexMethod) {
+		if (rc < 0 || skin < 0 || Lx <= 0 || Ly <= 0) {
+			throw new IllegalArgumentException("Check that this is happening, but must not: rc < 0 or skin < 0 or Lx <= 0 or Ly <= 0");
+		}
+		this.Lx = Lx;
+		this.Ly = Ly;
+		this.rc = rc;
+		this.skin = skin;
+		this.periodicLimit = periodicLimit;
+		this.cellIndexMethod = cellIndexMethod;
+	}
+
+	@Override
+	public void forEachPair(final ParticleStore particles, final PairConsumer consumer) {
+		if (mustBuild(particles)) {
+			build(particles);
+		}
+
+		int i, j;
+		double dx, dy, squaredDistance, threshold;
+		for (int p = 0 ; p < candidatesSize ; p += 2) {
+			i = candidates[p];
+			j = candidates[p + 1];
+			dx = separation(particles.x(j) - particles.x(i), Lx);
+			dy = separation(particles.y(j) - particles.y(i), Ly);
+			squaredDistance = dx * dx + dy * dy;
+			// compare squared distances, so no square root is needed
+			threshold = rc + particles.radio(i) + particles.radio(j);
+			if (squaredDistance <= threshold * threshold) {
+				consumer.accept(i, j, squaredDistance);
+			}
+		}
+	}
+
+	/**
+	 * Forces the list to be built on the next call to {@link #forEachPair(ParticleStore, PairConsumer)}
+	 */
+	@Override
+	public void invalidate() {
+		builtSize = -1;
+	}
+
+	/**
+	 * @return how many times the list has been built
+	 */
+	public long builds() {
+		return builds;
+	}
+
+	private boolean mustBuild(final ParticleStore particles) {
+		if (builtSize != particles.size()) {
+			return true;
+		}
+
+		final double maxSquaredDisplacement = (skin / 2) * (skin / 2);
+		double dx, dy;
+		for (int i = 0 ; i < builtSize ; i++) {
+			dx = separation(particles.x(i) - builtX[i], Lx);
+			dy = separation(particles.y(i) - builtY[i], Ly);
+			if (dx * dx + dy * dy > maxSquaredDisplacement) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void build(final ParticleStore particles) {
+		final int N = particles.size();
+		if (builtX.length < N) {
+			builtX = new double[N];
+			builtY = new double[N];
+		}
+		for (int i = 0 ; i < N ; i++) {
+			builtX[i] = particles.x(i);
+			builtY[i] = particles.y(i);
+		}
+		builtSize = N;
+
+		double r1 = 0, r2 = 0; // r1 >= r2
+		for (int i = 0 ; i < N ; i++) {
+			if (particles.radio(i) > r1) {
+				r2 = r1;
+				r1 = particles.radio(i);
+			} else if (particles.radio(i) > r2) {
+				r2 = particles.radio(i);
+			}
+		}
+		// cells are split as the cell index method expects them (see CellIndexMethod#subdivision())
+		final int k = cellIndexMethod.subdivision();
+		final int Mx = CellIndexMethods.maxM(k * Lx, rc + skin, r1, r2);
+		final int My = CellIndexMethods.maxM(k * Ly, rc + skin, r1, r2);
+
+		candidatesSize = 0;
+		if (periodicLimit && (Mx < 2 * k + 1 || My < 2 * k + 1)) {
+			// the stencil would wrap over the same cells more than once
+			bruteForce.forEachPair(particles, Lx, Ly, rc + skin, periodicLimit, candidateSaver);
+		} else {
+			cellIndexMethod.forEachPair(particles, Lx, Ly, Mx, My, rc + skin, periodicLimit, candidateSaver);
+		}
+
+		builds ++;
+		LOGGER.debug("Verlet list #{} built with {} candidate pairs", builds, candidatesSize / 2);
+	}
+
+	private void addCandidate(final int i, final int j) {
+		if (candidatesSize == candidates.length) {
+			candidates = Arrays.copyOf(candidates, Math.max(2 * candidates.length, 64));
+		}
+		candidates[candidatesSize++] = i;
+		candidates[candidatesSize++] = j;
+	}
+
+	/**
+	 * @param d difference between two coordinates
+	 * @param L length of the side of the rectangle along the coordinates' axis
+	 * @return the given difference, taking the nearest periodic image if a periodic limit is being considered
+	 */
+	private double separation(final double d, final double L) {
+		if (periodicLimit) {
+			return d - L * Math.rint(d / L);
+		}
+		return d;
+	}
+}
@@ -0,0 +1,149 @@
+package ar.edu.itba.ss.offlattice.services;
+
+import ar.edu.itba.ss.offlattice.interfaces.BruteForceMethod;
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
+import ar.edu.itba.ss.offlattice.models.Point;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+public class BruteForceMethodImplTest {
+
+	private final BruteForceMethod bruteForceMethod = new BruteForceMethodImpl();
+
+	@Before
+	public void restartPointIdGen() {
+		Point.resetIdGen();
+	}
+
+	@Test
+	public void runWithNoPeriodicLimitTest() {
+		final Point p1 = Point.builder(1, 1).radio(0.5).build();
+		final Point p2 = Point.builder(2.5, 1).radio(0.5).build();
+		final Point p3 = Point.builder(5.5, 1).radio(0.5).build();
+
+		final Set<Point> points = new HashSet<>();
+		points.add(p1);
+		points.add(p2);
+		points.add(p3);
+
+		final Map<Point, Set<Point>> processedPoints = bruteForceMethod.run(points, 6, 1.5, false);
+
+		Assert.assertEquals(setOf(p2), processedPoints.get(p1));
+		Assert.assertEquals(setOf(p1), processedPoints.get(p2));
+		Assert.assertEquals(setOf(), processedPoints.get(p3));
+	}
+
+	@Test
+	public void runWithPeriodicLimitTest() {
+		final Point p1 = Point.builder(1, 1).radio(0.5).build();
+		final Point p2 = Point.builder(2.5, 1).radio(0.5).build();
+		final Point p3 = Point.builder(5.5, 1).radio(0.5).build(); // 1.5 away from p1, through the limit
+
+		final Set<Point> points = new HashSet<>();
+		points.add(p1);
+		points.add(p2);
+		points.add(p3);
+
+		final Map<Point, Set<Point>> processedPoints = bruteForceMethod.run(points, 6, 1.5, true);
+
+		Assert.assertEquals(setOf(p2, p3), processedPoints.get(p1));
+		Assert.assertEquals(setOf(p1), processedPoints.get(p2));
+		Assert.assertEquals(setOf(p1), processedPoints.get(p3));
+	}
+
+	@Test
+	public void parallelSameAsSequentialTest() {
+		final ParticleStore particles = randomParticles(new Random(1), 5000, 50, 50, 0.25);
+
+		for (final boolean periodicLimit : new boolean[] { true, false }) {
+			final List<String> expected = new ArrayList<>();
+			new BruteForceMethodImpl().forEachPair(particles, 50, 50, 1, periodicLimit,
+							(i, j, squaredDistance) -> expected.add(i + "," + j + "," + squaredDistance));
+
+			final BruteForceMethodImpl parallel = new BruteForceMethodImpl(new ForkJoinPool(4));
+			// twice, so as to check that buffers are correctly reused
+			for (int run = 0 ; run < 2 ; run++) {
+				final List<String> actual = new ArrayList<>();
+				parallel.forEachPair(particles, 50, 50, 1, periodicLimit,
+								(i, j, squaredDistance) -> actual.add(i + "," + j + "," + squaredDistance));
+				Assert.assertEquals(expected, actual);
+			}
+		}
+	}
+
+	@Test
+	public void cellIndexMethodSameAsBruteForceWithPeriodicLimitTest() {
+		assertCellIndexMethodSameAsBruteForce(true);
+	}
+
+	@Test
+	public void cellIndexMethodSameAsBruteForceWithNoPeriodicLimitTest() {
+		assertCellIndexMethodSameAsBruteForce(false);
+	}
+
+	/**
+	 * Runs the cell index method over random systems of 10^4 particles, with random sides, radios and
+	 * subdivisions, and checks that it finds exactly the same pairs as the brute force method
+	 */
+	private void assertCellIndexMethodSameAsBruteForce(final boolean periodicLimit) {
+		final Random random = new Random(periodicLimit ? 1 : 2);
+		final BruteForceMethodImpl bruteForce = new BruteForceMethodImpl(new ForkJoinPool(4));
+
+		for (int run = 0 ; run < 4 ; run++) {
+			final double Lx = 40 + random.nextDouble() * 80;
+			final double Ly = 40 + random.nextDouble() * 80;
+			final double rc = 0.5 + random.nextDouble();
+			final double maxRadio = random.nextDouble() * 0.5;
+			final int subdivision = 1 + random.nextInt(3);
+			final ParticleStore particles = randomParticles(random, 10000, Lx, Ly, maxRadio);
+
+			final Map<Long, Double> expected = new HashMap<>();
+			bruteForce.forEachPair(particles, Lx, Ly, rc, periodicLimit,
+							(i, j, squaredDistance) -> expected.put(pairOf(i, j), squaredDistance));
+			Assert.assertFalse(expected.isEmpty());
+
+			final int Mx = CellIndexMethods.maxM(subdivision * Lx, rc, maxRadio, maxRadio);
+			final int My = CellIndexMethods.maxM(subdivision * Ly, rc, maxRadio, maxRadio);
+			final Map<Long, Double> actual = new HashMap<>();
+			new CellIndexMethodImpl(subdivision).forEachPair(particles, Lx, Ly, Mx, My, rc, periodicLimit,
+							(i, j, squaredDistance) -> Assert.assertNull(actual.put(pairOf(i, j), squaredDistance)));
+
+			Assert.assertEquals(expected.keySet(), actual.keySet());
+			for (final Map.Entry<Long, Double> pair : expected.entrySet()) {
+				Assert.assertEquals(pair.getValue(), actual.get(pair.getKey()), 1e-9);
+			}
+		}
+	}
+
+	private static ParticleStore randomParticles(final Random random, final int N, final double Lx, final double Ly,
+	                                             final double maxRadio) {
+		final ParticleStore particles = new ParticleStore(N);
+		for (int i = 0 ; i < N ; i++) {
+			particles.set(i, i + 1, random.nextDouble() * Lx, random.nextDouble() * Ly,
+							random.nextDouble() * maxRadio, 0, 0);
+		}
+		return particles;
+	}
+
+	private static long pairOf(final int i, final int j) {
+		return ((long) Math.min(i, j) << 32) | Math.max(i, j);
+	}
+
+	private static Set<Point> setOf(final Point... points) {
+		final Set<Point> set = new HashSet<>();
+		for (final Point point : points) {
+			set.add(point);
+		}
+		return set;
+	}
+}
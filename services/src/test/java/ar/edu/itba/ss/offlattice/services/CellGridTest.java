@@ -0,0 +1,183 @@
+package ar.edu.itba.ss.offlattice.services;
+
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+public class CellGridTest {
+
+	@Test
+	public void binTest() {
+		final ParticleStore particles = new ParticleStore(4);
+		particles.set(0, 1, 1, 1, 0, 0, 0); // row 1, col 0
+		particles.set(1, 2, 5, 5, 0, 0, 0); // row 0, col 1
+		particles.set(2, 3, 2, 0.5, 0, 0, 0); // row 1, col 0
+		particles.set(3, 4, 4, 1, 0, 0, 0); // row 1, col 1
+
+		final CellGrid grid = new CellGrid();
+		grid.bin(particles, 6, 2);
+
+		Assert.assertTrue(grid.isEmpty(0));
+		assertCell(grid, 1, 1);
+		assertCell(grid, 2, 0, 2);
+		assertCell(grid, 3, 3);
+	}
+
+	@Test
+	public void rebinWithLessCellsTest() {
+		final ParticleStore particles = new ParticleStore(2);
+		particles.set(0, 1, 1, 1, 0, 0, 0);
+		particles.set(1, 2, 5, 5, 0, 0, 0);
+
+		final CellGrid grid = new CellGrid();
+		grid.bin(particles, 6, 3);
+		grid.bin(particles, 6, 1);
+
+		Assert.assertEquals(1, grid.cellCount());
+		assertCell(grid, 0, 0, 1);
+	}
+
+	@Test
+	public void sortedAttributesTest() {
+		final ParticleStore particles = new ParticleStore(3);
+		particles.set(0, 1, 5, 5, 0.1, 0, 0); // row 0, col 1
+		particles.set(1, 2, 1, 1, 0.2, 0, 0); // row 1, col 0
+		particles.set(2, 3, 4, 4, 0.3, 0, 0); // row 0, col 1
+
+		final CellGrid grid = new CellGrid();
+		grid.bin(particles, 6, 2);
+
+		for (int s = 0 ; s < particles.size() ; s++) {
+			final int i = grid.sorted()[s];
+			Assert.assertEquals(particles.x(i), grid.sortedX()[s], 0);
+			Assert.assertEquals(particles.y(i), grid.sortedY()[s], 0);
+			Assert.assertEquals(particles.radio(i), grid.sortedRadio()[s], 0);
+		}
+	}
+
+	@Test
+	public void incrementalBinTest() {
+		final double L = 10;
+		final int M = 7;
+		final Random random = new Random(1);
+		final ParticleStore particles = new ParticleStore(300);
+		for (int i = 0 ; i < particles.size() ; i++) {
+			particles.set(i, i + 1, random.nextDouble() * L, random.nextDouble() * L, 0.01, 0, 0);
+		}
+
+		final CellGrid grid = new CellGrid();
+		grid.bin(particles, L, M);
+
+		for (int step = 0 ; step < 20 ; step++) {
+			// move a few particles a little, keeping them inside the square
+			for (int i = 0 ; i < particles.size() ; i += 5) {
+				particles.setPosition(i, (particles.x(i) + random.nextDouble() * 0.4 + L) % L,
+								(particles.y(i) - random.nextDouble() * 0.4 + L) % L);
+			}
+			grid.bin(particles, L, M);
+
+			final CellGrid expected = new CellGrid();
+			expected.bin(particles, L, M);
+			for (int cell = 0 ; cell < M * M ; cell++) {
+				Assert.assertEquals(slotsOf(expected, cell), slotsOf(grid, cell));
+			}
+			for (int s = 0 ; s < particles.size() ; s++) {
+				final int i = grid.sorted()[s];
+				Assert.assertEquals(particles.x(i), grid.sortedX()[s], 0);
+				Assert.assertEquals(particles.y(i), grid.sortedY()[s], 0);
+				Assert.assertEquals(particles.radio(i), grid.sortedRadio()[s], 0);
+				Assert.assertEquals(grid.cellOfSlot(i), CellGrid.cellOf(L / M, M, particles.x(i), particles.y(i)));
+			}
+		}
+	}
+
+	@Test
+	public void incrementalBinAcrossPeriodicBordersTest() {
+		final double L = 20;
+		final int M = 20;
+		final Random random = new Random(2);
+		final ParticleStore particles = new ParticleStore(200);
+		for (int i = 0 ; i < particles.size() ; i++) {
+			particles.set(i, i + 1, random.nextDouble() * L, random.nextDouble() * L, 0.01, 0, 0);
+		}
+		// one particle right below the top border, on the first row, and another one right at the right border,
+		// on the last column; both of them will wrap across their periodic border, and back
+		particles.setPosition(0, 3.5, L - 0.05);
+		particles.setPosition(1, L - 0.05, 7.5);
+
+		final CellGrid grid = new CellGrid();
+		grid.bin(particles, L, M);
+
+		for (int step = 0 ; step < 6 ; step++) {
+			// the first one goes through all the rows when crossing its border, which costs more than rebuilding
+			// the grid; the second one only goes through the cells of its row, so the grid is updated
+			if (step < 2) {
+				particles.setPosition(0, 3.5, step % 2 == 0 ? 0.05 : L - 0.05);
+			}
+			particles.setPosition(1, step % 2 == 0 ? 0.05 : L - 0.05, 7.5);
+			// and a few others move a little
+			for (int i = 2 ; i < particles.size() ; i += 10) {
+				particles.setPosition(i, (particles.x(i) + 0.3) % L, particles.y(i));
+			}
+			grid.bin(particles, L, M);
+
+			final CellGrid expected = new CellGrid();
+			expected.bin(particles, L, M);
+			for (int cell = 0 ; cell < M * M ; cell++) {
+				Assert.assertEquals(slotsOf(expected, cell), slotsOf(grid, cell));
+			}
+			for (int s = 0 ; s < particles.size() ; s++) {
+				final int i = grid.sorted()[s];
+				Assert.assertEquals(particles.x(i), grid.sortedX()[s], 0);
+				Assert.assertEquals(particles.y(i), grid.sortedY()[s], 0);
+				Assert.assertEquals(grid.cellOfSlot(i), CellGrid.cellOf(L / M, M, particles.x(i), particles.y(i)));
+			}
+		}
+	}
+
+	@Test
+	public void rebinWithOtherParticlesTest() {
+		final ParticleStore particles = new ParticleStore(2);
+		particles.set(0, 1, 1, 1, 0, 0, 0);
+		particles.set(1, 2, 5, 5, 0, 0, 0);
+
+		final CellGrid grid = new CellGrid();
+		grid.bin(particles, 6, 2);
+
+		// same positions, but the particles swapped their slots
+		final ParticleStore swapped = new ParticleStore(2);
+		swapped.set(0, 2, 1, 1, 0.5, 0, 0);
+		swapped.set(1, 1, 5, 5, 0.25, 0, 0);
+		grid.bin(swapped, 6, 2);
+
+		Assert.assertEquals(0.5, grid.sortedRadio()[grid.start(2)], 0);
+		Assert.assertEquals(0.25, grid.sortedRadio()[grid.start(1)], 0);
+	}
+
+	@Test(expected=IndexOutOfBoundsException.class)
+	public void outOfBoundsTest() {
+		final ParticleStore particles = new ParticleStore(1);
+		particles.set(0, 1, 6, 1, 0, 0, 0);
+
+		new CellGrid().bin(particles, 6, 2);
+	}
+
+	private Set<Integer> slotsOf(final CellGrid grid, final int cell) {
+		final Set<Integer> slots = new HashSet<>();
+		for (int s = grid.start(cell) ; s < grid.end(cell) ; s++) {
+			slots.add(grid.sorted()[s]);
+		}
+		return slots;
+	}
+
+	private void assertCell(final CellGrid grid, final int cell, final int... expectedSlots) {
+		Assert.assertEquals(expectedSlots.length, grid.end(cell) - grid.start(cell));
+		for (int k = 0 ; k < expectedSlots.length ; k++) {
+			Assert.assertEquals(expectedSlots[k], grid.sorted()[grid.start(cell) + k]);
+		}
+	}
+}
@@ -1,14 +1,18 @@
 package ar.edu.itba.ss.offlattice.services;
 
 import ar.edu.itba.ss.offlattice.interfaces.CellIndexMethod;
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
 import ar.edu.itba.ss.offlattice.models.Point;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 public class CellIndexMethodImplTest {
@@ -146,6 +150,204 @@ public class CellIndexMethodImplTest {
 		Assert.assertEquals(expectedProcessedPoints, processedPoints);
 	}
 
+	@Test
+	public void forEachPairWithNoPeriodicLimitTest() {
+		final double r = 0.5;
+		
+		final ParticleStore particles = new ParticleStore(5);
+		particles.set(0, 1, 1, 1, r, 0, 0);
+		particles.set(1, 2, 2.5, 1, r, 0, 0);
+		particles.set(2, 3, 4, 1, r, 0, 0);
+		particles.set(3, 4, 2.5, 2.5, r, 0, 0);
+		particles.set(4, 5, 4, 5.5, r, 0, 0);
+		
+		final Map<Set<Integer>, Double> pairs = new HashMap<>();
+		cellIndexMethod.forEachPair(particles, 6d, 2, 1.5, false, (i, j, squaredDistance) -> {
+			final Set<Integer> pair = new HashSet<>();
+			pair.add(i);
+			pair.add(j);
+			Assert.assertNull("each pair must be given only once", pairs.put(pair, squaredDistance));
+		});
+		
+		Assert.assertEquals(5, pairs.size());
+		Assert.assertEquals(2.25, pairs.get(pairOf(0, 1)), 1e-7);
+		Assert.assertEquals(4.5, pairs.get(pairOf(0, 3)), 1e-7);
+		Assert.assertEquals(2.25, pairs.get(pairOf(1, 2)), 1e-7);
+		Assert.assertEquals(2.25, pairs.get(pairOf(1, 3)), 1e-7);
+		Assert.assertEquals(4.5, pairs.get(pairOf(2, 3)), 1e-7);
+	}
+	
+	@Test
+	public void sparseGridSameAsDenseWithPeriodicLimitTest() {
+		assertSparseGridSameAsDense(true);
+	}
+	
+	@Test
+	public void sparseGridSameAsDenseWithNoPeriodicLimitTest() {
+		assertSparseGridSameAsDense(false);
+	}
+	
+	private void assertSparseGridSameAsDense(final boolean periodicLimit) {
+		final double L = 100;
+		final int M = 50;
+		final double rc = 1.5;
+		final Random random = new Random(1);
+		
+		// clustered on the corners, so there are pairs crossing the limits
+		final ParticleStore particles = new ParticleStore(100);
+		for (int i = 0 ; i < particles.size() ; i++) {
+			particles.set(i, i + 1, (random.nextDouble() * 10 - 5 + L) % L, (random.nextDouble() * 10 - 5 + L) % L,
+							0.25, 0, 0);
+		}
+		Assert.assertTrue(CellIndexMethodImpl.isSparse(particles.size(), M, M));
+		
+		final CellIndexMethodImpl dense = new CellIndexMethodImpl();
+		final List<String> expected = new ArrayList<>();
+		dense.prepare(particles, L, L, M, M, rc, periodicLimit);
+		dense.sweep(rc, 0, M, (i, j, squaredDistance) -> expected.add(i + "," + j + "," + squaredDistance));
+		
+		final List<String> actual = new ArrayList<>();
+		new CellIndexMethodImpl().forEachPair(particles, L, M, rc, periodicLimit,
+						(i, j, squaredDistance) -> actual.add(i + "," + j + "," + squaredDistance));
+		
+		Assert.assertFalse(expected.isEmpty());
+		Assert.assertEquals(expected, actual);
+	}
+	
+	@Test
+	public void rectangleSameAsBruteForceWithPeriodicLimitTest() {
+		assertRectangleSameAsBruteForce(true);
+	}
+	
+	@Test
+	public void rectangleSameAsBruteForceWithNoPeriodicLimitTest() {
+		assertRectangleSameAsBruteForce(false);
+	}
+	
+	private void assertRectangleSameAsBruteForce(final boolean periodicLimit) {
+		final double Lx = 30;
+		final double Ly = 8;
+		final int Mx = 12;
+		final int My = 3;
+		final double rc = 1;
+		final double r = 0.25;
+		final Random random = new Random(1);
+		
+		final ParticleStore particles = new ParticleStore(300);
+		for (int i = 0 ; i < particles.size() ; i++) {
+			particles.set(i, i + 1, random.nextDouble() * Lx, random.nextDouble() * Ly, r, 0, 0);
+		}
+		
+		final Set<Set<Integer>> expected = new HashSet<>();
+		for (int i = 0 ; i < particles.size() ; i++) {
+			for (int j = i + 1 ; j < particles.size() ; j++) {
+				double dx = particles.x(j) - particles.x(i);
+				double dy = particles.y(j) - particles.y(i);
+				if (periodicLimit) {
+					dx -= Lx * Math.rint(dx / Lx);
+					dy -= Ly * Math.rint(dy / Ly);
+				}
+				if (Math.sqrt(dx * dx + dy * dy) - 2 * r <= rc) {
+					expected.add(pairOf(i, j));
+				}
+			}
+		}
+		
+		final Set<Set<Integer>> actual = new HashSet<>();
+		cellIndexMethod.forEachPair(particles, Lx, Ly, Mx, My, rc, periodicLimit,
+						(i, j, squaredDistance) -> Assert.assertTrue(actual.add(pairOf(i, j))));
+		
+		Assert.assertFalse(expected.isEmpty());
+		Assert.assertEquals(expected, actual);
+	}
+	
+	@Test
+	public void fewCellsSameAsBruteForceWithPeriodicLimitTest() {
+		// with 2 cells on an axis, up and down (or right and left) wrap to the same cells, with different offsets
+		final double Lx = 5;
+		final double Ly = 3.5;
+		final double rc = 1;
+		final double r = 0.25;
+		final Random random = new Random(1);
+		
+		final ParticleStore particles = new ParticleStore(60);
+		for (int i = 0 ; i < particles.size() ; i++) {
+			particles.set(i, i + 1, random.nextDouble() * Lx, random.nextDouble() * Ly, r, 0, 0);
+		}
+		
+		final Set<Set<Integer>> expected = new HashSet<>();
+		new BruteForceMethodImpl().forEachPair(particles, Lx, Ly, rc, true,
+						(i, j, squaredDistance) -> Assert.assertTrue(expected.add(pairOf(i, j))));
+		Assert.assertFalse(expected.isEmpty());
+		
+		for (int Mx = 2 ; Mx <= 3 ; Mx++) {
+			final Set<Set<Integer>> actual = new HashSet<>();
+			new CellIndexMethodImpl().forEachPair(particles, Lx, Ly, Mx, 2, rc, true,
+							(i, j, squaredDistance) -> Assert.assertTrue(actual.add(pairOf(i, j))));
+			Assert.assertEquals(expected, actual);
+		}
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void singleColumnWithPeriodicLimitTest() {
+		new CellIndexMethodImpl().forEachPair(new ParticleStore(1), 5, 3.5, 1, 2, 1, true, (i, j, squaredDistance) -> {});
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void singleRowWithPeriodicLimitTest() {
+		new CellIndexMethodImpl().forEachPair(new ParticleStore(1), 5, 3.5, 2, 1, 1, true, (i, j, squaredDistance) -> {});
+	}
+	
+	@Test
+	public void subdividedSameAsNotSubdividedWithPeriodicLimitTest() {
+		assertSubdividedSameAsNotSubdivided(true);
+	}
+	
+	@Test
+	public void subdividedSameAsNotSubdividedWithNoPeriodicLimitTest() {
+		assertSubdividedSameAsNotSubdivided(false);
+	}
+	
+	private void assertSubdividedSameAsNotSubdivided(final boolean periodicLimit) {
+		final double Lx = 40;
+		final double Ly = 25;
+		final double rc = 1;
+		final double reach = rc + 0.3 + 0.3;
+		final Random random = new Random(1);
+		
+		final ParticleStore particles = new ParticleStore(2000);
+		for (int i = 0 ; i < particles.size() ; i++) {
+			particles.set(i, i + 1, random.nextDouble() * Lx, random.nextDouble() * Ly, random.nextDouble() * 0.3, 0, 0);
+		}
+		
+		final Set<Set<Integer>> expected = new HashSet<>();
+		cellIndexMethod.forEachPair(particles, Lx, Ly, CellIndexMethods.maxM(Lx, rc, 0.3, 0.3),
+						CellIndexMethods.maxM(Ly, rc, 0.3, 0.3), rc, periodicLimit,
+						(i, j, squaredDistance) -> expected.add(pairOf(i, j)));
+		Assert.assertFalse(expected.isEmpty());
+		
+		for (int k = 2 ; k <= 3 ; k++) {
+			final int Mx = (int) Math.floor(k * Lx / reach);
+			final int My = (int) Math.floor(k * Ly / reach);
+			final Set<Set<Integer>> actual = new HashSet<>();
+			new CellIndexMethodImpl(k).forEachPair(particles, Lx, Ly, Mx, My, rc, periodicLimit,
+							(i, j, squaredDistance) -> Assert.assertTrue(actual.add(pairOf(i, j))));
+			Assert.assertEquals(expected, actual);
+		}
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void subdividedWithTooFewCellsTest() {
+		new CellIndexMethodImpl(2).forEachPair(new ParticleStore(1), 4, 4, 1, true, (i, j, squaredDistance) -> {});
+	}
+	
+	private static Set<Integer> pairOf(final int i, final int j) {
+		final Set<Integer> pair = new HashSet<>();
+		pair.add(i);
+		pair.add(j);
+		return pair;
+	}
+
 	@Test(expected=IndexOutOfBoundsException.class)
 	public void testUpIndexOutOfBoundsException() {
 		final double r = 0.5;
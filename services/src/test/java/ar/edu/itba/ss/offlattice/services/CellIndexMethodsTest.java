@@ -1,9 +1,12 @@
 package ar.edu.itba.ss.offlattice.services;
 
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
 import ar.edu.itba.ss.offlattice.models.Point;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class CellIndexMethodsTest {
 
@@ -23,4 +26,25 @@ public class CellIndexMethodsTest {
 
 		assertEquals(0, CellIndexMethods.distanceBetween(p1, p2), 1e-7);
 	}
+
+	@Test
+	public void testMConditionIsMet() {
+		final ParticleStore particles = new ParticleStore(3);
+		particles.set(0, 1, 1, 1, 0.5, 0, 0);
+		particles.set(1, 2, 2, 2, 0.25, 0, 0);
+		particles.set(2, 3, 3, 3, 1, 0, 0);
+
+		// biggest pair is 1 + 0.5, so L/M must be greater than rc + 1.5
+		assertTrue(CellIndexMethods.mConditionIsMet(10, 3, 1.8, particles));
+		assertFalse(CellIndexMethods.mConditionIsMet(10, 4, 1, particles));
+		assertFalse(CellIndexMethods.mConditionIsMet(10, 4, 1, particles.toPoints()));
+		assertTrue(CellIndexMethods.mConditionIsMet(10, 100, 1, new ParticleStore(1)));
+	}
+
+	@Test
+	public void testMaxM() {
+		assertEquals(3, CellIndexMethods.maxM(10, 1.8, 1, 0.5));
+		assertEquals(4, CellIndexMethods.maxM(10, 1, 0.5, 0.5)); // L/M = 2.5 > 2, but L/5 = 2 is not
+		assertEquals(1, CellIndexMethods.maxM(10, 20, 0, 0));
+	}
 }
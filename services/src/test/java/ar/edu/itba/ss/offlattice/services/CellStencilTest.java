@@ -0,0 +1,81 @@
+package ar.edu.itba.ss.offlattice.services;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CellStencilTest {
+
+	@Test
+	public void periodicCornerTest() {
+		final CellStencil stencil = new CellStencil();
+		stencil.update(9, 3, true);
+
+		// top right corner: row 0, col 2
+		Assert.assertEquals(5, stencil.directions());
+		assertEntry(stencil, 0, 2, 0, 2, 0, 0); // itself
+		assertEntry(stencil, 0, 2, 1, 8, 0, 9); // up => bottom row
+		assertEntry(stencil, 0, 2, 2, 6, 9, 9); // up-right => bottom row, first column
+		assertEntry(stencil, 0, 2, 3, 0, 9, 0); // right => first column
+		assertEntry(stencil, 0, 2, 4, 3, 9, 0); // down-right => next row, first column
+	}
+
+	@Test
+	public void nonPeriodicCornerTest() {
+		final CellStencil stencil = new CellStencil();
+		stencil.update(9, 3, false);
+
+		// bottom left corner: row 2, col 0
+		assertEntry(stencil, 2, 0, 0, 6, 0, 0); // itself
+		assertEntry(stencil, 2, 0, 1, 3, 0, 0); // up
+		assertEntry(stencil, 2, 0, 2, 4, 0, 0); // up-right
+		assertEntry(stencil, 2, 0, 3, 7, 0, 0); // right
+		Assert.assertEquals(CellStencil.NONE, stencil.otherCell(2, 0, 4)); // down-right does not exist
+	}
+
+	@Test
+	public void periodicRectangleCornerTest() {
+		final CellStencil stencil = new CellStencil();
+		stencil.update(12, 4, 4, 2, true); // 4 columns of side 3 and 2 rows of side 2
+
+		// top right corner: row 0, col 3
+		assertEntry(stencil, 0, 3, 0, 3, 0, 0); // itself
+		assertEntry(stencil, 0, 3, 1, 7, 0, 4); // up => bottom row
+		assertEntry(stencil, 0, 3, 2, 4, 12, 4); // up-right => bottom row, first column
+		assertEntry(stencil, 0, 3, 3, 0, 12, 0); // right => first column
+		assertEntry(stencil, 0, 3, 4, 4, 12, 0); // down-right => next row, first column
+	}
+
+	@Test
+	public void subdividedTest() {
+		final CellStencil stencil = new CellStencil();
+
+		// cells of side 1, with a reach of 2: no cell is far enough to be pruned
+		stencil.update(10, 10, 10, 10, true, 2, 2);
+		Assert.assertEquals(1 + 2 + 2 * 5, stencil.directions());
+		assertEntry(stencil, 0, 9, 0, 9, 0, 0); // itself
+		assertEntry(stencil, 0, 9, 1, 89, 0, 10); // 2 up => second row from the bottom
+		assertEntry(stencil, 0, 9, 2, 99, 0, 10); // up => bottom row
+		assertEntry(stencil, 0, 9, 3, 80, 10, 10); // 2 up, right => second row from the bottom, first column
+		assertEntry(stencil, 0, 9, 12, 21, 10, 0); // 2 down, 2 right => third row, second column
+
+		// cells of side 1, with a reach of 2.5: corners of the 3 cells' span are sqrt(8) away, so they are pruned
+		stencil.update(10, 10, 10, 10, true, 3, 2.5);
+		Assert.assertEquals(1 + 3 + 3 * 7 - 2, stencil.directions());
+	}
+
+	@Test
+	public void rebuildOnGridChangeTest() {
+		final CellStencil stencil = new CellStencil();
+		stencil.update(9, 3, false);
+		stencil.update(9, 3, true);
+
+		Assert.assertEquals(0, stencil.otherCell(0, 2, 3));
+	}
+
+	private static void assertEntry(final CellStencil stencil, final int row, final int col, final int direction,
+	                                final int otherCell, final double xOffset, final double yOffset) {
+		Assert.assertEquals(otherCell, stencil.otherCell(row, col, direction));
+		Assert.assertEquals(xOffset, stencil.xOffset(col, direction), 0);
+		Assert.assertEquals(yOffset, stencil.yOffset(row, direction), 0);
+	}
+}
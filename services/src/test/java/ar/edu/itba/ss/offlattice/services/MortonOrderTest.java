@@ -0,0 +1,31 @@
+package ar.edu.itba.ss.offlattice.services;
+
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MortonOrderTest {
+
+	@Test
+	public void codeTest() {
+		Assert.assertEquals(0, MortonOrder.code(0, 0));
+		Assert.assertEquals(1, MortonOrder.code(1, 0));
+		Assert.assertEquals(2, MortonOrder.code(0, 1));
+		Assert.assertEquals(3, MortonOrder.code(1, 1));
+		Assert.assertEquals(0b1010, MortonOrder.code(0, 3));
+		Assert.assertEquals(0x3FFFFFFFL, MortonOrder.code(0x7FFF, 0x7FFF));
+	}
+
+	@Test
+	public void sortTest() {
+		final ParticleStore particles = new ParticleStore(4);
+		particles.set(0, 1, 9, 9, 0, 0, 0); // top right quadrant
+		particles.set(1, 2, 1, 1, 0, 0, 0); // bottom left quadrant
+		particles.set(2, 3, 1, 9, 0, 0, 0); // top left quadrant
+		particles.set(3, 4, 9, 1, 0, 0, 0); // bottom right quadrant
+
+		final int[] order = new MortonOrder().sort(particles, 10);
+
+		Assert.assertArrayEquals(new int[] {1, 3, 2, 0}, order);
+	}
+}
@@ -0,0 +1,68 @@
+package ar.edu.itba.ss.offlattice.services;
+
+import ar.edu.itba.ss.offlattice.interfaces.NeighbourSearch;
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+public class NeighbourSearchTunerTest {
+
+	@Test
+	public void bruteForceForFewParticlesTest() {
+		// fast enough for a Verlet list to be rebuilt on each step
+		final ParticleStore particles = randomParticles(40, 20, 0, 0.5);
+
+		final NeighbourSearchTuner tuner = new NeighbourSearchTuner(20, 20, 1, true, null, 0);
+		assertSameAsBruteForce(tuner.tune(particles), particles, 20, true);
+		Assert.assertEquals("brute force", tuner.choice());
+	}
+
+	@Test
+	public void cellIndexMethodForManyParticlesTest() {
+		final ParticleStore particles = randomParticles(20000, 100, 0, 0.03);
+
+		final NeighbourSearchTuner tuner = new NeighbourSearchTuner(100, 100, 1, true, null, 0);
+		tuner.tune(particles);
+		Assert.assertTrue(tuner.choice(), tuner.choice().startsWith("cell index method"));
+	}
+
+	@Test
+	public void calibratedChoiceFindsEveryPairTest() {
+		final ParticleStore particles = randomParticles(3000, 40, 0.2, 0.03);
+
+		for (final boolean periodicLimit : new boolean[] { true, false }) {
+			final NeighbourSearchTuner tuner = new NeighbourSearchTuner(40, 40, 1, periodicLimit, null, 2);
+			assertSameAsBruteForce(tuner.tune(particles), particles, 40, periodicLimit);
+		}
+	}
+
+	private static ParticleStore randomParticles(final int N, final double L, final double maxRadio,
+	                                             final double speed) {
+		final Random random = new Random(1);
+		final ParticleStore particles = new ParticleStore(N);
+		for (int i = 0 ; i < N ; i++) {
+			particles.set(i, i + 1, random.nextDouble() * L, random.nextDouble() * L,
+							random.nextDouble() * maxRadio, speed, 0);
+		}
+		return particles;
+	}
+
+	private static void assertSameAsBruteForce(final NeighbourSearch neighbourSearch, final ParticleStore particles,
+	                                           final double L, final boolean periodicLimit) {
+		final Set<Long> expected = new HashSet<>();
+		new BruteForceMethodImpl().forEachPair(particles, L, L, 1, periodicLimit,
+						(i, j, squaredDistance) -> expected.add(pairOf(i, j)));
+
+		final Set<Long> actual = new HashSet<>();
+		neighbourSearch.forEachPair(particles, (i, j, squaredDistance) -> Assert.assertTrue(actual.add(pairOf(i, j))));
+		Assert.assertEquals(expected, actual);
+	}
+
+	private static long pairOf(final int i, final int j) {
+		return ((long) Math.min(i, j) << 32) | Math.max(i, j);
+	}
+}
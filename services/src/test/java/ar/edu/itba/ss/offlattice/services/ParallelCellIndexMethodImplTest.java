@@ -0,0 +1,57 @@
+package ar.edu.itba.ss.offlattice.services;
+
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class ParallelCellIndexMethodImplTest {
+
+	@Test
+	public void sameAsSequentialWithPeriodicLimitTest() {
+		assertSameAsSequential(true);
+	}
+
+	@Test
+	public void sameAsSequentialWithNoPeriodicLimitTest() {
+		assertSameAsSequential(false);
+	}
+
+	@Test
+	public void subdividedSameAsSequentialTest() {
+		assertSameAsSequential(true, 2);
+	}
+
+	private void assertSameAsSequential(final boolean periodicLimit) {
+		assertSameAsSequential(periodicLimit, 1);
+	}
+
+	private void assertSameAsSequential(final boolean periodicLimit, final int subdivision) {
+		final double L = 100;
+		final int M = 50 * subdivision;
+		final double rc = 1.5;
+		final Random random = new Random(1);
+
+		final ParticleStore particles = new ParticleStore(10000);
+		for (int i = 0 ; i < particles.size() ; i++) {
+			particles.set(i, i + 1, random.nextDouble() * L, random.nextDouble() * L, 0.25, 0, 0);
+		}
+
+		final List<String> expected = new ArrayList<>();
+		new CellIndexMethodImpl(subdivision).forEachPair(particles, L, M, rc, periodicLimit,
+						(i, j, squaredDistance) -> expected.add(i + "," + j + "," + squaredDistance));
+
+		final ParallelCellIndexMethodImpl parallel = new ParallelCellIndexMethodImpl(new ForkJoinPool(4), subdivision);
+		// twice, so as to check that buffers are correctly reused
+		for (int run = 0 ; run < 2 ; run++) {
+			final List<String> actual = new ArrayList<>();
+			parallel.forEachPair(particles, L, M, rc, periodicLimit,
+							(i, j, squaredDistance) -> actual.add(i + "," + j + "," + squaredDistance));
+			Assert.assertEquals(expected, actual);
+		}
+	}
+}
@@ -1,9 +1,16 @@
 package ar.edu.itba.ss.offlattice.services;
 
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
 import ar.edu.itba.ss.offlattice.models.Point;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class PointFactoryTest {
 	/* trivial repetition test */
@@ -49,4 +56,147 @@ public class PointFactoryTest {
 //		points.forEach(System.out::println);
 //		System.out.println("---------------------------");
 	}
+
+	/* placements */
+
+	@Test
+	public void testDenseRandomPoints() {
+		// a tenth of the area covered; random insertion still places everything without collisions
+		assertPlaced(PointFactory.getInstance().randomPoints(Point.builder(0, 0).build(), Point.builder(100, 50).build(),
+						radios(5000, 0.2), false, Integer.MAX_VALUE, 0, new SeededRandom(1)), 5000, 100, 50);
+	}
+
+	@Test
+	public void testLatticePoints() {
+		final PointFactory pF = PointFactory.getInstance();
+		final Point leftBottomPoint = Point.builder(0, 0).build();
+		final Point rightTopPoint = Point.builder(40, 20).build();
+		// 0.78 and 0.68 of the area covered by the square and hexagonal lattices, respectively
+		assertPlaced(pF.latticePoints(leftBottomPoint, rightTopPoint, radios(800, 0.5), false, 0, new SeededRandom(1)),
+						800, 40, 20);
+		assertPlaced(pF.latticePoints(leftBottomPoint, rightTopPoint, radios(700, 0.5), true, 0, new SeededRandom(1)),
+						700, 40, 20);
+	}
+
+	@Test
+	public void testPoissonDiskPoints() {
+		// a third of the area covered
+		assertPlaced(PointFactory.getInstance().poissonDiskPoints(Point.builder(0, 0).build(),
+						Point.builder(30, 60).build(), radios(2000, 0.3), 0, new SeededRandom(1)), 2000, 30, 60);
+	}
+
+	@Test
+	public void testSameSeedSamePoints() {
+		final PointFactory pF = PointFactory.getInstance();
+		final Point leftBottomPoint = Point.builder(0, 0).build();
+		final Point rightTopPoint = Point.builder(30, 30).build();
+		assertEquals(positions(pF.poissonDiskPoints(leftBottomPoint, rightTopPoint, radios(300, 0.4), 0,
+										new SeededRandom(5))),
+						positions(pF.poissonDiskPoints(leftBottomPoint, rightTopPoint, radios(300, 0.4), 0,
+										new SeededRandom(5))));
+		assertEquals(positions(pF.latticePoints(leftBottomPoint, rightTopPoint, radios(300, 0.4), true, 0,
+										new SeededRandom(5))),
+						positions(pF.latticePoints(leftBottomPoint, rightTopPoint, radios(300, 0.4), true, 0,
+										new SeededRandom(5))));
+	}
+
+	@Test
+	public void testRandomPointsByRegions() {
+		final PointFactory pF = PointFactory.getInstance();
+		final Point leftBottomPoint = Point.builder(0, 0).build();
+		final Point rightTopPoint = Point.builder(120, 80).build();
+		final int amount = 5 * PointFactory.REGION_SIZE + 7;
+
+		final Set<Point> points = pF.randomPointsByRegions(leftBottomPoint, rightTopPoint, radios(amount, 0.2), false,
+						Integer.MAX_VALUE, 0, new SeededRandom(3), null);
+		assertPlaced(points, amount, 120, 80);
+		final Set<Long> ids = new HashSet<>();
+		points.forEach(p -> ids.add(p.id()));
+		for (long id = 1 ; id <= amount ; id++) {
+			assertTrue(ids.contains(id));
+		}
+		// no lane is left between regions: every strip of the width of a radio has some point, on both axes
+		final boolean[] xStrips = new boolean[(int) Math.ceil(120 / 0.2)];
+		final boolean[] yStrips = new boolean[(int) Math.ceil(80 / 0.2)];
+		points.forEach(p -> {
+			xStrips[(int) (p.x() / 0.2)] = true;
+			yStrips[(int) (p.y() / 0.2)] = true;
+		});
+		for (final boolean[] strips : new boolean[][] { xStrips, yStrips }) {
+			for (int strip = 0 ; strip < strips.length ; strip++) {
+				assertTrue("No point between " + strip * 0.2 + " and " + (strip + 1) * 0.2, strips[strip]);
+			}
+		}
+
+		// same points no matter the amount of threads
+		for (int threads = 1 ; threads <= 4 ; threads++) {
+			final ForkJoinPool pool = new ForkJoinPool(threads);
+			assertEquals(identifiedPositions(points), identifiedPositions(pF.randomPointsByRegions(leftBottomPoint, rightTopPoint,
+							radios(amount, 0.2), false, Integer.MAX_VALUE, 0, new SeededRandom(3), pool)));
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testLatticePointsInsideArea() {
+		final PointFactory pF = PointFactory.getInstance();
+		final Point leftBottomPoint = Point.builder(0, 0).build();
+		for (int width = 1 ; width <= 31 ; width += 3) {
+			for (int height = 1 ; height <= 31 ; height += 5) {
+				final Point rightTopPoint = Point.builder(width, height).build();
+				for (int amount = 1 ; amount < 200 ; amount += 7) {
+					assertInside(pF.latticePoints(leftBottomPoint, rightTopPoint, radios(amount, 0), true, 0,
+									new SeededRandom(amount)), width, height);
+					assertInside(pF.latticePoints(leftBottomPoint, rightTopPoint, radios(amount, 0), false, 0,
+									new SeededRandom(amount)), width, height);
+				}
+			}
+		}
+		// the example of a point that was placed outside of the area
+		assertInside(pF.latticePoints(leftBottomPoint, Point.builder(1, 1).build(), radios(9, 0), true, 0,
+						new SeededRandom(1)), 1, 1);
+	}
+
+	private static double[] radios(final int amount, final double radio) {
+		final double[] radios = new double[amount];
+		Arrays.fill(radios, radio);
+		return radios;
+	}
+
+	private static Set<String> positions(final Set<Point> points) {
+		final Set<String> positions = new HashSet<>();
+		points.forEach(p -> positions.add(p.x() + " " + p.y() + " " + p.orientation()));
+		return positions;
+	}
+
+	private static Set<String> identifiedPositions(final Set<Point> points) {
+		final Set<String> positions = new HashSet<>();
+		points.forEach(p -> positions.add(p.id() + " " + p.x() + " " + p.y() + " " + p.orientation()));
+		return positions;
+	}
+
+	/**
+	 * Asserts that every given point lies inside the [0, Lx) x [0, Ly) rectangle
+	 */
+	private static void assertInside(final Set<Point> points, final double Lx, final double Ly) {
+		for (final Point p : points) {
+			assertTrue("(" + p.x() + ", " + p.y() + ") is outside of [0, " + Lx + ") x [0, " + Ly + ")",
+							p.x() >= 0 && p.y() >= 0 && p.x() < Lx && p.y() < Ly);
+		}
+	}
+
+	/**
+	 * Asserts that the given amount of points were placed inside the given rectangle, without collisions
+	 * (checking every pair of them, with the brute force method)
+	 */
+	private static void assertPlaced(final Set<Point> points, final int amount, final double Lx, final double Ly) {
+		assertEquals(amount, points.size());
+		final Point[] array = points.toArray(new Point[amount]);
+		assertInside(points, Lx, Ly);
+		new BruteForceMethodImpl().forEachPair(ParticleStore.fromPoints(Arrays.asList(array)),
+						Lx, Ly, 0, false, (i, j, squaredDistance) -> {
+							// rc = 0, so these pairs are touching or overlapping
+							assert CellIndexMethods.distanceBetween(array[i], array[j]) >= 0;
+						});
+	}
 }
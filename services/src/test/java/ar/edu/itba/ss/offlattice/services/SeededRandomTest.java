@@ -0,0 +1,51 @@
+package ar.edu.itba.ss.offlattice.services;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SeededRandomTest {
+
+	@Test
+	public void sameSeedSameNumbersTest() {
+		final SeededRandom r1 = new SeededRandom(42);
+		final SeededRandom r2 = new SeededRandom(42);
+
+		for (int i = 0 ; i < 100 ; i++) {
+			Assert.assertEquals(r1.randomDouble(-1, 1), r2.randomDouble(-1, 1), 0);
+		}
+	}
+
+	@Test
+	public void substreamOnlyDependsOnSeedAndIndexTest() {
+		final SeededRandom r1 = new SeededRandom(42);
+		final SeededRandom r2 = new SeededRandom(42);
+		// consuming numbers of one of them must not change its substreams
+		r2.fillUniform(new double[10], 0, 1);
+
+		final double[] expected = new double[50];
+		final double[] actual = new double[50];
+		r1.substream(3).fillUniform(expected, 0, 1);
+		r2.substream(3).fillUniform(actual, 0, 1);
+		Assert.assertArrayEquals(expected, actual, 0);
+
+		final double[] other = new double[50];
+		r1.substream(4).fillUniform(other, 0, 1);
+		Assert.assertNotEquals(expected[0], other[0], 0);
+	}
+
+	@Test
+	public void fillUniformTest() {
+		final SeededRandom random = new SeededRandom(7);
+		final double[] out = new double[1000];
+		out[0] = -10;
+		out[999] = -10;
+
+		random.fillUniform(out, 1, 999, -0.5, 0.5);
+
+		Assert.assertEquals(-10, out[0], 0);
+		Assert.assertEquals(-10, out[999], 0);
+		for (int i = 1 ; i < 999 ; i++) {
+			Assert.assertTrue(out[i] >= -0.5 && out[i] < 0.5);
+		}
+	}
+}
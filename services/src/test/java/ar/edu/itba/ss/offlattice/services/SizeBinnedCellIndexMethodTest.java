@@ -0,0 +1,76 @@
+package ar.edu.itba.ss.offlattice.services;
+
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+public class SizeBinnedCellIndexMethodTest {
+
+	@Test
+	public void sameAsBruteForceWithPeriodicLimitTest() {
+		assertSameAsBruteForce(true);
+	}
+
+	@Test
+	public void sameAsBruteForceWithNoPeriodicLimitTest() {
+		assertSameAsBruteForce(false);
+	}
+
+	@Test
+	public void sameAsBruteForceOnRectangleWithPeriodicLimitTest() {
+		assertSameAsBruteForce(80, 20, true);
+	}
+
+	@Test
+	public void sameAsBruteForceOnRectangleWithNoPeriodicLimitTest() {
+		assertSameAsBruteForce(80, 20, false);
+	}
+
+	private void assertSameAsBruteForce(final boolean periodicLimit) {
+		assertSameAsBruteForce(40, 40, periodicLimit);
+	}
+
+	private void assertSameAsBruteForce(final double Lx, final double Ly, final boolean periodicLimit) {
+		final double rc = 0.5;
+		final Random random = new Random(1);
+
+		// many small particles and a few big ones
+		final ParticleStore particles = new ParticleStore(1500);
+		for (int i = 0 ; i < particles.size() ; i++) {
+			final double radio = i % 100 == 0 ? 2 + random.nextDouble() : random.nextDouble() * 0.3;
+			particles.set(i, i + 1, random.nextDouble() * Lx, random.nextDouble() * Ly, radio, 0, 0);
+		}
+
+		final Set<Long> expected = new HashSet<>();
+		for (int i = 0 ; i < particles.size() ; i++) {
+			for (int j = i + 1 ; j < particles.size() ; j++) {
+				final double dx = separation(particles.x(j) - particles.x(i), Lx, periodicLimit);
+				final double dy = separation(particles.y(j) - particles.y(i), Ly, periodicLimit);
+				if (Math.sqrt(dx * dx + dy * dy) - particles.radio(i) - particles.radio(j) <= rc) {
+					expected.add(pairOf(i, j));
+				}
+			}
+		}
+
+		final SizeBinnedCellIndexMethod method = new SizeBinnedCellIndexMethod(Lx, Ly, rc, periodicLimit, 4);
+		// twice, so as to check that its state is correctly reused
+		for (int run = 0 ; run < 2 ; run++) {
+			final Set<Long> actual = new HashSet<>();
+			method.forEachPair(particles,
+							(i, j, squaredDistance) -> Assert.assertTrue(actual.add(pairOf(i, j))));
+			Assert.assertEquals(expected, actual);
+		}
+	}
+
+	private static double separation(final double d, final double L, final boolean periodicLimit) {
+		return periodicLimit ? d - L * Math.rint(d / L) : d;
+	}
+
+	private static long pairOf(final int i, final int j) {
+		return ((long) Math.min(i, j) << 32) | Math.max(i, j);
+	}
+}
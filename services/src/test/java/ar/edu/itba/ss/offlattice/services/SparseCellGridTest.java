@@ -0,0 +1,54 @@
+package ar.edu.itba.ss.offlattice.services;
+
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SparseCellGridTest {
+
+	@Test
+	public void binTest() {
+		final ParticleStore particles = new ParticleStore(4);
+		particles.set(0, 1, 0.25, 0.25, 0, 0, 0); // row 999, col 0
+		particles.set(1, 2, 999.5, 999.5, 0, 0, 0); // row 0, col 999
+		particles.set(2, 3, 0.75, 0.75, 0, 0, 0); // row 999, col 0
+		particles.set(3, 4, 500, 500, 0, 0, 0); // row 499, col 500
+
+		final SparseCellGrid grid = new SparseCellGrid();
+		grid.bin(particles, 1000, 1000);
+
+		Assert.assertEquals(3, grid.occupiedCount());
+		assertCell(grid, 999, 1);
+		assertCell(grid, 499 * 1000 + 500, 3);
+		assertCell(grid, 999 * 1000, 0, 2);
+		Assert.assertEquals(CellStencil.NONE, grid.indexOf(0));
+		Assert.assertEquals(CellStencil.NONE, grid.indexOf(999 * 1000 + 1));
+	}
+
+	@Test
+	public void rebinTest() {
+		final ParticleStore particles = new ParticleStore(1);
+		particles.set(0, 1, 0.5, 0.5, 0.5, 0, 0);
+
+		final SparseCellGrid grid = new SparseCellGrid();
+		grid.bin(particles, 1000, 1000);
+		particles.setPosition(0, 2.5, 0.5);
+		grid.bin(particles, 1000, 1000);
+
+		Assert.assertEquals(1, grid.occupiedCount());
+		Assert.assertEquals(CellStencil.NONE, grid.indexOf(999 * 1000));
+		assertCell(grid, 999 * 1000 + 2, 0);
+		Assert.assertEquals(2.5, grid.sortedX()[0], 0);
+		Assert.assertEquals(0.5, grid.sortedRadio()[0], 0);
+	}
+
+	private void assertCell(final SparseCellGrid grid, final int cell, final int... expectedSlots) {
+		final int index = grid.indexOf(cell);
+		Assert.assertNotEquals(CellStencil.NONE, index);
+		Assert.assertEquals(cell, grid.cell(index));
+		Assert.assertEquals(expectedSlots.length, grid.end(index) - grid.start(index));
+		for (int k = 0 ; k < expectedSlots.length ; k++) {
+			Assert.assertEquals(expectedSlots[k], grid.sorted()[grid.start(index) + k]);
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package ar.edu.itba.ss.offlattice.services;
+
+import ar.edu.itba.ss.offlattice.models.ParticleStore;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+public class VerletListMethodTest {
+
+	@Test
+	public void sameNeighboursAsCellIndexMethodTest() {
+		final double L = 20;
+		final double rc = 1;
+		final double speed = 0.1;
+		final Random random = new Random(1);
+
+		final ParticleStore particles = new ParticleStore(500);
+		for (int i = 0 ; i < particles.size() ; i++) {
+			particles.set(i, i + 1, random.nextDouble() * L, random.nextDouble() * L, 0, speed,
+							random.nextDouble() * 2 * Math.PI);
+		}
+
+		final VerletListMethod verletListMethod = new VerletListMethod(L, rc, 0.5, true);
+		final CellIndexMethodImpl cellIndexMethod = new CellIndexMethodImpl();
+
+		for (int step = 0 ; step < 30 ; step++) {
+			final Set<Long> expected = new HashSet<>();
+			cellIndexMethod.forEachPair(particles, L, (int) (L / rc), rc, true,
+							(i, j, squaredDistance) -> expected.add(pairOf(i, j)));
+
+			final Set<Long> actual = new HashSet<>();
+			verletListMethod.forEachPair(particles,
+							(i, j, squaredDistance) -> Assert.assertTrue(actual.add(pairOf(i, j))));
+
+			Assert.assertEquals(expected, actual);
+
+			// move each particle, keeping it inside the square
+			for (int i = 0 ; i < particles.size() ; i++) {
+				final double x = particles.x(i) + Math.cos(particles.orientation(i)) * speed;
+				final double y = particles.y(i) + Math.sin(particles.orientation(i)) * speed;
+				particles.setPosition(i, (x + L) % L, (y + L) % L);
+			}
+		}
+
+		// 30 steps of 0.1 with a skin of 0.5 => the list should have been built, at most, once each 3 steps
+		Assert.assertTrue(verletListMethod.builds() <= 10);
+	}
+
+	@Test
+	public void sameNeighboursAsBruteForceWithRadiosTest() {
+		// cells have to be sized with the radios, and a few cells are only enough for brute force
+		for (final double L : new double[] { 20, 5 }) {
+			for (int k = 1 ; k <= 2 ; k++) {
+				assertSameNeighboursAsBruteForce(L, new CellIndexMethodImpl(k));
+			}
+		}
+	}
+
+	private void assertSameNeighboursAsBruteForce(final double L, final CellIndexMethodImpl cellIndexMethod) {
+		final double rc = 1;
+		final double speed = 0.1;
+		final Random random = new Random(1);
+
+		final ParticleStore particles = new ParticleStore((int) (L * L));
+		for (int i = 0 ; i < particles.size() ; i++) {
+			particles.set(i, i + 1, random.nextDouble() * L, random.nextDouble() * L, random.nextDouble() * 0.4, speed,
+							random.nextDouble() * 2 * Math.PI);
+		}
+
+		final VerletListMethod verletListMethod = new VerletListMethod(L, rc, 0.5, true, cellIndexMethod);
+		final BruteForceMethodImpl bruteForce = new BruteForceMethodImpl();
+
+		for (int step = 0 ; step < 10 ; step++) {
+			final Set<Long> expected = new HashSet<>();
+			bruteForce.forEachPair(particles, L, L, rc, true, (i, j, squaredDistance) -> expected.add(pairOf(i, j)));
+
+			final Set<Long> actual = new HashSet<>();
+			verletListMethod.forEachPair(particles,
+							(i, j, squaredDistance) -> Assert.assertTrue(actual.add(pairOf(i, j))));
+
+			Assert.assertFalse(expected.isEmpty());
+			Assert.assertEquals(expected, actual);
+
+			for (int i = 0 ; i < particles.size() ; i++) {
+				final double x = particles.x(i) + Math.cos(particles.orientation(i)) * speed;
+				final double y = particles.y(i) + Math.sin(particles.orientation(i)) * speed;
+				particles.setPosition(i, (x + L) % L, (y + L) % L);
+			}
+		}
+	}
+
+	private static long pairOf(final int i, final int j) {
+		return ((long) Math.min(i, j) << 32) | Math.max(i, j);
+	}
+}